@@ -0,0 +1,79 @@
+package kvstore;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PREPARE followed by ACCEPT on a single Acceptor, the pair of messages a Proposer sends for every slot.
+ * disjoint gives every thread its own range of slots, as concurrent proposers working on different slots do, and
+ *    measures how well the striped slot locks scale. contended sends every thread to the same 64 slots with ever
+ *    higher ballots, as duelling proposers do. Run with -t 1, -t 2, ... to see how throughput scales with the
+ *    number of proposers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class AcceptorBenchmark {
+    private static final int SLOTS_PER_PROPOSER = 10_000; // Each thread of disjoint cycles over its own slots
+    private static final int SHARED_SLOTS = 64; // Slots every thread of contended works on
+    private static final long FIRST_SHARED_SLOT = 1_000_000;
+
+    private Server acceptor;
+    private byte[] value;
+    private final AtomicInteger proposers = new AtomicInteger(); // Hands each thread its range of slots
+    private final AtomicInteger ballots = new AtomicInteger();
+
+    /**
+     * The slots of one thread of disjoint, and how many PREPARE+ACCEPT pairs it has sent.
+     */
+    @State(Scope.Thread)
+    public static class Proposer {
+        long firstSlot;
+        long sent;
+
+        @Setup(Level.Trial)
+        public void setUp(AcceptorBenchmark benchmark) {
+            firstSlot = 1 + (long) benchmark.proposers.getAndIncrement() * SLOTS_PER_PROPOSER;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        acceptor = new Server(new HeapStore(), "benchmark");
+        value = Operation.encodeAll(List.of(Operation.put("user:12345", "v".repeat(100))));
+    }
+
+    @Benchmark
+    public int disjoint(Proposer proposer) throws RemoteException {
+        long i = proposer.sent++;
+        long slot = proposer.firstSlot + i % SLOTS_PER_PROPOSER;
+        int ballot = (int) (i / SLOTS_PER_PROPOSER) + 1; // Higher ballot each time a slot is revisited
+        return acceptor.prepare(slot, ballot).length + acceptor.acceptRequest(slot, ballot, value).length;
+    }
+
+    @Benchmark
+    public int contended() throws RemoteException {
+        int ballot = ballots.incrementAndGet();
+        long slot = FIRST_SHARED_SLOT + ballot % SHARED_SLOTS;
+        return acceptor.prepare(slot, ballot).length + acceptor.acceptRequest(slot, ballot, value).length;
+    }
+}
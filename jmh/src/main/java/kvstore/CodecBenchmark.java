@@ -0,0 +1,77 @@
+package kvstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The binary encoding of client writes and Paxos messages: a single PUT, a batch of 64 PUTs as decided by one
+ *    Paxos instance, and a PROMISE reply carrying that batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+    private Operation put;
+    private byte[] putBytes;
+    private List<Operation> batch;
+    private byte[] batchBytes;
+    private byte[] promiseBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        put = Operation.put("user:12345", "v".repeat(100));
+        putBytes = put.encode();
+        batch = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            batch.add(Operation.put("user:" + i, "v".repeat(100)));
+        }
+        batchBytes = Operation.encodeAll(batch);
+        promiseBytes = PaxosMessage.promise(42, 7, 6, batchBytes).encode();
+    }
+
+    @Benchmark
+    public byte[] operationEncode() {
+        return put.encode();
+    }
+
+    @Benchmark
+    public Operation operationDecode() {
+        return Operation.decode(putBytes);
+    }
+
+    @Benchmark
+    public byte[] batch64Encode() {
+        return Operation.encodeAll(batch);
+    }
+
+    @Benchmark
+    public List<Operation> batch64Decode() {
+        return Operation.decodeAll(batchBytes);
+    }
+
+    @Benchmark
+    public byte[] promiseEncode() {
+        return PaxosMessage.promise(42, 7, 6, batchBytes).encode();
+    }
+
+    @Benchmark
+    public PaxosMessage promiseDecode() {
+        return PaxosMessage.decode(promiseBytes);
+    }
+}
@@ -0,0 +1,60 @@
+package kvstore;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A Learner applying decided slots in order, each holding batchSize PUTs, so the cost of applying a write can be
+ *    compared with and without batching. Slots are learned by a single thread, as they are applied one at a time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LearnerBenchmark {
+    private static final int KEYS = 10_000; // Keys written, so the store stops growing after the warmup
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    private Server learner;
+    private byte[][] values;
+    private long slot = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        learner = new Server(new HeapStore(), "benchmark");
+        values = new byte[KEYS / batchSize][];
+        for (int v = 0; v < values.length; v++) {
+            List<Operation> ops = new ArrayList<>();
+            for (int k = 0; k < batchSize; k++) {
+                ops.add(Operation.put("key" + (v * batchSize + k), "v".repeat(100)));
+            }
+            values[v] = Operation.encodeAll(ops);
+        }
+    }
+
+    @Benchmark
+    public long apply() throws RemoteException {
+        slot++;
+        learner.learn(slot, values[(int) (slot % values.length)]);
+        return slot;
+    }
+}
@@ -0,0 +1,42 @@
+package kvstore;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of a Log call to the thread making it: a TRACE call below the default INFO level, as made on every
+ *    Acceptor message, and an INFO call that is queued for the background writer. The writer prints every entry
+ *    to stdout, so save the results with -rff and discard stdout when running enabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogBenchmark {
+    private long calls = 0;
+
+    @Benchmark
+    public long disabled() {
+        Log.trace("ACCEPT", 7, calls, "user:12345", "Accepted");
+        return calls++;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long enabled() {
+        Log.info("Benchmark entry " + calls);
+        return calls++;
+    }
+}
@@ -0,0 +1,61 @@
+package kvstore;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A PUT decided end to end by the PAXOS_MEMBERS servers started in the benchmark's JVM, which reach each other
+ *    through LocalCluster rather than over RMI, so the result covers batching, the Paxos phases and the Learners
+ *    but not the network. PAXOS_MODE and the other server settings are read from the environment as usual. Run
+ *    with -t to add concurrent clients, whose writes are then batched together.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProposeBenchmark {
+    private static final int KEYS = 10_000;
+
+    private KVClient client;
+
+    /**
+     * The PUTs one client thread has sent, to spread them over KEYS keys.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        long puts;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<String> members = Server.startLocalCluster();
+        client = new KVClient(members, Runtime.getRuntime().availableProcessors(), 5, 50);
+        client.put("warmup", "v"); // Elect a leader in Multi-Paxos mode before measuring
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public String put(Writer writer) throws RemoteException {
+        return client.put("key" + writer.puts++ % KEYS, "v");
+    }
+}
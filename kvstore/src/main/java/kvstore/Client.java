@@ -0,0 +1,549 @@
+package kvstore;
+
+import java.nio.charset.StandardCharsets;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Client interacts with the Java RMI server to perform PUT, GET, DELETE operations
+ *   over key/value pairs stored on the Server.
+ */
+public class Client {
+
+    /**
+     * Gets current system time and prints Client output in MM-dd-yyyy HH:mm:ss.SSS format.
+     * @param message The message to be printed.
+     */
+    public static void logMessage(String message) {
+        // Printed synchronously, so results appear before the next menu prompt
+        System.out.println(Log.timestamp(System.currentTimeMillis()) + " -- " + message);
+    }
+
+    /**
+     * Programmatically tests PUT, GET, DELETE operations on the RMI server.
+     * The test operations are hardcoded in this function.
+     * @param serverIP The IP Address or hostname of the RMI server.
+     * @param stub The reference to the RMI server
+     */
+    public static void testOperations(String serverIP, RemoteOperations stub) throws RemoteException {
+        // Programmatically perform 5 PUT operations
+        PUTOperation("Key1", "Value1", serverIP, stub);
+        PUTOperation("Key2", "Value2", serverIP, stub);
+        PUTOperation("Key3", "Value3", serverIP, stub);
+        PUTOperation("Key4", "Value4", serverIP, stub);
+        PUTOperation("Key5", "Value5", serverIP, stub);
+
+        // Programmatically perform 5 GET operations
+        GETOperation("Key1", serverIP, stub);
+        GETOperation("Key2", serverIP, stub);
+        GETOperation("Key3", serverIP, stub);
+        GETOperation("Key4", serverIP, stub);
+        GETOperation("Key5", serverIP, stub);
+
+        // PUT again - each write takes a new slot in the replicated log, so existing keys can be overwritten
+        PUTOperation("Key1", "UpdatedValue1", serverIP, stub);
+        PUTOperation("Key2", "UpdatedValue2", serverIP, stub);
+        PUTOperation("Key3", "UpdatedValue3", serverIP, stub);
+        PUTOperation("Key4", "UpdatedValue4", serverIP, stub);
+        PUTOperation("Key5", "UpdatedValue5", serverIP, stub);
+
+        // Confirm the updated values were applied
+        GETOperation("Key1", serverIP, stub);
+        GETOperation("Key2", serverIP, stub);
+        GETOperation("Key3", serverIP, stub);
+        GETOperation("Key4", serverIP, stub);
+        GETOperation("Key5", serverIP, stub);
+
+        // Programmatically perform 5 DELETE operations
+        DELETEOperation("Key1", serverIP, stub);
+        DELETEOperation("Key2", serverIP, stub);
+        DELETEOperation("Key3", serverIP, stub);
+        DELETEOperation("Key4", serverIP, stub);
+        DELETEOperation("Key5", serverIP, stub);
+
+        // Programmatically populate RMI server with 5 key/value pairs
+        PUTOperation("Key1", "Value1", serverIP, stub);
+        PUTOperation("Key2", "Value2", serverIP, stub);
+        PUTOperation("Key3", "Value3", serverIP, stub);
+        PUTOperation("Key4", "Value4", serverIP, stub);
+        PUTOperation("Key5", "Value5", serverIP, stub);
+    }
+
+    /**
+     * Utilizes RMI to perform a PUT operation for a key/value pair on the server.
+     * @param key The key to be saved to the server.
+     * @param value The corresponding value to be saved to the server.
+     * @param serverIP The IP Address or hostname of the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void PUTOperation(String key, String value, String serverIP, RemoteOperations stub) throws RemoteException {
+        //String result = stub.createRecord(key, value, serverIP);
+        String result = proposeWithRedirect(Operation.put(key, value), stub);
+        logMessage(result);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Sends a PUT/DELETE proposal to the server, following "REDIRECT,$serverName" replies to the
+     *   Multi-Paxos leader.
+     * @param operation The PUT or DELETE operation, sent in its binary encoding.
+     * @param stub The reference to the RMI server.
+     * @return The result of the proposal.
+     * @throws RemoteException For RMI-related errors.
+     */
+    public static String proposeWithRedirect(Operation operation, RemoteOperations stub) throws RemoteException {
+        byte[] value = operation.encode();
+        return writeWithRedirect(server -> server.propose(value), stub, groupOf(operation.key));
+    }
+
+    // Groups the keyspace is split into and their leaders, fetched from the server on connect
+    private static RoutingTable routingTable = null;
+
+    /**
+     * @param key The key.
+     * @return The Paxos group owning the key, or -1 if the routing table is unknown.
+     */
+    private static int groupOf(String key) {
+        return routingTable == null ? -1 : routingTable.groupOf(key);
+    }
+
+    private static int groupOf(byte[] key) {
+        return routingTable == null ? -1 : routingTable.groupOf(key);
+    }
+
+    /**
+     * A write request that may be answered with "REDIRECT,$serverName" in Multi-Paxos mode.
+     */
+    interface WriteCall {
+        String call(RemoteOperations server) throws RemoteException;
+    }
+
+    /**
+     * Sends a write request to the server, following "REDIRECT,$serverName" replies to the Multi-Paxos leader.
+     * @param write The request to send, e.g. a propose() or multiPut() call.
+     * @param stub The reference to the RMI server.
+     * @return The result of the request.
+     * @throws RemoteException For RMI-related errors.
+     */
+    public static String writeWithRedirect(WriteCall write, RemoteOperations stub) throws RemoteException {
+        return writeWithRedirect(write, stub, -1);
+    }
+
+    /**
+     * Sends a write request for the keys of one Paxos group straight to the group's leader if the routing table
+     *   knows it, falling back to the chosen server. Leaders learned from redirects are kept in the routing table.
+     * @param write The request to send.
+     * @param stub The reference to the RMI server, used if the leader is unknown or unreachable.
+     * @param group The group owning the request's keys, or -1 if unknown.
+     * @return The result of the request.
+     * @throws RemoteException For RMI-related errors.
+     */
+    public static String writeWithRedirect(WriteCall write, RemoteOperations stub, int group) throws RemoteException {
+        String result = null;
+        String knownLeader = group >= 0 ? routingTable.leaderOf(group) : null;
+        if (knownLeader != null) {
+            try {
+                Registry registry = LocateRegistry.getRegistry(knownLeader, 1099);
+                result = write.call((RemoteOperations) registry.lookup(knownLeader));
+            } catch (NotBoundException | RemoteException e) { // Leader moved or is down, ask the chosen server
+                routingTable.setLeader(group, null);
+            }
+        }
+        if (result == null) {
+            result = write.call(stub);
+        }
+        for (int i = 0; i < 3 && result.startsWith("REDIRECT,"); i++) {
+            String leader = result.split(",")[1];
+            logMessage("Redirected to leader " + leader);
+            if (group >= 0) {
+                routingTable.setLeader(group, leader);
+            }
+            try {
+                Registry registry = LocateRegistry.getRegistry(leader, 1099);
+                RemoteOperations leaderStub = (RemoteOperations) registry.lookup(leader);
+                result = write.call(leaderStub);
+            } catch (NotBoundException e) {
+                return "ERROR: Leader " + leader + " is not bound";
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Utilizes RMI to write a value only if the key currently holds the expected value, decided as a single
+     *   Paxos instance so no other write can slip in between the check and the write.
+     * @param key The key to be updated.
+     * @param expected The value the key must hold, or null if the key must not exist.
+     * @param value The new value.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void CASOperation(String key, String expected, String value, RemoteOperations stub) throws RemoteException {
+        logMessage(proposeWithRedirect(Operation.compareAndSet(key, expected, value), stub));
+    }
+
+    /**
+     * Utilizes RMI to write a value only if the key does not exist yet.
+     * @param key The key to be saved to the server.
+     * @param value The corresponding value to be saved to the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void PUTIFABSENTOperation(String key, String value, RemoteOperations stub) throws RemoteException {
+        logMessage(proposeWithRedirect(Operation.putIfAbsent(key, value), stub));
+    }
+
+    /**
+     * Utilizes RMI to atomically add to a numeric value, a missing key counts as 0.
+     * @param key The key of the counter.
+     * @param delta The amount to add, may be negative.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void INCREMENTOperation(String key, long delta, RemoteOperations stub) throws RemoteException {
+        logMessage(proposeWithRedirect(Operation.increment(key, delta), stub));
+    }
+
+    /**
+     * Programmatically tests the conditional write operations on the RMI server.
+     * @param stub The reference to the RMI server
+     */
+    public static void testConditionalOperations(RemoteOperations stub) throws RemoteException {
+        PUTIFABSENTOperation("Lock", "Owner1", stub); // Succeeds unless Lock is already held
+        PUTIFABSENTOperation("Lock", "Owner2", stub); // Fails, Lock is held by Owner1
+        CASOperation("Lock", "Owner1", "Owner2", stub); // Hands the lock over
+        CASOperation("Lock", "Owner1", "Owner3", stub); // Fails, Lock is now held by Owner2
+        INCREMENTOperation("Counter", 1, stub);
+        INCREMENTOperation("Counter", 5, stub);
+        INCREMENTOperation("Counter", -2, stub);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to PUT several key/value pairs with one call per Paxos group. The pairs of each group are
+     *   decided by a single Paxos instance and applied together.
+     * @param entries The key/value pairs to be saved to the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void MULTIPUTOperation(Map<String, String> entries, RemoteOperations stub) throws RemoteException {
+        // Keys are written atomically within each Paxos group, one call per group
+        Map<Integer, Map<String, String>> byGroup = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            byGroup.computeIfAbsent(groupOf(entry.getKey()), g -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Integer, Map<String, String>> group : byGroup.entrySet()) {
+            logMessage(writeWithRedirect(server -> server.multiPut(group.getValue()), stub, group.getKey()));
+        }
+    }
+
+    /**
+     * Utilizes RMI to GET several keys in one call.
+     * @param keys The keys to retrieve the corresponding values for.
+     * @param linearizable Whether the read must reflect every write completed before it.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void MULTIGETOperation(List<String> keys, boolean linearizable, RemoteOperations stub) throws RemoteException {
+        Map<String, String> values = stub.multiGet(keys, linearizable);
+        for (String key : keys) {
+            logMessage(values.containsKey(key) ? "Value for " + key + ": " + values.get(key) : "Key " + key + " cannot be found");
+        }
+    }
+
+    /**
+     * Utilizes RMI to DELETE several keys with one call per Paxos group, decided and applied together like MULTIPUTOperation.
+     * @param keys The keys corresponding with the records to be deleted on the RMI server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void MULTIDELETEOperation(List<String> keys, RemoteOperations stub) throws RemoteException {
+        Map<Integer, List<String>> byGroup = new LinkedHashMap<>();
+        for (String key : keys) {
+            byGroup.computeIfAbsent(groupOf(key), g -> new ArrayList<>()).add(key);
+        }
+        for (Map.Entry<Integer, List<String>> group : byGroup.entrySet()) {
+            logMessage(writeWithRedirect(server -> server.multiDelete(group.getValue()), stub, group.getKey()));
+        }
+    }
+
+    /**
+     * Programmatically tests the multi-key PUT, GET, DELETE operations on the RMI server, one call per step.
+     * @param stub The reference to the RMI server
+     */
+    public static void testMultiKeyOperations(RemoteOperations stub) throws RemoteException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            entries.put("Key" + i, "Value" + i);
+            keys.add("Key" + i);
+        }
+        MULTIPUTOperation(entries, stub);
+        MULTIGETOperation(keys, true, stub);
+        MULTIDELETEOperation(new ArrayList<>(keys.subList(0, 3)), stub); // Delete Key1-Key3 together
+        MULTIGETOperation(keys, true, stub);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to perform a GET operation on a key stored on the RMI server.
+     * @param key The key to retrieve the corresponding value for.
+     * @param serverIP The IP Address or hostname of the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void GETOperation(String key, String serverIP, RemoteOperations stub) throws RemoteException {
+        String result = stub.getRecord(key, serverIP);
+        logMessage(result);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to perform a linearizable GET operation, which reflects every PUT/DELETE that completed
+     *   before it on any server.
+     * @param key The key to retrieve the corresponding value for.
+     * @param serverIP The IP Address or hostname of the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void CONSISTENTGETOperation(String key, String serverIP, RemoteOperations stub) throws RemoteException {
+        String result = stub.getConsistentRecord(key, serverIP);
+        logMessage(result);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to perform a DELETE operation on a key stored on the RMI server.
+     * @param key The key corresponding with the record to be deleted on the RMI server.
+     * @param serverIP The IP Address or hostname of the server.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void DELETEOperation(String key, String serverIP, RemoteOperations stub) throws RemoteException {
+        //String result = stub.deleteRecord(key, serverIP);
+        String result = proposeWithRedirect(Operation.delete(key), stub);
+        logMessage(result);
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to add a server to, or remove it from, every Paxos group. The change is decided through each
+     *   group's log, and the server handling it forwards it to the group's leader.
+     * @param serverName The server to add or remove, e.g. "rmi-server-6".
+     * @param add true to add the server, false to remove it.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void MEMBERSHIPOperation(String serverName, boolean add, RemoteOperations stub) throws RemoteException {
+        String result = add ? stub.addMember(serverName) : stub.removeMember(serverName);
+        logMessage(result);
+        logMessage("Members are now " + stub.getMembers());
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Utilizes RMI to list the keys starting with a prefix, in order, one page per call.
+     * @param prefix The key prefix, "" for every key.
+     * @param stub The reference to the RMI server.
+     * @throws RemoteException
+     */
+    public static void PREFIXSCANOperation(String prefix, RemoteOperations stub) throws RemoteException {
+        ScanPage page = stub.prefixScan(prefix.getBytes(StandardCharsets.UTF_8), 100);
+        int count = 0;
+        while (true) {
+            for (Map.Entry<String, String> entry : page.entries().entrySet()) {
+                logMessage(entry.getKey() + " = " + entry.getValue());
+            }
+            count += page.keys.size();
+            if (page.nextKey == null) {
+                break;
+            }
+            page = stub.scan(page.nextKey, page.endKey, 100);
+        }
+        logMessage(count + " keys start with \"" + prefix + "\"");
+        logMessage("Connection closed to " + stub.getServerIP());
+    }
+
+    /**
+     * Interacts with user to select the type of operation to perform on the RMI server.
+     * Gathers necessary key/value information and passes it to the respective
+     *   GET/PUT/DELETEOperation functions.
+     * User enters '1' for PUT, '2' for GET, '3' for DELETE, '5' for a linearizable GET, '6' for multi-key operations, '7' for conditional writes,
+     *   '8' and '9' to add or remove a replica, '10' to list the keys under a prefix.
+     * @param scanner Gets command line input from user.
+     * @param stub The reference to the RMI server.
+     * @param serverIP The IP Address or hostname of the server.
+     */
+    public static void askForOperationType(Scanner scanner, RemoteOperations stub, String serverIP) {
+        try {
+            System.out.println("Enter '1' to perform PUT");
+            System.out.println("Enter '2' to perform GET");
+            System.out.println("Enter '3' to perform DELETE");
+            System.out.println("Enter '4' to programmatically test 5 of each operation");
+            System.out.println("Enter '5' to perform a linearizable GET");
+            System.out.println("Enter '6' to programmatically test multi-key PUT, GET and DELETE");
+            System.out.println("Enter '7' to programmatically test compare-and-set, put-if-absent and increment");
+            System.out.println("Enter '8' to add a replica to the cluster");
+            System.out.println("Enter '9' to remove a replica from the cluster");
+            System.out.println("Enter '10' to list the keys starting with a prefix");
+            int selection = scanner.nextInt();
+            scanner.nextLine(); // deal with \n left by scanner.nextInt()
+
+            if(selection == 1) {
+                logMessage("PUT operation selected");
+                logMessage("Enter key to PUT: ");
+                String key = scanner.nextLine();
+                logMessage("Enter value to PUT: ");
+                String value = scanner.nextLine();
+                PUTOperation(key, value, serverIP, stub);
+
+            } else if(selection == 2) {
+                logMessage("GET operation selected");
+                logMessage("Enter key to GET: ");
+                String key = scanner.nextLine();
+                GETOperation(key, serverIP, stub);
+
+            } else if(selection == 3) {
+                logMessage("DELETE operation selected");
+                logMessage("Enter key to DELETE");
+                String key = scanner.nextLine();
+                DELETEOperation(key, serverIP, stub);
+
+            } else if (selection == 4){
+                testOperations(serverIP, stub);
+
+            } else if (selection == 5) {
+                logMessage("Linearizable GET operation selected");
+                logMessage("Enter key to GET: ");
+                String key = scanner.nextLine();
+                CONSISTENTGETOperation(key, serverIP, stub);
+
+            } else if (selection == 6) {
+                testMultiKeyOperations(stub);
+
+            } else if (selection == 7) {
+                testConditionalOperations(stub);
+
+            } else if (selection == 8 || selection == 9) {
+                logMessage((selection == 8 ? "Add" : "Remove") + " replica selected, members are " + stub.getMembers());
+                logMessage("Enter server name: ");
+                String name = scanner.nextLine();
+                MEMBERSHIPOperation(name, selection == 8, stub);
+
+            } else if (selection == 10) {
+                logMessage("Prefix scan selected");
+                logMessage("Enter key prefix, or nothing for every key: ");
+                String prefix = scanner.nextLine();
+                PREFIXSCANOperation(prefix, stub);
+
+            }
+            else { // rerun function if input not '1' to '10'
+                logMessage("Invalid input detected");
+                askForOperationType(scanner, stub, serverIP);
+            }
+
+        } catch (InputMismatchException e) {
+            logMessage("ERROR: Input mismatch detected: exiting");
+        } catch (RemoteException e) {
+            logMessage("ERROR: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Allows the client to select which server it wishes to connect to.
+     * @param scanner Takes user input in the form of an int from 1 to the number of servers.
+     * @param serverNames The servers to choose from.
+     * @return The index in serverNames of the server to connect to.
+     */
+    public static int askForServer(Scanner scanner, List<String> serverNames) {
+        try {
+            while(true) {
+                for (int i = 0; i < serverNames.size(); i++) {
+                    System.out.println("Enter '" + (i + 1) + "' to access Server #" + (i + 1) + " (" + serverNames.get(i) + ")");
+                }
+                int selection = scanner.nextInt();
+                scanner.nextLine(); // deal with \n character
+                if (selection > 0 && selection <= serverNames.size()) {
+                    return selection - 1;
+                }
+            }
+        } catch (Exception e) {
+            scanner.nextLine(); // deal with invalid input
+            logMessage("ERROR: Invalid input detected - defaulting to Server 1");
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the servers the client can connect to: PAXOS_MEMBERS as a comma-separated list, the same variable
+     *   the servers start from, or the five servers in docker-compose.yml.
+     * @return The server names.
+     */
+    static List<String> serverNames() {
+        String members = System.getenv("PAXOS_MEMBERS");
+        if (members == null || members.isBlank()) {
+            members = "rmi-server-1,rmi-server-2,rmi-server-3,rmi-server-4,rmi-server-5";
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : members.split(",")) {
+            if (!name.isBlank()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 2 && args[2].equals("load")) { // Load generator mode, see LoadGenerator
+            LoadGenerator.main(Arrays.copyOfRange(args, 3, args.length));
+            return;
+        }
+        if (args.length != 2){ // Check that 2 args are provided
+            logMessage("ERROR: Proper input format must be 'java kvstore.Client <client_ip> <port> [load <options>]'");
+            return;
+        }
+
+        String serverIP = null;
+        int port = -1;
+
+        // Ensure provided args are correct types
+        try{
+            serverIP = args[0];
+            port = Integer.parseInt(args[1]);
+        } catch (Exception e) {
+            logMessage("ERROR: <client_ip> must be type String and <port> must be type int");
+        }
+
+        try {
+
+            List<String> serverNames = serverNames();
+            // Create scanner for accepting user input
+            Scanner scanner = new Scanner(System.in);
+            int selection = askForServer(scanner, serverNames);
+            Registry registry = LocateRegistry.getRegistry(serverNames.get(selection), 1099);
+
+            RemoteOperations stub = (RemoteOperations) registry.lookup(serverNames.get(selection));
+            logMessage("Connected to server on host " + stub.getServerIP());
+            routingTable = stub.getRoutingTable();
+            logMessage("Keyspace is split into " + routingTable.groupCount() + " Paxos groups");
+
+            askForOperationType(scanner, stub, serverIP);
+
+        } catch (UnknownHostException e) {
+            logMessage("ERROR: UnknownHostException - Host is unreachable");
+        } catch (Exception e) {
+            logMessage("ERROR: " + e.getMessage());
+        }
+    }
+}
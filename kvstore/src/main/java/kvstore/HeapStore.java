@@ -0,0 +1,52 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * KVStore backed by a ConcurrentHashMap on the Java heap. Fast for small datasets, but every pair costs a map node,
+ *    a ByteBuffer wrapping the key and two arrays, and the garbage collector has to trace all of them.
+ * Keys are wrapped in a ByteBuffer for its content-based equals() and hashCode(). The wrapped arrays are never
+ *    modified and the buffers' positions are never moved.
+ */
+final class HeapStore implements KVStore {
+    private final ConcurrentHashMap<ByteBuffer, byte[]> map = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] get(byte[] key) {
+        return map.get(ByteBuffer.wrap(key));
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        map.put(ByteBuffer.wrap(key), value);
+    }
+
+    @Override
+    public boolean remove(byte[] key) {
+        return map.remove(ByteBuffer.wrap(key)) != null;
+    }
+
+    @Override
+    public boolean containsKey(byte[] key) {
+        return map.containsKey(ByteBuffer.wrap(key));
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public <E extends Exception> void forEach(Visitor<E> visitor) throws E {
+        for (Map.Entry<ByteBuffer, byte[]> entry : map.entrySet()) {
+            visitor.visit(entry.getKey().array(), entry.getValue());
+        }
+    }
+}
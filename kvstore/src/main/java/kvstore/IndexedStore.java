@@ -0,0 +1,75 @@
+package kvstore;
+
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * KVStore decorator that keeps the keys of another store in a concurrent skip list, so they can be scanned in
+ *    order. Keys are ordered by their bytes compared as unsigned values (Arrays.compareUnsigned), which for UTF-8
+ *    keys is the order of their code points. Every write goes through this class, whether it comes from the
+ *    Learner, a snapshot or a restart, so the index always holds exactly the store's keys once the write returns.
+ *    Values stay in the wrapped store.
+ */
+final class IndexedStore implements KVStore {
+    private final KVStore store;
+    private final ConcurrentSkipListSet<byte[]> keys = new ConcurrentSkipListSet<>(Arrays::compareUnsigned);
+
+    IndexedStore(KVStore store) {
+        this.store = store;
+        store.forEach((key, value) -> keys.add(key));
+    }
+
+    /**
+     * @param startKey The first key, inclusive.
+     * @param endKey The last key, exclusive, or null for no end.
+     * @return A live, weakly consistent view of the keys in the range, in ascending order.
+     */
+    NavigableSet<byte[]> keys(byte[] startKey, byte[] endKey) {
+        if (endKey == null) {
+            return keys.tailSet(startKey, true);
+        }
+        if (Arrays.compareUnsigned(startKey, endKey) >= 0) {
+            return keys.subSet(startKey, true, startKey, false); // Empty
+        }
+        return keys.subSet(startKey, true, endKey, false);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return store.get(key);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        store.put(key, value);
+        keys.add(key);
+    }
+
+    @Override
+    public boolean remove(byte[] key) {
+        keys.remove(key);
+        return store.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(byte[] key) {
+        return store.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+        store.clear();
+    }
+
+    @Override
+    public <E extends Exception> void forEach(Visitor<E> visitor) throws E {
+        store.forEach(visitor);
+    }
+}
@@ -0,0 +1,749 @@
+package kvstore;
+
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Programmatic client for the Paxos Key-Value store, for applications that send requests from many threads.
+ * Keeps a cached RMI stub for every replica, so a request costs no registry lookup, and RMI reuses its connection
+ *    to each replica between requests. Writes go straight to the leader of the key's Paxos group, learned from the
+ *    routing table and from REDIRECT replies. Plain GETs are spread round-robin across the replicas.
+ * A replica that fails is skipped for a backoff period and the request is retried on another one, with exponential
+ *    backoff between attempts. A request that never reached a server is always retried. PUT, DELETE and GET are
+ *    also retried after any other failure, as repeating them is harmless. Conditional operations are not, as the
+ *    first attempt may already have been applied.
+ * Every request has a CompletableFuture variant that runs on the client's own thread pool.
+ * enableNearCache() keeps the results of plain GETs in a local NearCache, invalidated by polling a replica's
+ *    change feed, so hot keys are read without a remote call.
+ * watch() streams the writes applied to keys under a prefix to a callback, resuming on another replica if the
+ *    watched one fails.
+ * scan() and prefixScan() iterate over a key range in order, fetching it one page at a time.
+ * Keys and values are UTF-8 text in the String methods. The byte[] methods (put(), getValue(), scan() and so on)
+ *    take and return raw bytes, so binary values are stored and read back exactly.
+ */
+public class KVClient implements AutoCloseable {
+    private static final int REGISTRY_PORT = 1099;
+    private static final long MAX_BACKOFF_MS = 2000;
+    private static final long WATCH_POLL_MS = 10000; // Longest a watch waits in one call, so close() is noticed
+    private static final int WATCH_MAX_EVENTS = 1000;
+
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final String clientName; // Sent with GETs, the servers log it
+    private volatile List<String> replicas; // Server names, refreshed from the cluster's membership
+    private final ConcurrentHashMap<String, RemoteOperations> stubs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> downUntil = new ConcurrentHashMap<>(); // Replicas to skip for now
+    private volatile AtomicReferenceArray<String> leaders = null; // Known leader of each Paxos group, null until fetched
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ExecutorService executor;
+    // Near cache: optional, filled from one home replica whose change feed invalidates it
+    private volatile NearCache nearCache = null;
+    private ScheduledExecutorService cachePoller = null;
+    private long[] feedPosition = new long[0]; // Last slot of each group covered by the feed, used by the poller only
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A single request to one replica.
+     */
+    interface Request {
+        String send(RemoteOperations server) throws RemoteException;
+    }
+
+    /**
+     * A single read returning something other than a result message, sent to any replica.
+     */
+    interface Read<T> {
+        T send(RemoteOperations server) throws RemoteException;
+    }
+
+    public KVClient(List<String> servers) {
+        this(servers, 16, 5, 50);
+    }
+
+    /**
+     * @param servers Names of the replicas to start from, e.g. "rmi-server-1". The full membership is fetched from
+     *    the first one that answers.
+     * @param threads Threads running the asynchronous requests.
+     * @param maxAttempts Maximum attempts per request, across all replicas.
+     * @param backoffMs Wait before the second attempt, doubled for every further attempt.
+     */
+    public KVClient(List<String> servers, int threads, int maxAttempts, long backoffMs) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("KVClient needs at least one server");
+        }
+        this.replicas = List.copyOf(servers);
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+        this.executor = Executors.newFixedThreadPool(threads);
+        String name;
+        try {
+            name = InetAddress.getLocalHost().getHostAddress();
+        } catch (java.net.UnknownHostException e) {
+            name = "KVClient";
+        }
+        this.clientName = name;
+    }
+
+    public String put(String key, String value) throws RemoteException {
+        return propose(Operation.put(key, value));
+    }
+
+    public String delete(String key) throws RemoteException {
+        return propose(Operation.delete(key));
+    }
+
+    public String put(byte[] key, byte[] value) throws RemoteException {
+        return propose(Operation.put(key, value));
+    }
+
+    public String delete(byte[] key) throws RemoteException {
+        return propose(Operation.delete(key));
+    }
+
+    /**
+     * Proposes a write to the leader of the key's Paxos group.
+     * @param operation A PUT, DELETE or conditional operation.
+     * @return The result of the proposal, including the outcome of a conditional operation.
+     * @throws RemoteException If no replica could complete the write.
+     */
+    public String propose(Operation operation) throws RemoteException {
+        byte[] value = operation.encode();
+        return execute(operation.key, true, !operation.isConditional(), server -> server.propose(value));
+    }
+
+    /**
+     * Reads a key from the near cache if it is enabled and holds the key, otherwise from the next replica in turn,
+     *    which may not have applied the latest writes yet.
+     * @param key The key.
+     * @return The server's GET result.
+     * @throws RemoteException If no replica answered.
+     */
+    public String get(String key) throws RemoteException {
+        NearCache cache = nearCache;
+        if (cache != null) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            NearCache.Fill fill = cache.startFill(key);
+            if (fill != null) {
+                try {
+                    String result = stub(fill.home).getRecord(key, clientName);
+                    if (!result.startsWith("ERROR")) {
+                        cache.completeFill(key, fill, result);
+                    }
+                    return result;
+                } catch (RemoteException | NotBoundException e) { // Read elsewhere, the poller moves the cache
+                    markDown(fill.home, 1);
+                }
+            }
+        }
+        return execute(key.getBytes(StandardCharsets.UTF_8), false, true, server -> server.getRecord(key, clientName));
+    }
+
+    /**
+     * Reads the exact bytes of a key's value from the next replica in turn, which may not have applied the latest
+     *    writes yet. Bypasses the near cache.
+     * @param key The key.
+     * @return The value, or null if the key does not exist.
+     * @throws RemoteException If no replica answered.
+     */
+    public byte[] getValue(byte[] key) throws RemoteException {
+        return readAny(key, "GET", server -> server.getValue(key, false));
+    }
+
+    /**
+     * Reads the exact bytes of a key's value through the read-index check, see getConsistent().
+     * @param key The key.
+     * @return The value, or null if the key does not exist.
+     * @throws RemoteException If no replica answered.
+     */
+    public byte[] getConsistentValue(byte[] key) throws RemoteException {
+        return readAny(key, "GET", server -> server.getValue(key, true));
+    }
+
+    /**
+     * Turns on the near cache for get(). Cached values come from one home replica, whose change feed is polled
+     *    every pollIntervalMs to drop the keys written since. If the home replica fails, the cache is cleared and
+     *    moves to another replica.
+     * @param maxEntries The most keys cached, the least recently read is evicted first.
+     * @param pollIntervalMs How often the change feed is polled.
+     * @param maxStalenessMs How long the cache keeps serving reads after the last successful poll, at least
+     *    pollIntervalMs plus the time a poll takes.
+     */
+    public synchronized void enableNearCache(int maxEntries, long pollIntervalMs, long maxStalenessMs) {
+        if (nearCache != null) {
+            return;
+        }
+        nearCache = new NearCache(maxEntries, maxStalenessMs);
+        cachePoller = Executors.newSingleThreadScheduledExecutor();
+        cachePoller.scheduleWithFixedDelay(this::pollChanges, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The near cache's size and hit counts, or null if it is not enabled.
+     */
+    public String nearCacheStats() {
+        NearCache cache = nearCache;
+        return cache == null ? null : cache.toString();
+    }
+
+    /**
+     * Polls the home replica's change feed once and invalidates the keys it reports. Runs on cachePoller.
+     */
+    private void pollChanges() {
+        NearCache cache = nearCache;
+        String home = cache.home();
+        if (home == null) { // First poll, or the previous home failed
+            home = pickReplica(null, false);
+            feedPosition = new long[0];
+        }
+        try {
+            KeyChanges changes = stub(home).getChangedKeys(feedPosition);
+            if (changes.reset) {
+                cache.clear();
+            } else {
+                cache.invalidate(changes.keys);
+            }
+            feedPosition = changes.slots;
+            cache.synced(home);
+        } catch (RemoteException | NotBoundException e) {
+            markDown(home, 1);
+            cache.clear();
+        } catch (RuntimeException e) { // Keep polling, an exception would cancel the schedule
+            cache.clear();
+        }
+    }
+
+    /**
+     * A running watch, see watch().
+     */
+    public final class Watch implements AutoCloseable {
+        private final byte[] prefix;
+        private final Consumer<WatchBatch> onBatch;
+        private final Thread thread;
+        private volatile long[] positions;
+        private volatile boolean closed = false;
+
+        private Watch(byte[] prefix, long[] fromPositions, Consumer<WatchBatch> onBatch) {
+            this.prefix = prefix;
+            this.onBatch = onBatch;
+            this.positions = fromPositions == null ? new long[0] : fromPositions.clone();
+            this.thread = new Thread(this::run, "KVClient-watch-" + new String(prefix, StandardCharsets.UTF_8));
+            thread.setDaemon(true);
+        }
+
+        /**
+         * @return The position after the last batch the callback has processed, to pass to watch() to resume.
+         */
+        public long[] positions() {
+            return positions.clone();
+        }
+
+        /**
+         * @return Whether the watch has stopped, after close() or because the callback threw.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops the watch. The callback is not called again, but a call in progress is not interrupted.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            watches.remove(this);
+            thread.interrupt();
+        }
+
+        /**
+         * Long-polls one replica until it fails, then moves to another one and resumes from the same positions.
+         *    Positions are slots of the replicated log, so they mean the same on every replica.
+         */
+        private void run() {
+            String replica = null;
+            int failures = 0;
+            while (!closed) {
+                if (replica == null || !isUp(replica)) {
+                    replica = pickReplica(prefix, false);
+                }
+                WatchBatch batch;
+                try {
+                    batch = stub(replica).watch(prefix, positions, WATCH_MAX_EVENTS, WATCH_POLL_MS);
+                    failures = 0;
+                } catch (RemoteException | NotBoundException e) {
+                    if (closed) {
+                        return;
+                    }
+                    markDown(replica, ++failures);
+                    replica = null;
+                    try {
+                        Thread.sleep(backoff(failures));
+                    } catch (InterruptedException interrupted) {
+                        return; // Closed
+                    }
+                    continue;
+                }
+                if (closed) {
+                    return;
+                }
+                if (!batch.events.isEmpty() || batch.truncated) {
+                    try {
+                        onBatch.accept(batch);
+                    } catch (RuntimeException e) { // Stop before the batch, positions() still resumes at it
+                        close();
+                        return;
+                    }
+                }
+                positions = batch.positions;
+            }
+        }
+    }
+
+    /**
+     * Streams the writes applied to keys under a prefix, in the order the servers applied them, to a callback
+     *    running on the watch's own thread. The next batch is only requested once the callback returns, so a slow
+     *    callback slows the watch down rather than building up a queue.
+     * If the watched replica fails, the watch resumes on another one without missing or repeating writes. If the
+     *    watch falls too far behind, it gets a batch with truncated set, meaning writes were missed and the
+     *    watched keys should be read again, and it continues with the writes after that batch.
+     * @param prefix Only writes to keys starting with this prefix are streamed, "" for every key.
+     * @param fromPositions positions() of an earlier watch to resume it, or null to start with the next write.
+     * @param onBatch Called with each batch of writes. If it throws, the watch stops.
+     * @return The watch, close it to stop.
+     */
+    public Watch watch(String prefix, long[] fromPositions, Consumer<WatchBatch> onBatch) {
+        return watch(prefix.getBytes(StandardCharsets.UTF_8), fromPositions, onBatch);
+    }
+
+    /**
+     * Streams the writes applied to keys starting with a byte prefix, see watch(String, long[], Consumer).
+     * @param prefix Only writes to keys starting with these bytes are streamed, an empty array for every key.
+     * @param fromPositions positions() of an earlier watch to resume it, or null to start with the next write.
+     * @param onBatch Called with each batch of writes. If it throws, the watch stops.
+     * @return The watch, close it to stop.
+     */
+    public Watch watch(byte[] prefix, long[] fromPositions, Consumer<WatchBatch> onBatch) {
+        Watch watch = new Watch(prefix, fromPositions, onBatch);
+        watches.add(watch);
+        watch.thread.start();
+        return watch;
+    }
+
+    /**
+     * Reads a key through the read-index check, so the value reflects every write completed before the call.
+     *    Any replica can serve it, so these reads are spread across the replicas as well.
+     * @param key The key.
+     * @return The server's GET result.
+     * @throws RemoteException If no replica answered.
+     */
+    public String getConsistent(String key) throws RemoteException {
+        return execute(key.getBytes(StandardCharsets.UTF_8), false, true, server -> server.getConsistentRecord(key, clientName));
+    }
+
+    /**
+     * Reads one page of a key range from the next replica in turn, retrying on others if it fails.
+     * @param startKey The first key, inclusive.
+     * @param endKey The last key, exclusive, or null for no end.
+     * @param limit The most keys to return, the servers cap it at PAXOS_MAX_SCAN_PAGE.
+     * @return The page.
+     * @throws RemoteException If no replica answered.
+     */
+    public ScanPage scanPage(byte[] startKey, byte[] endKey, int limit) throws RemoteException {
+        return readAny(startKey, "scan", server -> server.scan(startKey, endKey, limit));
+    }
+
+    /**
+     * Iterates over the keys of a range in ascending order, with their values, decoded as UTF-8. Keys are ordered
+     *    by their UTF-8 bytes, which is the order of their code points. Pages of pageSize keys are fetched as the
+     *    iteration reaches them, each from whichever replica answers, so a long scan is not pinned to one server.
+     *    Each page is consistent on its own, but writes applied between two pages may be missed by one and seen by
+     *    the next.
+     * @param startKey The first key, inclusive.
+     * @param endKey The last key, exclusive, or null for no end.
+     * @param pageSize Keys fetched per remote call.
+     * @return The iterator. hasNext() and next() throw UncheckedIOException wrapping the RemoteException if no
+     *    replica can serve the next page.
+     */
+    public Iterator<Map.Entry<String, String>> scan(String startKey, String endKey, int pageSize) {
+        return decoded(new ScanIterator(startKey.getBytes(StandardCharsets.UTF_8),
+                endKey == null ? null : endKey.getBytes(StandardCharsets.UTF_8), pageSize));
+    }
+
+    /**
+     * Iterates over the keys of a range in ascending order of their unsigned bytes, with their exact values, see
+     *    scan(String, String, int).
+     * @param startKey The first key, inclusive.
+     * @param endKey The last key, exclusive, or null for no end.
+     * @param pageSize Keys fetched per remote call.
+     * @return The iterator.
+     */
+    public Iterator<Map.Entry<byte[], byte[]>> scan(byte[] startKey, byte[] endKey, int pageSize) {
+        return new ScanIterator(startKey, endKey, pageSize);
+    }
+
+    /**
+     * Iterates over the keys starting with a prefix in ascending order, with their values, see scan().
+     * @param prefix The key prefix, "" for every key.
+     * @param pageSize Keys fetched per remote call.
+     * @return The iterator.
+     */
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int pageSize) {
+        return decoded(prefixScan(prefix.getBytes(StandardCharsets.UTF_8), pageSize));
+    }
+
+    /**
+     * Iterates over the keys starting with a byte prefix in ascending order, with their exact values, see scan().
+     * @param prefix The key prefix, an empty array for every key.
+     * @param pageSize Keys fetched per remote call.
+     * @return The iterator.
+     */
+    public Iterator<Map.Entry<byte[], byte[]>> prefixScan(byte[] prefix, int pageSize) {
+        return new ScanIterator(prefix, ScanPage.prefixEnd(prefix), pageSize);
+    }
+
+    /**
+     * @return An iterator decoding the keys and values of entries as UTF-8.
+     */
+    private static Iterator<Map.Entry<String, String>> decoded(Iterator<Map.Entry<byte[], byte[]>> entries) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                return Map.entry(new String(entry.getKey(), StandardCharsets.UTF_8),
+                        new String(entry.getValue(), StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    /**
+     * Iterator of scan(), fetching the next page when the current one is used up.
+     */
+    private final class ScanIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+        private final byte[] endKey;
+        private final int pageSize;
+        private byte[] nextKey; // Start of the next page, null once the last page has been fetched
+        private ScanPage page = null;
+        private int position = 0; // Next entry of page
+
+        ScanIterator(byte[] startKey, byte[] endKey, int pageSize) {
+            this.nextKey = startKey;
+            this.endKey = endKey;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((page == null || position == page.keys.size()) && nextKey != null) {
+                try {
+                    page = scanPage(nextKey, endKey, pageSize);
+                } catch (RemoteException e) {
+                    throw new UncheckedIOException(e);
+                }
+                position = 0;
+                nextKey = page.nextKey;
+            }
+            return page != null && position < page.keys.size();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<byte[], byte[]> entry = Map.entry(page.keys.get(position), page.values.get(position));
+            position++;
+            return entry;
+        }
+    }
+
+    public CompletableFuture<String> putAsync(String key, String value) {
+        return async(() -> put(key, value));
+    }
+
+    public CompletableFuture<String> deleteAsync(String key) {
+        return async(() -> delete(key));
+    }
+
+    public CompletableFuture<String> proposeAsync(Operation operation) {
+        return async(() -> propose(operation));
+    }
+
+    public CompletableFuture<String> getAsync(String key) {
+        return async(() -> get(key));
+    }
+
+    public CompletableFuture<String> getConsistentAsync(String key) {
+        return async(() -> getConsistent(key));
+    }
+
+    /**
+     * A blocking request run by async().
+     */
+    private interface BlockingCall {
+        String call() throws RemoteException;
+    }
+
+    /**
+     * Runs a blocking request on the client's thread pool.
+     * @param call The request.
+     * @return A future completed with the result, or exceptionally with the RemoteException wrapped in a
+     *    CompletionException.
+     */
+    private CompletableFuture<String> async(BlockingCall call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RemoteException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Fetches the cluster's members and the leader of every Paxos group from the first replica that answers.
+     *    Called before the first request, and whenever a REDIRECT names a server this client does not know.
+     * @return true if a replica answered.
+     */
+    public boolean refresh() {
+        for (String name : replicas) {
+            try {
+                RemoteOperations server = stub(name);
+                RoutingTable table = server.getRoutingTable();
+                List<String> members = server.getMembers();
+                AtomicReferenceArray<String> known = new AtomicReferenceArray<>(table.groupCount());
+                for (int g = 0; g < table.groupCount(); g++) {
+                    known.set(g, table.leaderOf(g));
+                }
+                leaders = known;
+                if (!members.isEmpty()) {
+                    replicas = List.copyOf(members);
+                }
+                return true;
+            } catch (RemoteException | NotBoundException e) {
+                markDown(name, 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a read to the next replica in turn, retrying on others if it fails. Reads are always safe to repeat.
+     * @param key The key the read is about, used to pick a replica, or null.
+     * @param name The name of the read, used in the error message.
+     * @param read The read.
+     * @return The result of the read.
+     * @throws RemoteException If every attempt failed.
+     */
+    private <T> T readAny(byte[] key, String name, Read<T> read) throws RemoteException {
+        RemoteException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            String target = pickReplica(key, false);
+            try {
+                return read.send(stub(target));
+            } catch (RemoteException | NotBoundException e) {
+                markDown(target, attempt);
+                lastError = e instanceof RemoteException ? (RemoteException) e
+                        : new RemoteException(target + " is not bound", e);
+            }
+            backOff(attempt);
+        }
+        throw new RemoteException("No replica completed the " + name + " after " + maxAttempts + " attempts", lastError);
+    }
+
+    /**
+     * Sends a request to a replica, retrying on others until it succeeds or maxAttempts is reached.
+     * @param key The key the request is about, used to find its Paxos group.
+     * @param write Whether the request is a write, which is sent to the group's leader.
+     * @param idempotent Whether the request may be repeated after a failure that may have reached the server.
+     * @param request The request.
+     * @return The result of the request.
+     * @throws RemoteException If every attempt failed.
+     */
+    private String execute(byte[] key, boolean write, boolean idempotent, Request request) throws RemoteException {
+        if (leaders == null) {
+            refresh();
+        }
+        RemoteException lastError = null;
+        String lastResult = null;
+        String redirectedTo = null; // Leader named by a REDIRECT, tried next without backing off
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            String target = redirectedTo != null ? redirectedTo : pickReplica(key, write);
+            redirectedTo = null;
+            try {
+                String result = request.send(stub(target));
+                if (result.startsWith("REDIRECT,")) {
+                    redirectedTo = result.substring("REDIRECT,".length());
+                    learnLeader(key, redirectedTo);
+                    continue;
+                }
+                if (!write || !idempotent || result.contains("reached consensus")) {
+                    return result;
+                }
+                lastResult = result; // No consensus, e.g. while a new leader is elected
+            } catch (RemoteException | NotBoundException e) {
+                markDown(target, attempt);
+                forgetLeader(target);
+                if (!idempotent && !neverSent(e)) { // A conditional write may have been applied
+                    throw new RemoteException("Outcome unknown, " + target + " failed during the request", e);
+                }
+                lastError = e instanceof RemoteException ? (RemoteException) e
+                        : new RemoteException(target + " is not bound", e);
+            }
+            backOff(attempt);
+        }
+        if (lastResult != null) {
+            return lastResult;
+        }
+        throw new RemoteException("No replica completed the request after " + maxAttempts + " attempts", lastError);
+    }
+
+    /**
+     * @param e The exception thrown by a request.
+     * @return Whether the request certainly did not reach a server, so it can be retried whatever it does.
+     */
+    private static boolean neverSent(Exception e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException || e instanceof UnknownHostException
+                || e instanceof NoSuchObjectException || e instanceof NotBoundException;
+    }
+
+    /**
+     * Chooses the replica for the next attempt: the group's leader for a write if it is known and not failing,
+     *    otherwise the next replica in turn that is not failing.
+     * @param key The key the request is about, only used for a write.
+     * @param write Whether the request is a write.
+     * @return A server name.
+     */
+    private String pickReplica(byte[] key, boolean write) {
+        AtomicReferenceArray<String> known = leaders;
+        if (write && known != null) {
+            String leader = known.get(RoutingTable.groupOf(key, known.length()));
+            if (leader != null && isUp(leader)) {
+                return leader;
+            }
+        }
+        List<String> current = replicas;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), current.size());
+        for (int i = 0; i < current.size(); i++) {
+            String name = current.get((start + i) % current.size());
+            if (isUp(name)) {
+                return name;
+            }
+        }
+        return current.get(start); // Every replica is failing, try anyway
+    }
+
+    private boolean isUp(String name) {
+        Long until = downUntil.get(name);
+        return until == null || until <= System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the cached stub of a replica, looking it up in the replica's registry the first time.
+     * @param name The server name.
+     * @return The stub of the server's ShardRouter, or of the server itself with a single Paxos group.
+     */
+    private RemoteOperations stub(String name) throws RemoteException, NotBoundException {
+        RemoteOperations stub = stubs.get(name);
+        if (stub == null) {
+            stub = LocalCluster.lookup(name); // Set when the server runs in this JVM, see Server.startLocalCluster()
+            if (stub == null) {
+                Registry registry = LocateRegistry.getRegistry(name, REGISTRY_PORT);
+                stub = (RemoteOperations) registry.lookup(name);
+            }
+            stubs.put(name, stub);
+            downUntil.remove(name);
+        }
+        return stub;
+    }
+
+    /**
+     * Skips a failed replica for a backoff period and drops its stub, so it is looked up again afterwards.
+     */
+    private void markDown(String name, int attempt) {
+        stubs.remove(name);
+        downUntil.put(name, System.currentTimeMillis() + backoff(attempt));
+    }
+
+    private void learnLeader(byte[] key, String leader) {
+        AtomicReferenceArray<String> known = leaders;
+        if (known != null) {
+            known.set(RoutingTable.groupOf(key, known.length()), leader);
+        }
+        if (!replicas.contains(leader)) { // Added since the membership was fetched
+            refresh();
+        }
+    }
+
+    private void forgetLeader(String name) {
+        AtomicReferenceArray<String> known = leaders;
+        if (known != null) {
+            for (int g = 0; g < known.length(); g++) {
+                known.compareAndSet(g, name, null);
+            }
+        }
+    }
+
+    /**
+     * @param attempt The attempt that failed, starting at 1.
+     * @return An exponentially growing wait with random jitter, at most MAX_BACKOFF_MS.
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, backoffMs << Math.min(attempt - 1, 16));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private void backOff(int attempt) throws RemoteException {
+        try {
+            Thread.sleep(backoff(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while retrying");
+        }
+    }
+
+    /**
+     * Stops the thread pool running asynchronous requests, the near cache poller and every watch.
+     */
+    @Override
+    public synchronized void close() {
+        executor.shutdown();
+        for (Watch watch : watches) {
+            watch.close();
+        }
+        if (cachePoller != null) {
+            cachePoller.shutdown();
+        }
+    }
+}
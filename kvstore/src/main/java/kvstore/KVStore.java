@@ -0,0 +1,61 @@
+package kvstore;
+
+/**
+ * Storage engine holding the key/value pairs of one Paxos group.
+ * Keys and values are raw bytes, exactly as they were written by the client, so any value survives being stored,
+ *    snapshotted and read back. Arrays passed to or returned by a store must not be modified afterwards.
+ * The Learner is the only writer, applying decided slots one at a time, while client reads and snapshots run
+ *    concurrently with it, so every implementation must be thread-safe.
+ * Selected with PAXOS_STORE: HeapStore (default) keeps the pairs in a ConcurrentHashMap, OffHeapStore keeps them
+ *    outside the Java heap.
+ */
+interface KVStore {
+    /**
+     * Receives each key/value pair visited by forEach().
+     */
+    interface Visitor<E extends Exception> {
+        void visit(byte[] key, byte[] value) throws E;
+    }
+
+    /**
+     * @param key The key.
+     * @return The key's value, or null if the key does not exist.
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * Sets a key's value, replacing any previous value.
+     * @param key The key.
+     * @param value The value.
+     */
+    void put(byte[] key, byte[] value);
+
+    /**
+     * Deletes a key.
+     * @param key The key.
+     * @return Whether the key existed.
+     */
+    boolean remove(byte[] key);
+
+    default boolean containsKey(byte[] key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return The number of keys.
+     */
+    int size();
+
+    /**
+     * Deletes every key.
+     */
+    void clear();
+
+    /**
+     * Visits every key/value pair without blocking writers for the whole visit. Pairs written while it runs may
+     *    or may not be visited, but a key that is not written while it runs is visited exactly once.
+     * @param visitor Receives each pair.
+     * @throws E If the visitor throws.
+     */
+    <E extends Exception> void forEach(Visitor<E> visitor) throws E;
+}
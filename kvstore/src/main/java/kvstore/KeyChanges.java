@@ -0,0 +1,23 @@
+package kvstore;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Keys changed by the slots a server applied after a given position of its log, one position per Paxos group.
+ * A client keeping a near cache polls getChangedKeys() with the positions of the previous reply and drops the
+ *    returned keys from its cache.
+ */
+public final class KeyChanges implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long[] slots; // Last slot covered in each group, passed back as fromSlots on the next poll
+    final List<String> keys; // Keys written or deleted by the covered slots, without duplicates
+    final boolean reset; // The requested slots are no longer retained, every cached key must be dropped
+
+    public KeyChanges(long[] slots, List<String> keys, boolean reset) {
+        this.slots = slots;
+        this.keys = keys;
+        this.reset = reset;
+    }
+}
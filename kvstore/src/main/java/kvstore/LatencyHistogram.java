@@ -0,0 +1,184 @@
+package kvstore;
+
+import java.io.PrintStream;
+
+/**
+ * Latency histogram with the bucket layout of HdrHistogram: values are counted in buckets whose width doubles
+ *    with every power of two, each split into enough sub-buckets to keep a fixed number of significant digits, so
+ *    recording costs a few shifts and one increment, and the memory used does not depend on how many values are
+ *    recorded. Percentiles are exact to within the chosen precision, from nanoseconds up to the highest value.
+ * Not thread-safe: each recording thread keeps its own histograms, merged with add() once it is done.
+ */
+final class LatencyHistogram {
+    private final long highestTrackableValue;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+    private long totalCount = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+
+    /**
+     * @param highestTrackableValue The largest value recorded as is, larger values are recorded as this one.
+     * @param significantDigits Decimal digits kept for every value, 1 to 5.
+     */
+    LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (highestTrackableValue < 2 || significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("Histogram needs highestTrackableValue >= 2 and 1 to 5 significant digits");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        long largestSingleUnitValue = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitValue - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketCountMagnitude;
+        int bucketCount = 1;
+        for (long smallestUntrackable = subBucketCount; smallestUntrackable <= highestTrackableValue; bucketCount++) {
+            if (smallestUntrackable > Long.MAX_VALUE / 2) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackable <<= 1;
+        }
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+    /**
+     * Counts a value.
+     * @param value The value, e.g. a latency in nanoseconds. Negative values are counted as 0.
+     */
+    void record(long value) {
+        value = Math.max(0, Math.min(value, highestTrackableValue));
+        counts[indexOf(value)]++;
+        totalCount++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+
+    /**
+     * Adds the counts of another histogram with the same precision and range to this one.
+     * @param other The histogram to add.
+     */
+    void add(LatencyHistogram other) {
+        if (other.counts.length != counts.length || other.subBucketHalfCount != subBucketHalfCount) {
+            throw new IllegalArgumentException("Histograms have a different precision or range");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    long count() {
+        return totalCount;
+    }
+
+    long max() {
+        return max;
+    }
+
+    long min() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    double mean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    double stdDeviation() {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double mean = mean();
+        return Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+    }
+
+    /**
+     * @param percentile A percentile from 0 to 100, e.g. 99.9.
+     * @return The largest value that percentile of the recorded values is at or below, to within the precision,
+     *    or 0 if nothing was recorded.
+     */
+    long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Writes the percentile distribution in HdrHistogram's .hgrm text format, which its plotting tools read.
+     * @param out Where to write.
+     * @param scale Divides every value, e.g. 1000.0 to print nanoseconds as microseconds.
+     */
+    void writePercentileDistribution(PrintStream out, double scale) {
+        out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+        if (totalCount > 0) {
+            // Five steps per halving of the distance to 100%, like HdrHistogram's own reports
+            double percentile = 0;
+            while (true) {
+                long value = valueAtPercentile(percentile);
+                long below = countAtOrBelow(value);
+                double reached = 100.0 * below / totalCount;
+                if (below == totalCount) {
+                    out.printf("%12.3f %1.12f %10d%n", value / scale, 1.0, totalCount);
+                    break;
+                }
+                out.printf("%12.3f %1.12f %10d %14.2f%n", value / scale, reached / 100, below, 1 / (1 - reached / 100));
+                double halfDistance = Math.pow(2, Math.floor(Math.log(100 / (100 - reached)) / Math.log(2)) + 1);
+                percentile = Math.max(reached, percentile) + 100 / (halfDistance * 5);
+            }
+        }
+        out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean() / scale, stdDeviation() / scale);
+        out.printf("#[Max     = %12.3f, Total count    = %12d]%n", max / scale, totalCount);
+        out.printf("#[Buckets = %12d, SubBuckets     = %12d]%n", counts.length / subBucketHalfCount - 1, subBucketHalfCount * 2);
+    }
+
+    private long countAtOrBelow(long value) {
+        long below = 0;
+        int last = indexOf(value);
+        for (int i = 0; i <= last; i++) {
+            below += counts[i];
+        }
+        return below;
+    }
+
+    private int indexOf(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + subBucketIndex - subBucketHalfCount;
+    }
+
+    /**
+     * @param index An index into counts.
+     * @return The largest value counted at that index.
+     */
+    private long highestEquivalentValue(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex << bucketIndex) + (1L << bucketIndex) - 1;
+    }
+}
@@ -0,0 +1,436 @@
+package kvstore;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for sizing a cluster and catching throughput regressions.
+ * Runs worker threads that send GETs and PUTs through a KVClient, with a configurable read/write mix, key
+ *    distribution and value size, and records the latency of every operation in a LatencyHistogram per
+ *    operation type. At the end it reports each type's throughput and latency percentiles.
+ * Closed loop (the default), each worker sends its next operation as soon as the previous one completes, which
+ *    measures the highest throughput. Open loop (--rate), operations are started on a fixed schedule whatever the
+ *    latency, and each latency is measured from the time the operation was due rather than from when it was
+ *    sent, so a stall is charged to every operation it delayed instead of hiding them.
+ * Usage: java kvstore.LoadGenerator [options], or java kvstore.Client <client_ip> <port> load [options]
+ *    --servers a,b,c       Servers to connect to, PAXOS_MEMBERS by default
+ *    --in-process          Start the servers in this JVM instead, see Server.startLocalCluster()
+ *    --threads N           Worker threads, 16 by default
+ *    --duration S          Seconds measured, 30 by default
+ *    --warmup S            Seconds run before measuring, 5 by default
+ *    --read-ratio R        Fraction of operations that are GETs, 0.9 by default
+ *    --consistent          Send linearizable GETs instead of plain ones
+ *    --keys N              Keys written and read, 100000 by default
+ *    --distribution D      uniform (default) or zipfian
+ *    --zipf-theta T        Skew of the zipfian distribution, 0.99 by default
+ *    --value-size B        Characters per value, 100 by default
+ *    --rate R              Operations per second across all threads, 0 (default) for closed loop
+ *    --preload             Write every key once before the warmup, so GETs find values
+ *    --hgrm PREFIX         Also write each type's distribution to PREFIX-TYPE.hgrm, in microseconds
+ * With --in-process, calls between the servers can cross a NetworkSimulator to measure them under faults:
+ *    --latency MIN-MAX     Round trip of a call between servers in milliseconds, e.g. 0.5-2
+ *    --drop P              Fraction of calls between servers dropped
+ *    --reorder P           Fraction of calls delayed by up to --reorder-delay more, so later calls overtake them
+ *    --reorder-delay MS    Longest extra delay of a reordered call, 10 by default
+ *    --partition E:D       Every E seconds, cut a random minority of the servers off for D seconds
+ */
+public class LoadGenerator {
+    private static final long HIGHEST_LATENCY_NS = TimeUnit.MINUTES.toNanos(5);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final String[] TYPES = {"GET", "PUT"};
+    private static final int GET = 0;
+    private static final int PUT = 1;
+
+    private final List<String> servers;
+    private final boolean inProcess;
+    private final int threads;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final double readRatio;
+    private final boolean consistent;
+    private final int keys;
+    private final boolean zipfian;
+    private final double zipfTheta;
+    private final int valueSize;
+    private final double rate;
+    private final boolean preload;
+    private final String hgrmPrefix;
+    private final NetworkSimulator network; // Null unless a network fault option is set
+    private final long[] partitionSchedule; // Seconds between partitions and their length, or null
+
+    private LoadGenerator(String[] args) {
+        List<String> servers = null;
+        boolean inProcess = false;
+        int threads = 16;
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        double readRatio = 0.9;
+        boolean consistent = false;
+        int keys = 100_000;
+        boolean zipfian = false;
+        double zipfTheta = 0.99;
+        int valueSize = 100;
+        double rate = 0;
+        boolean preload = false;
+        String hgrmPrefix = null;
+        double[] latency = null;
+        double drop = 0;
+        double reorder = 0;
+        double reorderDelay = 10;
+        long[] partitionSchedule = null;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            switch (option) {
+                case "--in-process": inProcess = true; continue;
+                case "--consistent": consistent = true; continue;
+                case "--preload": preload = true; continue;
+                default: break;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--servers": servers = Arrays.asList(value.split(",")); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--duration": durationSeconds = Integer.parseInt(value); break;
+                case "--warmup": warmupSeconds = Integer.parseInt(value); break;
+                case "--read-ratio": readRatio = Double.parseDouble(value); break;
+                case "--keys": keys = Integer.parseInt(value); break;
+                case "--distribution": zipfian = parseDistribution(value); break;
+                case "--zipf-theta": zipfTheta = Double.parseDouble(value); break;
+                case "--value-size": valueSize = Integer.parseInt(value); break;
+                case "--rate": rate = Double.parseDouble(value); break;
+                case "--hgrm": hgrmPrefix = value; break;
+                case "--latency": latency = parsePair(option, value, "-"); break;
+                case "--drop": drop = Double.parseDouble(value); break;
+                case "--reorder": reorder = Double.parseDouble(value); break;
+                case "--reorder-delay": reorderDelay = Double.parseDouble(value); break;
+                case "--partition": partitionSchedule = toMillis(parsePair(option, value, ":")); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (threads < 1 || keys < 1 || durationSeconds < 1 || readRatio < 0 || readRatio > 1 || rate < 0) {
+            throw new IllegalArgumentException("--threads, --keys and --duration must be positive, --read-ratio "
+                    + "between 0 and 1 and --rate at least 0");
+        }
+        if (zipfTheta <= 0 || zipfTheta == 1) {
+            throw new IllegalArgumentException("--zipf-theta must be positive and not 1");
+        }
+        boolean faults = latency != null || drop > 0 || reorder > 0 || partitionSchedule != null;
+        if (faults && !inProcess) {
+            throw new IllegalArgumentException("Network faults can only be simulated with --in-process");
+        }
+        this.network = faults ? new NetworkSimulator(latency == null ? 0 : latency[0],
+                latency == null ? 0 : latency[1], drop, reorder, reorderDelay) : null;
+        this.partitionSchedule = partitionSchedule;
+        this.servers = servers;
+        this.inProcess = inProcess;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = Math.max(0, warmupSeconds);
+        this.readRatio = readRatio;
+        this.consistent = consistent;
+        this.keys = keys;
+        this.zipfian = zipfian;
+        this.zipfTheta = zipfTheta;
+        this.valueSize = Math.max(0, valueSize);
+        this.rate = rate;
+        this.preload = preload;
+        this.hgrmPrefix = hgrmPrefix;
+    }
+
+    /**
+     * Parses two numbers separated by a delimiter, e.g. "0.5-2".
+     */
+    private static double[] parsePair(String option, String value, String delimiter) {
+        String[] parts = value.split(delimiter, 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException(option + " takes two numbers separated by '" + delimiter + "'");
+        }
+        return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+    }
+
+    private static long[] toMillis(double[] seconds) {
+        if (seconds[0] <= 0 || seconds[1] <= 0) {
+            throw new IllegalArgumentException("--partition needs positive durations");
+        }
+        return new long[]{(long) (seconds[0] * 1000), (long) (seconds[1] * 1000)};
+    }
+
+    private static boolean parseDistribution(String value) {
+        if (value.equalsIgnoreCase("uniform")) {
+            return false;
+        }
+        if (value.equalsIgnoreCase("zipfian") || value.equalsIgnoreCase("zipf")) {
+            return true;
+        }
+        throw new IllegalArgumentException("--distribution must be uniform or zipfian");
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(args);
+        } catch (IllegalArgumentException e) { // Includes NumberFormatException
+            System.out.println("ERROR: " + e.getMessage() + ", see the usage in LoadGenerator.java");
+            return;
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    /**
+     * Per-thread measurements, merged once the workers have stopped.
+     */
+    private static final class Recorder {
+        final LatencyHistogram[] latencies = new LatencyHistogram[TYPES.length];
+        final long[] failures = new long[TYPES.length];
+
+        Recorder() {
+            for (int t = 0; t < TYPES.length; t++) {
+                latencies[t] = new LatencyHistogram(HIGHEST_LATENCY_NS, SIGNIFICANT_DIGITS);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        List<String> names;
+        if (inProcess) {
+            if (network != null) {
+                LocalCluster.simulate(network); // Before the servers connect to each other
+            }
+            names = Server.startLocalCluster();
+        } else {
+            names = servers != null ? servers : Client.serverNames();
+        }
+        System.out.printf("Load: %d threads, %s, %.0f%% GETs%s, %,d keys %s, %d-character values, against %s%n",
+                threads, rate > 0 ? String.format("open loop at %,.0f ops/s", rate) : "closed loop",
+                readRatio * 100, consistent ? " (linearizable)" : "", keys,
+                zipfian ? "zipfian (theta " + zipfTheta + ")" : "uniform", valueSize,
+                inProcess ? "an in-process cluster of " + names : names);
+        if (network != null) {
+            System.out.println("Simulated network, " + network);
+        }
+
+        try (KVClient client = new KVClient(names, threads, 5, 50)) {
+            String value = "v".repeat(valueSize);
+            KeyChooser chooser = zipfian ? new ZipfianChooser(keys, zipfTheta) : null;
+            if (preload) {
+                preload(client, value);
+            }
+            if (partitionSchedule != null) {
+                network.schedulePartitions(names, partitionSchedule[0], partitionSchedule[1]);
+            }
+            if (warmupSeconds > 0) {
+                System.out.println("Warming up for " + warmupSeconds + "s");
+                runPhase(client, chooser, value, warmupSeconds);
+            }
+            System.out.println("Measuring for " + durationSeconds + "s");
+            long start = System.nanoTime();
+            Recorder total = runPhase(client, chooser, value, durationSeconds);
+            report(total, (System.nanoTime() - start) / 1e9);
+            if (network != null) {
+                System.out.println("Simulated network, " + network);
+            }
+        }
+    }
+
+    /**
+     * Writes every key once from all worker threads.
+     */
+    private void preload(KVClient client, String value) throws InterruptedException {
+        System.out.println("Preloading " + keys + " keys");
+        AtomicLong next = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (long k; (k = next.getAndIncrement()) < keys; ) {
+                    try {
+                        client.put(keyName(k), value);
+                    } catch (RemoteException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }, "load-preload-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failed.get() > 0) {
+            System.out.println("WARNING: " + failed.get() + " preload PUTs failed");
+        }
+    }
+
+    /**
+     * Runs the workers for a number of seconds.
+     * @return The measurements of every worker, merged.
+     */
+    private Recorder runPhase(KVClient client, KeyChooser chooser, String value, int seconds) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch ready = new CountDownLatch(threads);
+        Recorder[] recorders = new Recorder[threads];
+        List<Thread> workers = new ArrayList<>();
+        long begin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100); // Lets every worker start first
+        long intervalNs = rate > 0 ? (long) (1e9 * threads / rate) : 0; // Between two operations of one worker
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Recorder recorder = new Recorder();
+            recorders[t] = recorder;
+            Thread worker = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(System.nanoTime() ^ id);
+                // Spread the workers' schedules over one interval, so they do not all fire at once
+                long due = begin + (intervalNs * id) / threads;
+                ready.countDown();
+                while (running.get()) {
+                    long start;
+                    if (intervalNs > 0) {
+                        long wait;
+                        while ((wait = due - System.nanoTime()) > 0 && running.get()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        start = due; // Measured from when it was due, even if the worker was late
+                        due += intervalNs;
+                    } else {
+                        start = System.nanoTime();
+                    }
+                    if (!running.get()) {
+                        break;
+                    }
+                    long k = chooser != null ? chooser.next(random) : random.nextLong(keys);
+                    int type = random.nextDouble() < readRatio ? GET : PUT;
+                    boolean ok = send(client, type, keyName(k), value);
+                    if (ok) {
+                        recorder.latencies[type].record(System.nanoTime() - start);
+                    } else {
+                        recorder.failures[type]++;
+                    }
+                }
+            }, "load-worker-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        ready.await();
+        LockSupport.parkNanos(begin - System.nanoTime());
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        Recorder total = new Recorder();
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            for (int type = 0; type < TYPES.length; type++) {
+                total.latencies[type].add(recorders[t].latencies[type]);
+                total.failures[type] += recorders[t].failures[type];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sends one operation and waits for its result.
+     * @return Whether the operation succeeded: a GET that was answered, or a PUT that reached consensus.
+     */
+    private boolean send(KVClient client, int type, String key, String value) {
+        try {
+            if (type == GET) {
+                String result = consistent ? client.getConsistent(key) : client.get(key);
+                return !result.startsWith("ERROR");
+            }
+            return client.put(key, value).contains("reached consensus");
+        } catch (RemoteException e) {
+            return false;
+        }
+    }
+
+    private static String keyName(long k) {
+        return "key" + k;
+    }
+
+    /**
+     * Prints the throughput and latency percentiles of each operation type, and writes the .hgrm files.
+     */
+    private void report(Recorder total, double seconds) throws FileNotFoundException {
+        System.out.printf("%-6s %12s %10s %10s %10s %10s %10s %10s%n",
+                "Type", "ops/s", "failed", "p50 ms", "p99 ms", "p999 ms", "max ms", "mean ms");
+        long allCount = 0;
+        for (int type = 0; type < TYPES.length; type++) {
+            LatencyHistogram latency = total.latencies[type];
+            allCount += latency.count();
+            if (latency.count() == 0 && total.failures[type] == 0) {
+                continue;
+            }
+            System.out.printf("%-6s %,12.0f %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", TYPES[type],
+                    latency.count() / seconds, total.failures[type], latency.valueAtPercentile(50) / 1e6,
+                    latency.valueAtPercentile(99) / 1e6, latency.valueAtPercentile(99.9) / 1e6,
+                    latency.max() / 1e6, latency.mean() / 1e6);
+            if (hgrmPrefix != null) {
+                try (PrintStream out = new PrintStream(hgrmPrefix + "-" + TYPES[type] + ".hgrm")) {
+                    latency.writePercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+        System.out.printf("Total  %,12.0f ops/s%n", allCount / seconds);
+        if (rate > 0 && allCount / seconds < rate * 0.95) {
+            System.out.printf("WARNING: reached %,.0f of the %,.0f ops/s requested, the cluster or the generator is "
+                    + "saturated%n", allCount / seconds, rate);
+        }
+    }
+
+    /**
+     * Picks the key of the next operation.
+     */
+    private interface KeyChooser {
+        long next(SplittableRandom random);
+    }
+
+    /**
+     * Zipfian key choice as in YCSB (Gray et al., "Quickly generating billion-record synthetic databases"): key 0
+     *    is the most popular, and the popularity of key k falls as 1 / (k + 1)^theta. Thread-safe, as it holds no
+     *    mutable state.
+     */
+    private static final class ZipfianChooser implements KeyChooser {
+        private final long items;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+
+        ZipfianChooser(long items, double theta) {
+            this.items = items;
+            this.theta = theta;
+            double zeta2 = 1 + Math.pow(0.5, theta);
+            double zeta = 0;
+            for (long i = 1; i <= items; i++) {
+                zeta += 1 / Math.pow(i, theta);
+            }
+            this.zetaN = zeta;
+            this.alpha = 1 / (1 - theta);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+        }
+
+        @Override
+        public long next(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return Math.min(1, items - 1);
+            }
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+}
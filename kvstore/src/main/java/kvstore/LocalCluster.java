@@ -0,0 +1,57 @@
+package kvstore;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory of the servers started inside this JVM by Server.startLocalCluster(), consulted by Server and KVClient
+ *    before the RMI registry. Calls to a local server are plain method calls, so an in-process cluster measures
+ *    Paxos and the storage engine without the network or RMI serialization.
+ * Calls between the local servers can be sent through a NetworkSimulator to inject latency, drops and partitions.
+ * Empty in every other process, where all lookups go through the RMI registry as usual.
+ */
+final class LocalCluster {
+    private static final ConcurrentHashMap<String, RemoteOperations> BINDINGS = new ConcurrentHashMap<>();
+    private static volatile NetworkSimulator network = null;
+
+    private LocalCluster() {
+    }
+
+    /**
+     * @param name A binding name, e.g. "rmi-server-1" or "rmi-server-1/group-0".
+     * @param server The object bound under it.
+     */
+    static void bind(String name, RemoteOperations server) {
+        BINDINGS.put(name, server);
+    }
+
+    /**
+     * @param name A binding name.
+     * @return The local object bound under it, or null if it is not running in this JVM.
+     */
+    static RemoteOperations lookup(String name) {
+        return BINDINGS.isEmpty() ? null : BINDINGS.get(name);
+    }
+
+    /**
+     * Looks up another server for a server, through the simulated network if one is installed.
+     * @param from The calling server's name.
+     * @param to The called server's name.
+     * @param name The binding name of the object called on it.
+     * @return The object, or null if it is not running in this JVM.
+     */
+    static RemoteOperations connect(String from, String to, String name) {
+        RemoteOperations server = lookup(name);
+        NetworkSimulator simulator = network;
+        return server == null || simulator == null ? server : simulator.link(from, to, server);
+    }
+
+    /**
+     * Sends the calls between local servers through a simulated network from now on. Install it before starting
+     *    the servers, references obtained earlier keep calling directly. The servers' threads and timers are not
+     *    simulated, so runs over the network are not reproducible, see NetworkSimulator.
+     * @param simulator The network.
+     */
+    static void simulate(NetworkSimulator simulator) {
+        network = simulator;
+    }
+}
@@ -0,0 +1,338 @@
+package kvstore;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Asynchronous logger for the servers.
+ * A call copies its fields into a preallocated ring buffer and returns; a background writer formats the entries and
+ *    writes them to stdout in batches, so Paxos threads never wait on console I/O, even inside synchronized Acceptor
+ *    methods. If the ring is full the entry is dropped and counted, and the writer reports how many were lost.
+ * Entries carry optional structured fields (phase, proposal ID, slot, key) next to their message. Callers pass
+ *    them separately instead of concatenating them into the message, so an entry below PAXOS_LOG_LEVEL costs a
+ *    single comparison and no allocation.
+ * Configured through environment variables:
+ *    PAXOS_LOG_LEVEL: TRACE, DEBUG, INFO (default), WARN or ERROR.
+ *    PAXOS_LOG_FORMAT: text (default) or json, one object per line.
+ *    PAXOS_LOG_BUFFER: entries held in the ring buffer, 65536 by default.
+ */
+final class Log {
+    enum Level { TRACE, DEBUG, INFO, WARN, ERROR }
+
+    static final long NONE = -1; // Passed as proposalId or slot when the entry has none
+
+    // Thread-safe, used for timestamps formatted outside the writer
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter SECOND =
+            DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss.").withZone(ZoneId.systemDefault());
+
+    private static final Level LEVEL = parseLevel(System.getenv("PAXOS_LOG_LEVEL"));
+    private static final boolean JSON = "json".equalsIgnoreCase(System.getenv("PAXOS_LOG_FORMAT"));
+
+    private Log() {
+    }
+
+    /**
+     * @param level A level.
+     * @return Whether entries of this level are logged, for callers that must do work to build one.
+     */
+    static boolean enabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    static void trace(String phase, long proposalId, long slot, String key, String message) {
+        log(Level.TRACE, phase, proposalId, slot, key, message);
+    }
+
+    static void debug(String phase, long proposalId, long slot, String key, String message) {
+        log(Level.DEBUG, phase, proposalId, slot, key, message);
+    }
+
+    static void debug(String message) {
+        log(Level.DEBUG, null, NONE, NONE, null, message);
+    }
+
+    static void info(String message) {
+        log(Level.INFO, null, NONE, NONE, null, message);
+    }
+
+    static void warn(String message) {
+        log(Level.WARN, null, NONE, NONE, null, message);
+    }
+
+    static void error(String message) {
+        log(Level.ERROR, null, NONE, NONE, null, message);
+    }
+
+    /**
+     * Queues an entry for the writer, or drops it if its level is disabled or the ring buffer is full.
+     * @param level The entry's level.
+     * @param phase The Paxos phase or subsystem, e.g. "PREPARE", or null.
+     * @param proposalId The proposal ID or ballot, or NONE.
+     * @param slot The log slot, or NONE.
+     * @param key The key the entry is about, or null.
+     * @param message The message.
+     */
+    static void log(Level level, String phase, long proposalId, long slot, String key, String message) {
+        if (enabled(level)) {
+            Writer.INSTANCE.publish(System.currentTimeMillis(), level, phase, proposalId, slot, key, message);
+        }
+    }
+
+    /**
+     * @param millis A System.currentTimeMillis() value.
+     * @return The time in MM-dd-yyyy HH:mm:ss.SSS format.
+     */
+    static String timestamp(long millis) {
+        return TIMESTAMP.format(Instant.ofEpochMilli(millis));
+    }
+
+    private static Level parseLevel(String value) {
+        if (value == null || value.isBlank()) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println(timestamp(System.currentTimeMillis()) + " -- ERROR: PAXOS_LOG_LEVEL must be one of "
+                    + java.util.Arrays.toString(Level.values()) + ", defaulting to INFO");
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * A slot of the ring buffer, overwritten in place once the writer has copied it out.
+     */
+    private static final class Entry {
+        long time;
+        Level level;
+        String phase;
+        long proposalId;
+        long slot;
+        String key;
+        String message;
+
+        void set(long time, Level level, String phase, long proposalId, long slot, String key, String message) {
+            this.time = time;
+            this.level = level;
+            this.phase = phase;
+            this.proposalId = proposalId;
+            this.slot = slot;
+            this.key = key;
+            this.message = message;
+        }
+
+        void copyTo(Entry other) {
+            other.set(time, level, phase, proposalId, slot, key, message);
+            message = null; // Let the strings be collected while the slot waits to be reused
+            key = null;
+        }
+    }
+
+    /**
+     * The ring buffer and the thread draining it. Started on first use, so a process that only formats
+     *    timestamps never starts the thread.
+     */
+    private static final class Writer implements Runnable {
+        static final Writer INSTANCE = new Writer(Math.max(16, parseCapacity(System.getenv("PAXOS_LOG_BUFFER"))));
+        private static final int BATCH = 256; // Entries copied out per lock acquisition
+
+        private final Entry[] ring;
+        private final Entry[] batch = new Entry[BATCH]; // Owned by the writer thread
+        private final Object lock = new Object();
+        private long head = 0; // Entries published, guarded by lock
+        private long tail = 0; // Entries taken by the writer, guarded by lock
+        private long dropped = 0; // Entries lost to a full ring, guarded by lock
+        private boolean waiting = false; // The writer is waiting for entries, guarded by lock
+        private volatile boolean closing = false;
+        private final Thread thread;
+
+        // Writer thread only
+        private final PrintStream out = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false, StandardCharsets.UTF_8);
+        private final StringBuilder line = new StringBuilder(256);
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedPrefix = "";
+
+        private Writer(int capacity) {
+            ring = new Entry[capacity];
+            for (int i = 0; i < capacity; i++) {
+                ring[i] = new Entry();
+            }
+            for (int i = 0; i < BATCH; i++) {
+                batch[i] = new Entry();
+            }
+            thread = new Thread(this, "log-writer");
+            thread.setDaemon(true);
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-flush"));
+        }
+
+        private static int parseCapacity(String value) {
+            try {
+                return value == null ? 65536 : Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return 65536;
+            }
+        }
+
+        void publish(long time, Level level, String phase, long proposalId, long slot, String key, String message) {
+            synchronized (lock) {
+                if (head - tail == ring.length) {
+                    dropped++;
+                    return;
+                }
+                ring[(int) (head % ring.length)].set(time, level, phase, proposalId, slot, key, message);
+                head++;
+                if (waiting) {
+                    lock.notify();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int count = 0;
+                long lost;
+                synchronized (lock) {
+                    while (head == tail && !closing) {
+                        waiting = true;
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // Keep draining, the shutdown hook stops the writer through closing
+                        }
+                        waiting = false;
+                    }
+                    while (tail < head && count < BATCH) {
+                        ring[(int) (tail % ring.length)].copyTo(batch[count++]);
+                        tail++;
+                    }
+                    lost = dropped;
+                    dropped = 0;
+                }
+                if (lost > 0) {
+                    write(System.currentTimeMillis(), Level.WARN, null, NONE, NONE, null,
+                            "Log buffer full, dropped " + lost + " entries");
+                }
+                for (int i = 0; i < count; i++) {
+                    Entry entry = batch[i];
+                    write(entry.time, entry.level, entry.phase, entry.proposalId, entry.slot, entry.key, entry.message);
+                    entry.message = null;
+                    entry.key = null;
+                }
+                boolean idle;
+                synchronized (lock) {
+                    idle = head == tail;
+                }
+                if (idle) {
+                    out.flush(); // Flush once the ring is drained rather than after every line
+                    if (closing) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Formats one entry into the reused line buffer and writes it.
+         */
+        private void write(long time, Level level, String phase, long proposalId, long slot, String key, String message) {
+            line.setLength(0);
+            long second = Math.floorDiv(time, 1000);
+            if (second != cachedSecond) { // Format the date and time once per second, then only the millis
+                cachedSecond = second;
+                cachedPrefix = SECOND.format(Instant.ofEpochSecond(second));
+            }
+            int millis = Math.floorMod(time, 1000);
+            if (JSON) {
+                line.append("{\"time\":\"").append(cachedPrefix);
+                appendMillis(millis);
+                line.append("\",\"level\":\"").append(level).append('"');
+                if (phase != null) {
+                    line.append(",\"phase\":");
+                    appendJsonString(phase);
+                }
+                if (proposalId != NONE) {
+                    line.append(",\"proposalId\":").append(proposalId);
+                }
+                if (slot != NONE) {
+                    line.append(",\"slot\":").append(slot);
+                }
+                if (key != null) {
+                    line.append(",\"key\":");
+                    appendJsonString(key);
+                }
+                line.append(",\"message\":");
+                appendJsonString(message);
+                line.append('}');
+            } else {
+                line.append(cachedPrefix);
+                appendMillis(millis);
+                line.append(" -- ").append(level).append(' ').append(message);
+                if (phase != null) {
+                    line.append(" phase=").append(phase);
+                }
+                if (proposalId != NONE) {
+                    line.append(" proposalId=").append(proposalId);
+                }
+                if (slot != NONE) {
+                    line.append(" slot=").append(slot);
+                }
+                if (key != null) {
+                    line.append(" key=").append(key);
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        }
+
+        private void appendMillis(int millis) {
+            if (millis < 100) {
+                line.append('0');
+            }
+            if (millis < 10) {
+                line.append('0');
+            }
+            line.append(millis);
+        }
+
+        private void appendJsonString(String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                } else {
+                    line.append(c);
+                }
+            }
+            line.append('"');
+        }
+
+        /**
+         * Writes out every queued entry, called by the shutdown hook.
+         */
+        private void close() {
+            synchronized (lock) {
+                closing = true;
+                lock.notify();
+            }
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
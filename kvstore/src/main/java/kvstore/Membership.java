@@ -0,0 +1,191 @@
+package kvstore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The servers whose Acceptors make up a Paxos group's quorums, as applied by a Learner. Immutable, every
+ *    membership change applied from the log replaces it as a whole.
+ * Each server holds a member index between 0 and MAX_MEMBERS - 1 that keeps its ballots unique. Indexes are
+ *    assigned when a change is applied, so every Learner assigns the same ones, and a server only gets an
+ *    index once it has been added, never from its name.
+ * A change decided in slot s only takes effect from slot s + window, where window is the Proposers' pipeline
+ *    window: slots before it may already be in flight under the old members, and their quorums must still
+ *    overlap. Until then the new members are pending, and a second change is refused. Every Learner must use the
+ *    same window, or they would disagree on the slot the change takes effect at.
+ */
+final class Membership {
+    static final int MAX_MEMBERS = 16; // Ballots are round * MAX_MEMBERS + member index
+
+    final long epoch; // Number of membership changes applied
+    final List<String> members; // Quorums of the slots before activeFrom
+    final List<String> pending; // Quorums of the slots from activeFrom on, null if no change is pending
+    final long activeFrom; // First slot governed by pending
+    final Map<String, Integer> indexes; // Members and pending members, each with a distinct index
+
+    private Membership(long epoch, List<String> members, List<String> pending, long activeFrom,
+                       Map<String, Integer> indexes) {
+        this.epoch = epoch;
+        this.members = List.copyOf(members);
+        this.pending = pending == null ? null : List.copyOf(pending);
+        this.activeFrom = activeFrom;
+        this.indexes = Map.copyOf(indexes);
+    }
+
+    /**
+     * Creates the membership of a group whose log holds no change yet, indexed in the order given.
+     * @param members The initial members, e.g. from PAXOS_MEMBERS.
+     * @return The membership at epoch 0.
+     * @throws IllegalArgumentException If there are more than MAX_MEMBERS members or a name is repeated.
+     */
+    static Membership initial(List<String> members) {
+        if (members.size() > MAX_MEMBERS || members.stream().distinct().count() != members.size()) {
+            throw new IllegalArgumentException("A group has at most " + MAX_MEMBERS + " distinct members, got " + members);
+        }
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            indexes.put(members.get(i), i);
+        }
+        return new Membership(0, members, null, 0, indexes);
+    }
+
+    /**
+     * Restores a membership stored without member indexes. Initial members keep their position in initial, the
+     *    others get the lowest free indexes in member order, as the Learners that applied their addition did.
+     * @param epoch The stored epoch.
+     * @param members The stored members.
+     * @param initial The initial members, e.g. from PAXOS_MEMBERS.
+     * @return The restored membership, with no change pending.
+     */
+    static Membership withoutIndexes(long epoch, List<String> members, List<String> initial) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (String member : members) {
+            int index = initial.indexOf(member);
+            if (index >= 0 && index < MAX_MEMBERS) {
+                indexes.put(member, index);
+            }
+        }
+        for (String member : members) {
+            if (!indexes.containsKey(member)) {
+                indexes.put(member, lowestFreeIndex(indexes));
+            }
+        }
+        return new Membership(epoch, members, null, 0, indexes);
+    }
+
+    /**
+     * Restores a membership stored by a snapshot.
+     * @param epoch The stored epoch.
+     * @param members The stored members.
+     * @param pending The stored pending members, or null.
+     * @param activeFrom The first slot governed by pending.
+     * @param indexes The index of every member and pending member.
+     * @return The restored membership.
+     */
+    static Membership restore(long epoch, List<String> members, List<String> pending, long activeFrom,
+                              Map<String, Integer> indexes) {
+        return new Membership(epoch, members, pending, activeFrom, indexes);
+    }
+
+    /**
+     * Checks whether a decided membership change can be applied. Must give the same answer on every Learner.
+     * @param operation An ADD_MEMBER or REMOVE_MEMBER operation.
+     * @return The reason the change is refused, or null if it can be applied.
+     */
+    String refusal(Operation operation) {
+        String name = operation.keyString();
+        if (!Long.toString(epoch).equals(operation.valueString())) {
+            return "membership changed concurrently, retry at epoch " + epoch;
+        } else if (pending != null) {
+            return "the previous change takes effect at slot " + activeFrom + ", retry at epoch " + epoch;
+        } else if (operation.type == Operation.ADD_MEMBER) {
+            if (members.contains(name)) {
+                return name + " is already a member";
+            } else if (indexes.size() >= MAX_MEMBERS) {
+                return "all " + MAX_MEMBERS + " member indexes are in use";
+            }
+        } else if (!members.contains(name)) {
+            return name + " is not a member";
+        } else if (members.size() == 1) {
+            return name + " is the last member";
+        }
+        return null;
+    }
+
+    /**
+     * Applies a membership change that refusal() accepted. The change is pending until slot + window, an added
+     *    server gets its index at once and a removed one keeps its index until then.
+     * @param operation An ADD_MEMBER or REMOVE_MEMBER operation.
+     * @param slot The slot the change was decided in.
+     * @param window The Proposers' pipeline window, at least 1.
+     * @return The membership with the change pending.
+     */
+    Membership apply(Operation operation, long slot, int window) {
+        String name = operation.keyString();
+        List<String> updated = new ArrayList<>(members);
+        Map<String, Integer> updatedIndexes = new HashMap<>(indexes);
+        if (operation.type == Operation.ADD_MEMBER) {
+            updated.add(name);
+            updatedIndexes.put(name, lowestFreeIndex(indexes));
+        } else {
+            updated.remove(name);
+        }
+        return new Membership(epoch + 1, members, updated, slot + Math.max(1, window), updatedIndexes);
+    }
+
+    /**
+     * Makes the pending members the group's members once every slot before activeFrom has been applied. A
+     *    removed server's index is freed here, as no slot it could still propose for is left undecided.
+     * @param applied The Learner's last applied slot.
+     * @return The membership governing the slots after applied, this one if nothing changes.
+     */
+    Membership activate(long applied) {
+        if (pending == null || applied + 1 < activeFrom) {
+            return this;
+        }
+        Map<String, Integer> updatedIndexes = new HashMap<>(indexes);
+        updatedIndexes.keySet().retainAll(pending);
+        return new Membership(epoch, pending, null, 0, updatedIndexes);
+    }
+
+    /**
+     * @return The members whose majority decides the slot.
+     */
+    List<String> membersFor(long slot) {
+        return pending != null && slot >= activeFrom ? pending : members;
+    }
+
+    /**
+     * @return The members and the pending members, i.e. every server a Proposer may need a reply from.
+     */
+    List<String> servers() {
+        if (pending == null) {
+            return members;
+        }
+        List<String> servers = new ArrayList<>(members);
+        for (String name : pending) {
+            if (!servers.contains(name)) {
+                servers.add(name);
+            }
+        }
+        return servers;
+    }
+
+    /**
+     * @return The member index of the server, or -1 if it is neither a member nor a pending member.
+     */
+    int indexOf(String name) {
+        return indexes.getOrDefault(name, -1);
+    }
+
+    private static int lowestFreeIndex(Map<String, Integer> indexes) {
+        for (int index = 0; index < MAX_MEMBERS; index++) {
+            if (!indexes.containsValue(index)) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("all " + MAX_MEMBERS + " member indexes are in use");
+    }
+}
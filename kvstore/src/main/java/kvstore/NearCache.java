@@ -0,0 +1,135 @@
+package kvstore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of GET results, kept by KVClient for hot keys.
+ * Every cached value is read from one home replica, and entries are dropped when that replica's change feed
+ *    (getChangedKeys) reports their key. Once the feed has not been polled successfully for maxStalenessMs, the
+ *    cache stops serving reads until it is polled again, so a cached value is at most that old, plus however far
+ *    the home replica lags behind the decided log.
+ * A value is only stored if its key was not invalidated, and the cache not cleared, while the read was in flight,
+ *    so a value read before a write can never be stored after the write's invalidation.
+ */
+final class NearCache {
+    private final long maxStalenessMs;
+    private final LinkedHashMap<String, String> entries; // In access order, the eldest is evicted first
+    private final Map<String, Fill> fills = new HashMap<>(); // Reads in flight that may be stored
+    private String home = null; // Replica the cached values and the change feed come from, null while unsynced
+    private long syncedAt = 0; // When the change feed was last polled successfully
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * A read that missed the cache, stored by completeFill() if its key is still valid when it completes.
+     */
+    static final class Fill {
+        final String home; // Replica the value must be read from
+
+        private Fill(String home) {
+            this.home = home;
+        }
+    }
+
+    NearCache(int maxEntries, long maxStalenessMs) {
+        this.maxStalenessMs = maxStalenessMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key The key.
+     * @return The cached GET result, or null if the key is not cached or the cache is too stale to serve.
+     */
+    synchronized String get(String key) {
+        String value = isFresh() ? entries.get(key) : null;
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Registers a read of a key that missed the cache.
+     * @param key The key.
+     * @return The fill to pass to completeFill(), or null if the cache is not synced and the read must not be stored.
+     */
+    synchronized Fill startFill(String key) {
+        if (!isFresh()) {
+            return null;
+        }
+        Fill fill = new Fill(home);
+        fills.put(key, fill);
+        return fill;
+    }
+
+    /**
+     * Stores the result of a read started with startFill(), unless its key was invalidated in the meantime.
+     * @param key The key.
+     * @param fill The fill returned by startFill().
+     * @param value The GET result read from fill.home.
+     */
+    synchronized void completeFill(String key, Fill fill, String value) {
+        if (fills.remove(key, fill) && isFresh()) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Drops keys reported by the change feed, along with any read of them still in flight.
+     * @param keys The changed keys.
+     */
+    synchronized void invalidate(Collection<String> keys) {
+        for (String key : keys) {
+            entries.remove(key);
+            fills.remove(key);
+        }
+    }
+
+    /**
+     * Records a successful poll of the change feed, after its keys were invalidated.
+     * @param replica The replica that was polled.
+     */
+    synchronized void synced(String replica) {
+        if (!replica.equals(home)) { // Values read from another replica may be behind this one's feed
+            clear();
+            home = replica;
+        }
+        syncedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Drops every entry and read in flight, e.g. when the change feed was reset or the home replica failed.
+     */
+    synchronized void clear() {
+        entries.clear();
+        fills.clear();
+        home = null;
+        syncedAt = 0;
+    }
+
+    synchronized String home() {
+        return home;
+    }
+
+    /**
+     * @return "$entries entries, $hits hits, $misses misses" for log messages.
+     */
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " entries, " + hits + " hits, " + misses + " misses";
+    }
+
+    private boolean isFresh() {
+        return home != null && System.currentTimeMillis() - syncedAt <= maxStalenessMs;
+    }
+}
@@ -0,0 +1,186 @@
+package kvstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Faulty network between the servers of an in-process cluster (see Server.startLocalCluster()). Installed with
+ *    LocalCluster.simulate(), it sits on every call one server makes to another and can:
+ *    - delay it by a latency drawn between minLatencyMs and maxLatencyMs, half on the way there, half on the way back,
+ *    - delay a fraction of calls by up to reorderDelayMs more, so calls sent after them arrive first,
+ *    - drop a fraction of calls, either before they reach the other server or after it has handled them, so the
+ *      caller cannot tell whether they took effect,
+ *    - partition the servers, failing every call between the two sides until the partition heals.
+ * Decisions are drawn at random on the calling thread. The servers run on their own threads, executors and timers
+ *    against the real clock, so the calls made on a link, their order and the interleaving across links all differ
+ *    between runs, and runs are not reproducible. Use the simulator to measure a cluster under faults, not to replay
+ *    a failure: replaying one would need the servers' message delivery and timers driven by a single-threaded
+ *    scheduler in virtual time, which the simulator does not provide.
+ */
+final class NetworkSimulator {
+    private final long minLatencyNs;
+    private final long maxLatencyNs;
+    private final double dropRate;
+    private final double reorderRate;
+    private final long reorderDelayNs;
+    private final ConcurrentHashMap<String, Integer> sides = new ConcurrentHashMap<>(); // Partition side, 0 if absent
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong partitioned = new AtomicLong();
+
+    /**
+     * @param minLatencyMs The shortest round trip of a call.
+     * @param maxLatencyMs The longest round trip of a call, before any reordering delay.
+     * @param dropRate The fraction of calls dropped, from 0 to 1.
+     * @param reorderRate The fraction of calls delayed further, from 0 to 1.
+     * @param reorderDelayMs The longest extra delay of a reordered call.
+     */
+    NetworkSimulator(double minLatencyMs, double maxLatencyMs, double dropRate, double reorderRate,
+                     double reorderDelayMs) {
+        if (minLatencyMs < 0 || maxLatencyMs < minLatencyMs || dropRate < 0 || dropRate > 1 || reorderRate < 0
+                || reorderRate > 1 || reorderDelayMs < 0) {
+            throw new IllegalArgumentException("Latencies must satisfy 0 <= min <= max, rates must be between 0 and 1");
+        }
+        this.minLatencyNs = (long) (minLatencyMs * 1e6);
+        this.maxLatencyNs = (long) (maxLatencyMs * 1e6);
+        this.dropRate = dropRate;
+        this.reorderRate = reorderRate;
+        this.reorderDelayNs = (long) (reorderDelayMs * 1e6);
+    }
+
+    /**
+     * Wraps a server's reference to another server, so every call through it crosses the simulated network.
+     * @param from The calling server's name.
+     * @param to The called server's name.
+     * @param target The called object.
+     * @return A reference with the same interface.
+     */
+    RemoteOperations link(String from, String to, RemoteOperations target) {
+        InvocationHandler handler = (proxy, method, args) -> call(from, to, target, method, args);
+        return (RemoteOperations) Proxy.newProxyInstance(RemoteOperations.class.getClassLoader(),
+                new Class<?>[]{RemoteOperations.class}, handler);
+    }
+
+    private Object call(String from, String to, RemoteOperations target, Method method, Object[] args)
+            throws Throwable {
+        if (method.getDeclaringClass() == Object.class) { // equals, hashCode and toString are local
+            return method.invoke(target, args);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = minLatencyNs + (maxLatencyNs > minLatencyNs ? random.nextLong(maxLatencyNs - minLatencyNs + 1) : 0);
+        if (reorderRate > 0 && random.nextDouble() < reorderRate) {
+            latency += random.nextLong(reorderDelayNs + 1);
+        }
+        boolean drop = dropRate > 0 && random.nextDouble() < dropRate;
+        boolean dropReply = random.nextBoolean();
+        delay(latency / 2);
+        if (!connected(from, to)) {
+            partitioned.incrementAndGet();
+            throw new ConnectException("Simulated partition between " + from + " and " + to);
+        }
+        if (drop && !dropReply) {
+            dropped.incrementAndGet();
+            throw new ConnectException("Simulated drop of " + method.getName() + " from " + from + " to " + to);
+        }
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        delay(latency - latency / 2);
+        if (drop) {
+            dropped.incrementAndGet();
+            throw new RemoteException("Simulated drop of the reply to " + method.getName() + " from " + to + " to " + from);
+        }
+        delivered.incrementAndGet();
+        return result;
+    }
+
+    private static void delay(long nanos) throws RemoteException {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted during simulated latency");
+            }
+        }
+    }
+
+    private boolean connected(String from, String to) {
+        return sides.getOrDefault(from, 0).equals(sides.getOrDefault(to, 0));
+    }
+
+    /**
+     * Cuts some servers off from the others. Each side can still reach itself.
+     * @param minority The servers on one side.
+     */
+    void partition(List<String> minority) {
+        sides.clear();
+        for (String name : minority) {
+            sides.put(name, 1);
+        }
+        Log.warn("Simulated partition: " + minority + " cut off from the other servers");
+    }
+
+    /**
+     * Reconnects every server.
+     */
+    void heal() {
+        sides.clear();
+        Log.warn("Simulated partition healed");
+    }
+
+    /**
+     * Starts a daemon thread that repeatedly cuts a random minority of the members off for a while and heals the
+     *    partition, with the minorities drawn at random.
+     * @param members The servers to partition.
+     * @param everyMs Time between the end of one partition and the start of the next.
+     * @param durationMs How long each partition lasts.
+     */
+    void schedulePartitions(List<String> members, long everyMs, long durationMs) {
+        Thread scheduler = new Thread(() -> {
+            try {
+                while (true) {
+                    TimeUnit.MILLISECONDS.sleep(everyMs);
+                    List<String> shuffled = new ArrayList<>(members);
+                    Collections.shuffle(shuffled, ThreadLocalRandom.current());
+                    int size = 1 + ThreadLocalRandom.current().nextInt(Math.max(1, (members.size() - 1) / 2));
+                    partition(shuffled.subList(0, size));
+                    TimeUnit.MILLISECONDS.sleep(durationMs);
+                    heal();
+                }
+            } catch (InterruptedException e) {
+                heal();
+            }
+        }, "network-partitions");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * @return How many calls were delivered, dropped and failed by a partition.
+     */
+    @Override
+    public String toString() {
+        return delivered.get() + " calls delivered, " + dropped.get() + " dropped, "
+                + partitioned.get() + " failed by partitions";
+    }
+}
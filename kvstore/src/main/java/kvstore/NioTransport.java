@@ -0,0 +1,666 @@
+package kvstore;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking transport for replica-to-replica Paxos traffic, used instead of Java RMI when PAXOS_TRANSPORT=nio.
+ * Each server listens on PAXOS_NIO_PORT and keeps one persistent connection to every peer. Every request carries
+ *    an ID, so any number of calls share a connection and replies may come back in any order.
+ * A single selector thread does all socket I/O through direct buffers, and frames queued while a socket is busy are
+ *    coalesced into one write. Incoming requests run on a worker pool, as Acceptors may wait on the write-ahead log.
+ * Frames are [int length][long requestId][payload]. A request payload is [byte method][arguments] and a reply
+ *    payload is [byte status][value], with numbers varint-encoded and values length-prefixed as in PaxosMessage.
+ */
+public class NioTransport implements Closeable {
+    private static final byte PREPARE = 1;
+    private static final byte ACCEPT = 2;
+    private static final byte PREPARE_LEADER = 3;
+    private static final byte LEARN = 4;
+    private static final byte GET_LAST_APPLIED = 5;
+    private static final byte GET_DECIDED = 6;
+    private static final byte GET_SNAPSHOT_CHUNK = 7;
+    private static final byte GET_SERVER_NAME = 8;
+    private static final byte READ_INDEX = 9;
+
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+
+    private static final int FRAME_HEADER_BYTES = 4 + 8; // length + requestId
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final RemoteOperations local; // Serves incoming requests
+    private final ExecutorService workers;
+    private final long requestTimeoutMs;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> loopTasks = new ConcurrentLinkedQueue<>(); // Run on the selector thread
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private volatile boolean open = true;
+
+    /**
+     * Starts the selector thread.
+     * @param local The server whose Paxos methods incoming requests are dispatched to.
+     * @param workerThreads Threads running incoming requests.
+     * @param requestTimeoutMs Time an outgoing call waits for its reply before failing.
+     * @throws IOException If the selector cannot be opened.
+     */
+    public NioTransport(RemoteOperations local, int workerThreads, long requestTimeoutMs) throws IOException {
+        this.local = local;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.selector = Selector.open();
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "nio-transport-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread loop = new Thread(this::loop, "nio-transport-selector");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Accepts connections from peers on the given port.
+     * @param port The port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void listen(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        runOnLoop(() -> server.register(selector, SelectionKey.OP_ACCEPT));
+    }
+
+    /**
+     * Returns a RemoteOperations reference to a peer that sends its Paxos calls over this transport.
+     * The connection is opened on first use and reopened after it fails.
+     * @param host The peer's hostname.
+     * @param port The peer's PAXOS_NIO_PORT.
+     * @param rmi The peer's RMI stub, used for the client-facing methods this transport does not carry, or null.
+     * @return The peer reference.
+     */
+    public RemoteOperations connect(String host, int port, RemoteOperations rmi) {
+        return new Peer(host, port, rmi);
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        selector.wakeup();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Selector thread: runs queued tasks, then accepts, reads and writes whatever sockets are ready.
+     */
+    private void loop() {
+        while (open) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = loopTasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        connection.close(e);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (Exception e) {
+                Log.error("Issue in NIO transport selector " + e.getMessage());
+            }
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            Log.error("Issue closing NIO transport " + e.getMessage());
+        }
+    }
+
+    private void runOnLoop(IoTask task) {
+        loopTasks.add(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                Log.error("Issue in NIO transport " + e.getMessage());
+            }
+        });
+        selector.wakeup();
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, true);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Runs an incoming request against the local server and encodes the reply.
+     * @param payload The request payload, [byte method][arguments].
+     * @param requestId The ID to answer with.
+     * @return The reply frame, ready to send.
+     */
+    private ByteBuffer dispatch(byte[] payload, long requestId) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            byte method = in.get();
+            byte[] result;
+            if (method == PREPARE) {
+                long slot = Varint.get(in);
+                result = local.prepare(slot, (int) Varint.getSigned(in));
+            } else if (method == ACCEPT) {
+                long slot = Varint.get(in);
+                int ballot = (int) Varint.getSigned(in);
+                result = local.acceptRequest(slot, ballot, Varint.getBytes(in));
+            } else if (method == PREPARE_LEADER) {
+                int ballot = (int) Varint.getSigned(in);
+                String candidate = new String(Varint.getBytes(in), StandardCharsets.UTF_8);
+                result = local.prepareLeader(ballot, candidate, Varint.get(in));
+            } else if (method == LEARN) {
+                long slot = Varint.get(in);
+                local.learn(slot, Varint.getBytes(in));
+                result = null;
+            } else if (method == GET_LAST_APPLIED) {
+                result = ByteBuffer.allocate(8).putLong(local.getLastApplied()).array();
+            } else if (method == GET_DECIDED) {
+                long fromSlot = Varint.get(in);
+                result = local.getDecided(fromSlot, (int) Varint.get(in));
+            } else if (method == GET_SNAPSHOT_CHUNK) {
+                long snapshotSlot = Varint.get(in);
+                long offset = Varint.get(in);
+                result = local.getSnapshotChunk(snapshotSlot, offset, (int) Varint.get(in));
+            } else if (method == GET_SERVER_NAME) {
+                result = local.getServerName().getBytes(StandardCharsets.UTF_8);
+            } else if (method == READ_INDEX) {
+                result = local.readIndex();
+            } else {
+                throw new IllegalArgumentException("Unknown method " + method);
+            }
+            return reply(requestId, OK, result);
+        } catch (Exception e) {
+            String message = e.getMessage() == null ? e.toString() : e.getMessage();
+            return reply(requestId, FAILED, message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ByteBuffer reply(long requestId, byte status, byte[] value) {
+        ByteBuffer frame = newFrame(requestId, 1 + Varint.sizeOfBytes(value));
+        frame.put(status);
+        Varint.putBytes(frame, value);
+        return seal(frame);
+    }
+
+    /**
+     * Allocates a frame with room for the header and a payload of at most payloadBound bytes.
+     */
+    private static ByteBuffer newFrame(long requestId, int payloadBound) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + payloadBound);
+        frame.putInt(0).putLong(requestId); // Length is filled in by seal()
+        return frame;
+    }
+
+    private static ByteBuffer seal(ByteBuffer frame) {
+        frame.putInt(0, frame.position() - 4);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * One socket, either accepted from a peer (incoming requests) or opened to a peer (outgoing calls).
+     * Reads and writes only happen on the selector thread. Any thread may queue frames with send().
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final boolean incoming;
+        SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES); // Kept in write mode
+        private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private ByteBuffer current = null; // Frame partly copied into writeBuffer
+        private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+        // Outgoing calls waiting for their reply, by request ID
+        final ConcurrentHashMap<Long, CompletableFuture<byte[]>> calls = new ConcurrentHashMap<>();
+        volatile boolean closed = false;
+
+        Connection(SocketChannel channel, boolean incoming) {
+            this.channel = channel;
+            this.incoming = incoming;
+        }
+
+        /**
+         * Queues a frame. Frames queued before the selector thread gets to this connection go out in one write.
+         */
+        void send(ByteBuffer frame) {
+            outbound.add(frame);
+            if (flushQueued.compareAndSet(false, true)) {
+                loopTasks.add(() -> {
+                    flushQueued.set(false);
+                    try {
+                        flush();
+                    } catch (IOException | CancelledKeyException e) {
+                        close(e);
+                    }
+                });
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Copies queued frames into the direct write buffer and writes as much as the socket takes. Whatever is
+         *    left waits for the socket to become writable again.
+         */
+        void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            while (true) {
+                while (writeBuffer.hasRemaining()) {
+                    if (current == null || !current.hasRemaining()) {
+                        current = outbound.poll();
+                        if (current == null) {
+                            break;
+                        }
+                    }
+                    int length = Math.min(writeBuffer.remaining(), current.remaining());
+                    writeBuffer.put(current.array(), current.position(), length);
+                    current.position(current.position() + length);
+                }
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    writeBuffer.clear();
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                channel.write(writeBuffer);
+                boolean blocked = writeBuffer.hasRemaining();
+                writeBuffer.compact();
+                if (blocked) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads whatever the socket has and handles every complete frame.
+         */
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                throw new EOFException("connection closed by peer");
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 8 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("invalid frame length " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    if (4 + length > readBuffer.capacity()) { // Grow to fit a large frame, e.g. a snapshot chunk
+                        ByteBuffer larger = ByteBuffer.allocateDirect(4 + length);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+                readBuffer.getInt();
+                long requestId = readBuffer.getLong();
+                byte[] payload = new byte[length - 8];
+                readBuffer.get(payload);
+                received(requestId, payload);
+            }
+            readBuffer.compact();
+        }
+
+        private void received(long requestId, byte[] payload) {
+            if (incoming) {
+                workers.execute(() -> send(dispatch(payload, requestId)));
+            } else {
+                CompletableFuture<byte[]> call = calls.remove(requestId);
+                if (call != null) { // Null if the caller already timed out
+                    call.complete(payload);
+                }
+            }
+        }
+
+        void close(Exception cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closing
+            }
+            IOException failure = new IOException("Connection to " + channel + " failed: " + cause.getMessage());
+            for (CompletableFuture<byte[]> call : calls.values()) {
+                call.completeExceptionally(failure);
+            }
+            calls.clear();
+        }
+    }
+
+    /**
+     * A peer reached through this transport. Paxos, catch-up and read-index methods are sent as frames, and client-facing
+     *    methods fall back to the peer's RMI stub.
+     */
+    private final class Peer implements RemoteOperations {
+        private final String host;
+        private final int port;
+        private final RemoteOperations rmi;
+        private Connection connection = null; // Guarded by this
+
+        Peer(String host, int port, RemoteOperations rmi) {
+            this.host = host;
+            this.port = port;
+            this.rmi = rmi;
+        }
+
+        private synchronized Connection connection() throws IOException {
+            if (connection != null && !connection.closed) {
+                return connection;
+            }
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(new InetSocketAddress(host, port), (int) requestTimeoutMs);
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            Connection opened = new Connection(channel, false);
+            runOnLoop(() -> opened.key = channel.register(selector, SelectionKey.OP_READ, opened));
+            connection = opened;
+            return opened;
+        }
+
+        /**
+         * Sends a request and waits for its reply.
+         * @param frame The request frame, with the payload written after the header.
+         * @param requestId The ID the frame was created with.
+         * @return The value of the reply.
+         * @throws RemoteException If the peer cannot be reached, times out or fails the request.
+         */
+        private byte[] call(ByteBuffer frame, long requestId) throws RemoteException {
+            CompletableFuture<byte[]> reply = new CompletableFuture<>();
+            Connection target;
+            try {
+                target = connection();
+            } catch (IOException e) {
+                throw new RemoteException("Cannot connect to " + host + ":" + port, e);
+            }
+            target.calls.put(requestId, reply);
+            if (target.closed) {
+                target.calls.remove(requestId);
+                throw new RemoteException("Connection to " + host + " closed");
+            }
+            target.send(seal(frame));
+            try {
+                ByteBuffer in = ByteBuffer.wrap(reply.get(requestTimeoutMs, TimeUnit.MILLISECONDS));
+                byte status = in.get();
+                byte[] value = Varint.getBytes(in);
+                if (status != OK) {
+                    throw new RemoteException(host + " failed request: " + new String(value, StandardCharsets.UTF_8));
+                }
+                return value;
+            } catch (TimeoutException e) {
+                throw new RemoteException("Request to " + host + " timed out");
+            } catch (ExecutionException e) {
+                throw new RemoteException("Request to " + host + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Request to " + host + " interrupted");
+            } finally {
+                target.calls.remove(requestId);
+            }
+        }
+
+        @Override
+        public byte[] prepare(long slot, int proposalId) throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 10 + 5);
+            frame.put(PREPARE);
+            Varint.put(frame, slot);
+            Varint.putSigned(frame, proposalId);
+            return call(frame, id);
+        }
+
+        @Override
+        public byte[] acceptRequest(long slot, int proposalId, byte[] value) throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 10 + 5 + Varint.sizeOfBytes(value));
+            frame.put(ACCEPT);
+            Varint.put(frame, slot);
+            Varint.putSigned(frame, proposalId);
+            Varint.putBytes(frame, value);
+            return call(frame, id);
+        }
+
+        @Override
+        public byte[] prepareLeader(int ballot, String candidate, long fromSlot) throws RemoteException {
+            byte[] name = candidate.getBytes(StandardCharsets.UTF_8);
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 5 + Varint.sizeOfBytes(name) + 10);
+            frame.put(PREPARE_LEADER);
+            Varint.putSigned(frame, ballot);
+            Varint.putBytes(frame, name);
+            Varint.put(frame, fromSlot);
+            return call(frame, id);
+        }
+
+        @Override
+        public void learn(long slot, byte[] value) throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 10 + Varint.sizeOfBytes(value));
+            frame.put(LEARN);
+            Varint.put(frame, slot);
+            Varint.putBytes(frame, value);
+            call(frame, id);
+        }
+
+        @Override
+        public long getLastApplied() throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1);
+            frame.put(GET_LAST_APPLIED);
+            return ByteBuffer.wrap(call(frame, id)).getLong();
+        }
+
+        @Override
+        public byte[] getDecided(long fromSlot, int max) throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 10 + 5);
+            frame.put(GET_DECIDED);
+            Varint.put(frame, fromSlot);
+            Varint.put(frame, max);
+            return call(frame, id);
+        }
+
+        @Override
+        public byte[] getSnapshotChunk(long snapshotSlot, long offset, int length) throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1 + 10 + 10 + 5);
+            frame.put(GET_SNAPSHOT_CHUNK);
+            Varint.put(frame, snapshotSlot);
+            Varint.put(frame, offset);
+            Varint.put(frame, length);
+            return call(frame, id);
+        }
+
+        @Override
+        public String getServerName() throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1);
+            frame.put(GET_SERVER_NAME);
+            return new String(call(frame, id), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] readIndex() throws RemoteException {
+            long id = nextRequestId.incrementAndGet();
+            ByteBuffer frame = newFrame(id, 1);
+            frame.put(READ_INDEX);
+            return call(frame, id);
+        }
+
+        // Client-facing methods are not part of the replica-to-replica protocol
+
+        private RemoteOperations rmi() throws RemoteException {
+            if (rmi == null) {
+                throw new RemoteException("Method not carried by the NIO transport and no RMI stub for " + host);
+            }
+            return rmi;
+        }
+
+        @Override
+        public String getRecord(String key, String serverIP) throws RemoteException {
+            return rmi().getRecord(key, serverIP);
+        }
+
+        @Override
+        public String getConsistentRecord(String key, String serverIP) throws RemoteException {
+            return rmi().getConsistentRecord(key, serverIP);
+        }
+
+        @Override
+        public byte[] getValue(byte[] key, boolean linearizable) throws RemoteException {
+            return rmi().getValue(key, linearizable);
+        }
+
+        @Override
+        public Map<String, String> multiGet(List<String> keys, boolean linearizable) throws RemoteException {
+            return rmi().multiGet(keys, linearizable);
+        }
+
+        @Override
+        public List<byte[]> multiGetValues(List<byte[]> keys, boolean linearizable) throws RemoteException {
+            return rmi().multiGetValues(keys, linearizable);
+        }
+
+        @Override
+        public String multiPut(Map<String, String> entries) throws RemoteException {
+            return rmi().multiPut(entries);
+        }
+
+        @Override
+        public String multiDelete(List<String> keys) throws RemoteException {
+            return rmi().multiDelete(keys);
+        }
+
+        @Override
+        public RoutingTable getRoutingTable() throws RemoteException {
+            return rmi().getRoutingTable();
+        }
+
+        @Override
+        public KeyChanges getChangedKeys(long[] fromSlots) throws RemoteException {
+            return rmi().getChangedKeys(fromSlots);
+        }
+
+        @Override
+        public WatchBatch watch(byte[] prefix, long[] fromPositions, int maxEvents, long timeoutMs) throws RemoteException {
+            return rmi().watch(prefix, fromPositions, maxEvents, timeoutMs);
+        }
+
+        @Override
+        public ScanPage scan(byte[] startKey, byte[] endKey, int limit) throws RemoteException {
+            return rmi().scan(startKey, endKey, limit);
+        }
+
+        @Override
+        public ScanPage prefixScan(byte[] prefix, int limit) throws RemoteException {
+            return rmi().prefixScan(prefix, limit);
+        }
+
+        @Override
+        public String addMember(String serverName) throws RemoteException {
+            return rmi().addMember(serverName);
+        }
+
+        @Override
+        public String removeMember(String serverName) throws RemoteException {
+            return rmi().removeMember(serverName);
+        }
+
+        @Override
+        public List<String> getMembers() throws RemoteException {
+            return rmi().getMembers();
+        }
+
+        @Override
+        public String getServerIP() throws RemoteException {
+            return rmi().getServerIP();
+        }
+
+        @Override
+        public String propose(byte[] operation) throws RemoteException {
+            return rmi().propose(operation);
+        }
+
+        @Override
+        public int getPipelineWindow() throws RemoteException {
+            return rmi().getPipelineWindow();
+        }
+
+        @Override
+        public int getInFlightProposals() throws RemoteException {
+            return rmi().getInFlightProposals();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * KVStore keeping keys and values as raw bytes in direct memory, outside the Java heap.
+ * The keyspace is split into segments by key hash, each guarded by its own read/write lock. A segment appends its
+ *    records ([varint key length][varint value length][key][value]) to an arena and finds them through an open
+ *    addressing hash index, also in direct memory, with one long per entry: the key's hash in the high half and
+ *    the record's offset + 1 in the low half. A small pair costs its own bytes, two bytes of lengths, 10-20
+ *    bytes of index and up to a third of arena slack, against well over 100 bytes of objects on the heap, and
+ *    the heap only holds a few objects per segment, so GC pauses do not grow with the dataset.
+ * Records are never changed in place. An overwrite appends a new record and a delete only clears the index entry,
+ *    leaving dead bytes behind. When the arena is full, its live records are copied into a new arena sized to
+ *    leave a third of it free, which reclaims the dead bytes and grows or shrinks the arena with the data.
+ * Direct memory is capped by -XX:MaxDirectMemorySize, by default the maximum heap size.
+ */
+final class OffHeapStore implements KVStore {
+    private static final int MAX_ARENA_BYTES = 1 << 30; // Per segment, offsets must fit in the index entry
+    private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = 1L << 32; // Deleted entry, the low half is 0 like an empty one
+
+    private final Segment[] segments;
+    private final int segmentShift; // The top bits of a hash pick the segment, the low bits the index slot
+
+    /**
+     * @param segments The number of segments, rounded up to a power of two. More segments let more reads and
+     *    writes run in parallel and make each compaction smaller.
+     */
+    OffHeapStore(int segments) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(segments, 1 << 12)) * 2 - 1);
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        int hash = hash(key);
+        return segmentOf(hash).get(key, hash);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        int hash = hash(key);
+        segmentOf(hash).put(key, hash, value);
+    }
+
+    @Override
+    public boolean remove(byte[] key) {
+        int hash = hash(key);
+        return segmentOf(hash).remove(key, hash);
+    }
+
+    @Override
+    public boolean containsKey(byte[] key) {
+        int hash = hash(key);
+        return segmentOf(hash).contains(key, hash);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.live;
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Visits one segment at a time. The offsets of a segment's live records are collected under its read lock, then
+     *    the records are copied out without it: records are never changed in place, and a compaction writes a new
+     *    arena, so the captured arena stays valid.
+     */
+    @Override
+    public <E extends Exception> void forEach(Visitor<E> visitor) throws E {
+        for (Segment segment : segments) {
+            ByteBuffer arena;
+            int[] offsets;
+            segment.lock.readLock().lock();
+            try {
+                arena = segment.arena;
+                offsets = segment.liveOffsets();
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            for (int offset : offsets) {
+                int keyLength = readVarint(arena, offset);
+                int keyStart = offset + varintSize(keyLength);
+                int valueLength = readVarint(arena, keyStart);
+                keyStart += varintSize(valueLength);
+                visitor.visit(copy(arena, keyStart, keyLength), copy(arena, keyStart + keyLength, valueLength));
+            }
+        }
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * FNV-1a over the key's bytes, finished with MurmurHash3's mixer so the index and segment bits are both spread.
+     */
+    private static int hash(byte[] key) {
+        int h = 0x811c9dc5;
+        for (byte b : key) {
+            h = (h ^ b) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static byte[] copy(ByteBuffer arena, int offset, int length) {
+        byte[] bytes = new byte[length];
+        arena.get(offset, bytes);
+        return bytes;
+    }
+
+    private static boolean isLive(long entry) {
+        return (entry & 0xffffffffL) != 0;
+    }
+
+    private static int offsetOf(long entry) {
+        return (int) (entry & 0xffffffffL) - 1;
+    }
+
+    private static long entry(int hash, int offset) {
+        return ((long) hash << 32) | (offset + 1);
+    }
+
+    private static int varintSize(int value) {
+        return value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : value < 1 << 21 ? 3 : value < 1 << 28 ? 4 : 5;
+    }
+
+    /**
+     * Writes an unsigned varint at an absolute offset, leaving the arena's position alone for concurrent readers.
+     * @return The offset after the varint.
+     */
+    private static int writeVarint(ByteBuffer arena, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            arena.put(offset++, (byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        arena.put(offset++, (byte) value);
+        return offset;
+    }
+
+    private static int readVarint(ByteBuffer arena, int offset) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = arena.get(offset++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * One lock's worth of the keyspace: an arena of records and the hash index pointing into it.
+     */
+    private static final class Segment {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        ByteBuffer arena; // Guarded by lock, replaced as a whole by compaction
+        int arenaEnd; // Next free byte of the arena
+        int deadBytes; // Bytes of overwritten or deleted records
+        LongBuffer index; // Guarded by lock, replaced as a whole when resized
+        volatile int live = 0; // Keys in the segment
+        int tombstones = 0;
+
+        Segment() {
+            reset();
+        }
+
+        private void reset() {
+            arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+            index = ByteBuffer.allocateDirect(INITIAL_INDEX_SLOTS * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            arenaEnd = 0;
+            deadBytes = 0;
+            live = 0;
+            tombstones = 0;
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                reset();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        byte[] get(byte[] key, int hash) {
+            lock.readLock().lock();
+            try {
+                int slot = find(key, hash);
+                if (slot < 0) {
+                    return null;
+                }
+                int offset = offsetOf(index.get(slot));
+                int valueLengthAt = offset + varintSize(key.length);
+                int valueLength = readVarint(arena, valueLengthAt);
+                return copy(arena, valueLengthAt + varintSize(valueLength) + key.length, valueLength);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean contains(byte[] key, int hash) {
+            lock.readLock().lock();
+            try {
+                return find(key, hash) >= 0;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(byte[] key, int hash, byte[] value) {
+            long total = (long) varintSize(key.length) + varintSize(value.length) + key.length + value.length;
+            if (total > MAX_ARENA_BYTES) {
+                throw new IllegalArgumentException("OffHeapStore record of " + total + " bytes is too large");
+            }
+            int length = (int) total;
+            lock.writeLock().lock();
+            try {
+                if ((long) arenaEnd + length > arena.capacity()) {
+                    compact(length);
+                }
+                if ((live + tombstones + 1) * 5L > index.capacity() * 4L) {
+                    resizeIndex(live + 1);
+                }
+                int offset = arenaEnd;
+                int keyStart = writeVarint(arena, writeVarint(arena, offset, key.length), value.length);
+                arena.put(keyStart, key);
+                arena.put(keyStart + key.length, value);
+                arenaEnd += length;
+
+                int slot = find(key, hash);
+                if (slot >= 0) { // Overwrite, the old record becomes dead
+                    deadBytes += recordLength(offsetOf(index.get(slot)));
+                    index.put(slot, entry(hash, offset));
+                    return;
+                }
+                int mask = index.capacity() - 1;
+                for (int i = hash & mask; ; i = (i + 1) & mask) {
+                    long current = index.get(i);
+                    if (!isLive(current)) {
+                        if (current == TOMBSTONE) {
+                            tombstones--;
+                        }
+                        index.put(i, entry(hash, offset));
+                        live++;
+                        return;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean remove(byte[] key, int hash) {
+            lock.writeLock().lock();
+            try {
+                int slot = find(key, hash);
+                if (slot < 0) {
+                    return false;
+                }
+                deadBytes += recordLength(offsetOf(index.get(slot)));
+                index.put(slot, TOMBSTONE);
+                live--;
+                tombstones++;
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return The index slot of a key, or -1 if the key does not exist. Needs the lock.
+         */
+        private int find(byte[] key, int hash) {
+            int mask = index.capacity() - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                long current = index.get(i);
+                if (current == EMPTY) {
+                    return -1;
+                }
+                if (isLive(current) && (int) (current >>> 32) == hash && keyEquals(offsetOf(current), key)) {
+                    return i;
+                }
+            }
+        }
+
+        private boolean keyEquals(int offset, byte[] key) {
+            if (readVarint(arena, offset) != key.length) {
+                return false;
+            }
+            int valueLengthAt = offset + varintSize(key.length);
+            int start = valueLengthAt + varintSize(readVarint(arena, valueLengthAt));
+            return arena.slice(start, key.length).mismatch(ByteBuffer.wrap(key)) == -1;
+        }
+
+        private int recordLength(int offset) {
+            int keyLength = readVarint(arena, offset);
+            int valueLengthAt = offset + varintSize(keyLength);
+            int valueLength = readVarint(arena, valueLengthAt);
+            return valueLengthAt + varintSize(valueLength) + keyLength + valueLength - offset;
+        }
+
+        /**
+         * Copies the live records into a new arena with room for at least needed more bytes, leaving the dead
+         *    ones behind. The new arena is half as large again as what it holds, so compactions stay rare as the
+         *    segment grows, and a segment that shrank gives its memory back. Needs the write lock.
+         */
+        private void compact(int needed) {
+            long required = (long) arenaEnd - deadBytes + needed;
+            long capacity = Math.min(MAX_ARENA_BYTES, Math.max(INITIAL_ARENA_BYTES, required + required / 2));
+            if (required > capacity) {
+                throw new IllegalStateException("OffHeapStore segment is full, " + required + " bytes needed");
+            }
+            ByteBuffer compacted = ByteBuffer.allocateDirect((int) capacity);
+            int end = 0;
+            for (int i = 0; i < index.capacity(); i++) {
+                long current = index.get(i);
+                if (isLive(current)) {
+                    int offset = offsetOf(current);
+                    int length = recordLength(offset);
+                    compacted.put(end, arena, offset, length);
+                    index.put(i, entry((int) (current >>> 32), end));
+                    end += length;
+                }
+            }
+            arena = compacted;
+            arenaEnd = end;
+            deadBytes = 0;
+        }
+
+        /**
+         * Rebuilds the index without tombstones, doubling it until it is at most half full. Entries keep their
+         *    hash, so no key is read. Needs the write lock.
+         */
+        private void resizeIndex(int keys) {
+            int capacity = index.capacity();
+            while (keys * 2L > capacity) {
+                capacity *= 2;
+            }
+            LongBuffer resized = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            int mask = capacity - 1;
+            for (int i = 0; i < index.capacity(); i++) {
+                long current = index.get(i);
+                if (isLive(current)) {
+                    int j = (int) (current >>> 32) & mask;
+                    while (resized.get(j) != EMPTY) {
+                        j = (j + 1) & mask;
+                    }
+                    resized.put(j, current);
+                }
+            }
+            index = resized;
+            tombstones = 0;
+        }
+
+        /**
+         * @return The offsets of the live records. Needs the lock.
+         */
+        private int[] liveOffsets() {
+            int[] offsets = new int[live];
+            int count = 0;
+            for (int i = 0; i < index.capacity() && count < offsets.length; i++) {
+                long current = index.get(i);
+                if (isLive(current)) {
+                    offsets[count++] = offsetOf(current);
+                }
+            }
+            return offsets;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single client write, with raw byte[] keys and values so that any value, including binary data or one containing
+ *    commas or newlines, survives consensus and storage unchanged. keyString() and valueString() decode them as
+ *    UTF-8 for log and result messages only.
+ * A replicated log slot holds a list of operations encoded with encodeAll(): a batch is several operations, a
+ *    single write is a list of one, and a NOOP is an empty list. Every list is tagged with a proposal ID, so a
+ *    Proposer that finds a value already accepted can tell its own proposal from another one holding the same
+ *    writes, e.g. two clients sending the same PUT.
+ * An operation is encoded as [byte type][varint keyLength][key][varint valueLength][value]. Conditional
+ *    operations append [varint expectedLength][expected][varint requestId].
+ * Conditional operations (CAS, PUT_IF_ABSENT, INCREMENT) are evaluated by every Learner when the slot is applied,
+ *    against the value the key holds at that point of the log, so every replica reaches the same outcome.
+ * Membership changes (ADD_MEMBER, REMOVE_MEMBER) carry a server name as their key and the membership epoch the
+ *    proposer saw as their value. They are only proposed by servers, never accepted from a client.
+ */
+public final class Operation {
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+    public static final byte CAS = 3; // Writes value only if the key currently holds expected
+    public static final byte PUT_IF_ABSENT = 4; // Writes value only if the key does not exist
+    public static final byte INCREMENT = 5; // Adds the decimal delta in value to the key's numeric value, absent is 0
+    public static final byte ADD_MEMBER = 6; // Adds the server named by key to the group, if the epoch in value is current
+    public static final byte REMOVE_MEMBER = 7; // Removes the server named by key from the group, likewise
+
+    // Proposal IDs are (process, sequence): a random number drawn when this process starts, never 0, and a counter
+    private static final long PROCESS_ID = new SecureRandom().nextLong() | 1;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    static final byte[] NOOP = encodeAll(0, 0, Collections.emptyList()); // Fills slots left empty by a failed leader
+
+    final byte type;
+    final byte[] key;
+    final byte[] value; // Null for DELETE
+    final byte[] expected; // CAS only, null means the key must not exist
+    final long requestId; // Conditional only, set by the proposing server to match the outcome to its caller
+
+    Operation(byte type, byte[] key, byte[] value) {
+        this(type, key, value, null, 0);
+    }
+
+    Operation(byte type, byte[] key, byte[] value, byte[] expected, long requestId) {
+        if (type < PUT || type > REMOVE_MEMBER) {
+            throw new IllegalArgumentException("Unknown operation type " + type);
+        }
+        if (key == null || (type != DELETE && value == null)) {
+            throw new IllegalArgumentException("Operation is missing its key or value");
+        }
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.expected = expected;
+        this.requestId = requestId;
+    }
+
+    public static Operation put(String key, String value) {
+        return put(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Operation put(byte[] key, byte[] value) {
+        return new Operation(PUT, key, value);
+    }
+
+    public static Operation delete(String key) {
+        return delete(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Operation delete(byte[] key) {
+        return new Operation(DELETE, key, null);
+    }
+
+    public static Operation compareAndSet(String key, String expected, String value) {
+        return compareAndSet(key.getBytes(StandardCharsets.UTF_8),
+                expected == null ? null : expected.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Operation compareAndSet(byte[] key, byte[] expected, byte[] value) {
+        return new Operation(CAS, key, value, expected, 0);
+    }
+
+    public static Operation putIfAbsent(String key, String value) {
+        return putIfAbsent(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Operation putIfAbsent(byte[] key, byte[] value) {
+        return new Operation(PUT_IF_ABSENT, key, value, null, 0);
+    }
+
+    public static Operation increment(String key, long delta) {
+        return new Operation(INCREMENT, key.getBytes(StandardCharsets.UTF_8),
+                Long.toString(delta).getBytes(StandardCharsets.UTF_8), null, 0);
+    }
+
+    static Operation membershipChange(byte type, String serverName, long epoch) {
+        return new Operation(type, serverName.getBytes(StandardCharsets.UTF_8),
+                Long.toString(epoch).getBytes(StandardCharsets.UTF_8), null, 0);
+    }
+
+    /**
+     * @return Whether the outcome of this operation depends on the state it is applied to.
+     */
+    boolean isConditional() {
+        return type >= CAS;
+    }
+
+    /**
+     * @return Whether this operation changes the members of the Paxos group rather than a key.
+     */
+    boolean isMembershipChange() {
+        return type == ADD_MEMBER || type == REMOVE_MEMBER;
+    }
+
+    /**
+     * Returns a copy of this conditional operation tagged with a request ID, which the proposing server uses to
+     *    match the outcome of the operation to its caller.
+     * @param requestId The ID chosen by the proposing server.
+     * @return The tagged operation.
+     */
+    Operation withRequestId(long requestId) {
+        return new Operation(type, key, value, expected, requestId);
+    }
+
+    /**
+     * Evaluates this operation against the current value of its key. Must be deterministic, as every Learner
+     *    evaluates it independently. Values are compared byte for byte, and an INCREMENT reads the current value
+     *    as a decimal number in UTF-8.
+     * @param current The value the key holds when the slot is applied, or null if it does not exist.
+     * @return The value to write, or null if the condition does not hold and nothing is written.
+     */
+    byte[] evaluate(byte[] current) {
+        if (type == PUT) {
+            return value;
+        } else if (type == CAS) {
+            return Arrays.equals(current, expected) ? value : null;
+        } else if (type == PUT_IF_ABSENT) {
+            return current == null ? value : null;
+        } else if (type == INCREMENT) {
+            try {
+                long base = current == null ? 0 : Long.parseLong(new String(current, StandardCharsets.UTF_8));
+                return Long.toString(Math.addExact(base, Long.parseLong(valueString()))).getBytes(StandardCharsets.UTF_8);
+            } catch (NumberFormatException | ArithmeticException e) { // Not a number, or overflow
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public String keyString() {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    public String valueString() {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes this operation on its own, as sent by a client to propose().
+     * @return The encoded operation.
+     */
+    public byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize());
+        encodeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes an operation encoded with encode().
+     * @param bytes The encoded operation.
+     * @return The operation.
+     * @throws IllegalArgumentException If the bytes are not a valid operation.
+     */
+    public static Operation decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Operation operation = decodeFrom(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes after operation");
+        }
+        return operation;
+    }
+
+    /**
+     * Encodes a list of operations as a single replicated log value with a new proposal ID,
+     *    [long process][varint sequence][varint count][operation]...
+     * @param operations The operations in the order they must be applied.
+     * @return The log value.
+     */
+    static byte[] encodeAll(List<Operation> operations) {
+        return encodeAll(PROCESS_ID, SEQUENCE.incrementAndGet(), operations);
+    }
+
+    private static byte[] encodeAll(long process, long sequence, List<Operation> operations) {
+        int size = Long.BYTES + Varint.sizeOf(sequence) + Varint.sizeOf(operations.size());
+        for (Operation operation : operations) {
+            size += operation.encodedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(process);
+        Varint.put(buffer, sequence);
+        Varint.put(buffer, operations.size());
+        for (Operation operation : operations) {
+            operation.encodeTo(buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a replicated log value into its operations.
+     * @param bytes A log value encoded with encodeAll().
+     * @return The operations in the order they must be applied, empty for a NOOP.
+     * @throws IllegalArgumentException If the bytes are not a valid log value.
+     */
+    static List<Operation> decodeAll(byte[] bytes) {
+        ByteBuffer buffer = skipProposalId(bytes);
+        int count = (int) Varint.get(buffer);
+        List<Operation> operations = new ArrayList<>(Math.min(count, buffer.remaining()));
+        for (int i = 0; i < count; i++) {
+            operations.add(decodeFrom(buffer));
+        }
+        return operations;
+    }
+
+    /**
+     * Returns a short description of a log value for log messages, without decoding every operation.
+     * @param bytes A log value encoded with encodeAll().
+     * @return The single operation, "NOOP", or "BATCH of $count operations".
+     */
+    static String describe(byte[] bytes) {
+        int count = (int) Varint.get(skipProposalId(bytes));
+        if (count == 0) {
+            return "NOOP";
+        } else if (count == 1) {
+            return decodeAll(bytes).get(0).toString();
+        }
+        return "BATCH of " + count + " operations";
+    }
+
+    /**
+     * Tells whether two log values were encoded by the same call to encodeAll(), comparing their proposal IDs
+     *    rather than their operations. A NOOP matches no value, as it carries no proposal ID.
+     * @param a A log value, or null.
+     * @param b Another log value, or null.
+     * @return Whether both values belong to the same proposal.
+     */
+    static boolean sameProposal(byte[] a, byte[] b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        ByteBuffer first = ByteBuffer.wrap(a);
+        ByteBuffer second = ByteBuffer.wrap(b);
+        long process = first.getLong();
+        return process != 0 && process == second.getLong() && Varint.get(first) == Varint.get(second);
+    }
+
+    /**
+     * @return A buffer over a log value, positioned after its proposal ID.
+     */
+    private static ByteBuffer skipProposalId(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.getLong();
+        Varint.get(buffer);
+        return buffer;
+    }
+
+    private int encodedSize() {
+        int size = 1 + Varint.sizeOfBytes(key) + Varint.sizeOfBytes(value);
+        if (isConditional()) {
+            size += Varint.sizeOfBytes(expected) + Varint.sizeOf(requestId);
+        }
+        return size;
+    }
+
+    private void encodeTo(ByteBuffer buffer) {
+        buffer.put(type);
+        Varint.putBytes(buffer, key);
+        Varint.putBytes(buffer, value);
+        if (isConditional()) {
+            Varint.putBytes(buffer, expected);
+            Varint.put(buffer, requestId);
+        }
+    }
+
+    private static Operation decodeFrom(ByteBuffer buffer) {
+        byte type = buffer.get();
+        byte[] key = Varint.getBytes(buffer);
+        byte[] value = Varint.getBytes(buffer);
+        if (type >= CAS) {
+            byte[] expected = Varint.getBytes(buffer);
+            return new Operation(type, key, value, expected, Varint.get(buffer));
+        }
+        return new Operation(type, key, value);
+    }
+
+    /**
+     * @return The operation in the format of "$operation,$key,$value", as used in log and result messages.
+     *    A CAS is "CAS,$key,$expected->$value", a membership change is "ADDMEMBER,$serverName,epoch $epoch".
+     */
+    @Override
+    public String toString() {
+        String[] names = {"", "PUT,", "DELETE,", "CAS,", "PUTIFABSENT,", "INCREMENT,", "ADDMEMBER,", "REMOVEMEMBER,"};
+        if (isMembershipChange()) {
+            return names[type] + keyString() + ",epoch " + valueString();
+        }
+        if (type == CAS) {
+            String expectedValue = expected == null ? "null" : new String(expected, StandardCharsets.UTF_8);
+            return names[type] + keyString() + "," + expectedValue + "->" + valueString();
+        }
+        return names[type] + keyString() + "," + valueString();
+    }
+}
@@ -0,0 +1,104 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed reply of an Acceptor or a catch-up peer, sent as a compact binary record instead of a comma-joined String.
+ * Replaces "PROMISE,$id,$acceptedID,$value", "REJECT,$promisedID", "APPLIED,$lastApplied" and friends, so that
+ *    replies are read field by field instead of being split, and values may hold any bytes.
+ * Encoded as [byte type][varint slot][zigzag ballot][zigzag acceptedBallot][value][varint entryCount][entry]...
+ *    where each entry is [varint slot][zigzag acceptedBallot][value] and values are length-prefixed bytes.
+ */
+final class PaxosMessage {
+    static final byte PROMISE = 1; // Acceptor promised ballot, acceptedBallot/value hold any earlier accept
+    static final byte REJECT = 2; // Acceptor refused, ballot holds the ballot it promised instead
+    static final byte APPLIED = 3; // Slot has already been applied, slot holds the Acceptor's lastApplied
+    static final byte ACCEPTED = 4; // Acceptor accepted ballot
+    static final byte DECIDED = 5; // Catch-up: entries hold decided values, slot holds the peer's lastApplied
+    static final byte SNAPSHOT = 6; // Catch-up: slots were compacted, slot names the snapshot to transfer
+    static final byte COMPACTED = 7; // Catch-up: slots were compacted and the peer has no snapshot to offer
+
+    final byte type;
+    final long slot;
+    final int ballot;
+    final int acceptedBallot;
+    final byte[] value;
+    final List<PaxosMessage> entries; // Per-slot accepted or decided values, used by leader PROMISEs and DECIDED
+
+    PaxosMessage(byte type, long slot, int ballot, int acceptedBallot, byte[] value, List<PaxosMessage> entries) {
+        this.type = type;
+        this.slot = slot;
+        this.ballot = ballot;
+        this.acceptedBallot = acceptedBallot;
+        this.value = value;
+        this.entries = entries;
+    }
+
+    static PaxosMessage of(byte type, long slot, int ballot) {
+        return new PaxosMessage(type, slot, ballot, -1, null, Collections.emptyList());
+    }
+
+    static PaxosMessage promise(long slot, int ballot, int acceptedBallot, byte[] value) {
+        return new PaxosMessage(PROMISE, slot, ballot, acceptedBallot, value, Collections.emptyList());
+    }
+
+    static PaxosMessage entry(long slot, int acceptedBallot, byte[] value) {
+        return new PaxosMessage((byte) 0, slot, -1, acceptedBallot, value, Collections.emptyList());
+    }
+
+    byte[] encode() {
+        int size = 1 + Varint.sizeOf(slot) + Varint.sizeOfSigned(ballot) + Varint.sizeOfSigned(acceptedBallot)
+                + Varint.sizeOfBytes(value) + Varint.sizeOf(entries.size());
+        for (PaxosMessage entry : entries) {
+            size += Varint.sizeOf(entry.slot) + Varint.sizeOfSigned(entry.acceptedBallot) + Varint.sizeOfBytes(entry.value);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(type);
+        Varint.put(buffer, slot);
+        Varint.putSigned(buffer, ballot);
+        Varint.putSigned(buffer, acceptedBallot);
+        Varint.putBytes(buffer, value);
+        Varint.put(buffer, entries.size());
+        for (PaxosMessage entry : entries) {
+            Varint.put(buffer, entry.slot);
+            Varint.putSigned(buffer, entry.acceptedBallot);
+            Varint.putBytes(buffer, entry.value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a message encoded with encode().
+     * @param bytes The encoded message.
+     * @return The message.
+     * @throws IllegalArgumentException If the bytes are not a valid message.
+     */
+    static PaxosMessage decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte type = buffer.get();
+        long slot = Varint.get(buffer);
+        int ballot = (int) Varint.getSigned(buffer);
+        int acceptedBallot = (int) Varint.getSigned(buffer);
+        byte[] value = Varint.getBytes(buffer);
+        int count = (int) Varint.get(buffer);
+        List<PaxosMessage> entries = count == 0 ? Collections.emptyList() : new ArrayList<>(Math.min(count, buffer.remaining()));
+        for (int i = 0; i < count; i++) {
+            long entrySlot = Varint.get(buffer);
+            int entryBallot = (int) Varint.getSigned(buffer);
+            entries.add(entry(entrySlot, entryBallot, Varint.getBytes(buffer)));
+        }
+        return new PaxosMessage(type, slot, ballot, acceptedBallot, value, entries);
+    }
+
+    /**
+     * @return A short description of the message for log messages.
+     */
+    @Override
+    public String toString() {
+        String[] names = {"ENTRY", "PROMISE", "REJECT", "APPLIED", "ACCEPTED", "DECIDED", "SNAPSHOT", "COMPACTED"};
+        return (type >= 0 && type < names.length ? names[type] : "UNKNOWN") + "," + ballot + "," + slot;
+    }
+}
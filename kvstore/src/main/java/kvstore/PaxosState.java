@@ -0,0 +1,10 @@
+package kvstore;
+
+/**
+ * Keeps track of the Acceptor state of a single slot in the replicated log.
+ */
+class PaxosState {
+    public int highestPromisedID = -1; // The highest proposal ID promised
+    public int acceptedProposalID = -1; // ID of the accepted proposal
+    public byte[] acceptedValue = null; // Value of the accepted proposal, an encoded list of Operations
+}
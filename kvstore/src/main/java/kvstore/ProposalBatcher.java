@@ -0,0 +1,131 @@
+package kvstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups pending client PUT/DELETE operations so that a whole batch is decided by a single Paxos instance.
+ * A batch is closed once it holds maxBatchSize operations or once the first operation has waited lingerMs,
+ *    whichever comes first. Each caller is handed its own result once the batch has been learned.
+ * Batches are proposed on a pipeline of worker threads, so up to the Server's in-flight window of batches can
+ *    be in consensus at once. While the window is full, new operations keep queueing and form a larger batch.
+ */
+public class ProposalBatcher {
+    private final Server server;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final LinkedBlockingQueue<PendingProposal> queue = new LinkedBlockingQueue<>();
+    // Runs each batch's Paxos instance, the number of busy threads is bounded by the in-flight window
+    private final ExecutorService pipeline = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "proposal-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A single client operation waiting for its batch to be decided.
+     */
+    private static class PendingProposal {
+        final Operation operation;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        PendingProposal(Operation operation) {
+            this.operation = operation;
+        }
+    }
+
+    public ProposalBatcher(Server server, int maxBatchSize, long lingerMs) {
+        this.server = server;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        Thread batcher = new Thread(this::run, "proposal-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+    }
+
+    /**
+     * Queues an operation for the next batch and waits for the batch to be decided.
+     * @param operation A PUT or DELETE operation.
+     * @return The result of the proposal for this operation.
+     */
+    public String submit(Operation operation) {
+        PendingProposal pending = new PendingProposal(operation);
+        queue.add(pending);
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR: Proposal of " + operation + " was interrupted";
+        } catch (ExecutionException e) {
+            return "ERROR: Proposal of " + operation + " failed " + e.getCause().getMessage();
+        }
+    }
+
+    /**
+     * Waits for room in the in-flight window, collects operations until the batch is full or the linger time has
+     *    passed, then hands the batch to the pipeline.
+     */
+    private void run() {
+        while (true) {
+            try {
+                List<PendingProposal> batch = new ArrayList<>();
+                batch.add(queue.take());
+                server.acquireProposalSlot();
+                queue.drainTo(batch, maxBatchSize - 1); // Operations that queued while the window was full
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingProposal next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                pipeline.execute(() -> {
+                    try {
+                        propose(batch);
+                    } finally {
+                        server.releaseProposalSlot();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Log.info("Proposal batcher interrupted, stopping");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one Paxos instance for the whole batch and completes every caller with its own result.
+     * @param batch The operations in the batch.
+     */
+    private void propose(List<PendingProposal> batch) {
+        try {
+            List<Operation> operations = new ArrayList<>();
+            for (PendingProposal pending : batch) {
+                operations.add(pending.operation);
+            }
+            byte[] batchValue = Operation.encodeAll(operations);
+            if (batch.size() == 1) {
+                batch.get(0).result.complete(server.proposeValue(batchValue, batch.get(0).operation.toString()));
+                return;
+            }
+            String description = Operation.describe(batchValue);
+            String result = server.proposeValue(batchValue, description);
+            Log.debug(result);
+            for (PendingProposal pending : batch) {
+                // Each caller sees its own operation in place of the whole batch
+                pending.result.complete(result.replace(description, pending.operation.toString()));
+            }
+        } catch (Exception e) {
+            for (PendingProposal pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+}
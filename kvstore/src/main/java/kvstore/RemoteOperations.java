@@ -0,0 +1,49 @@
+package kvstore;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remote Interface which declares the necessary remote methods
+ *  for use with the Remote Procedure Call functionality of the client/server program.
+ */
+public interface RemoteOperations extends Remote {
+    String getRecord(String key, String serverIP) throws RemoteException;
+    String getConsistentRecord(String key, String serverIP) throws RemoteException;
+    // Binary reads: the value exactly as written, null if the key does not exist
+    byte[] getValue(byte[] key, boolean linearizable) throws RemoteException;
+    List<byte[]> multiGetValues(List<byte[]> keys, boolean linearizable) throws RemoteException;
+    // Multi-key operations: one call per batch of keys, writes are decided and applied together
+    Map<String, String> multiGet(List<String> keys, boolean linearizable) throws RemoteException;
+    String multiPut(Map<String, String> entries) throws RemoteException;
+    String multiDelete(List<String> keys) throws RemoteException;
+    String getServerIP() throws RemoteException;
+    String getServerName() throws RemoteException;
+    RoutingTable getRoutingTable() throws RemoteException;
+    // Near cache invalidation: keys changed by the slots applied after the client's last poll
+    KeyChanges getChangedKeys(long[] fromSlots) throws RemoteException;
+    // Watches: long-polls for applied changes to keys under a prefix, resumable from the returned positions
+    WatchBatch watch(byte[] prefix, long[] fromPositions, int maxEvents, long timeoutMs) throws RemoteException;
+    // Range scans over the ordered key index, one page per call
+    ScanPage scan(byte[] startKey, byte[] endKey, int limit) throws RemoteException;
+    ScanPage prefixScan(byte[] prefix, int limit) throws RemoteException;
+    // Membership changes are decided through the replicated log, one server at a time
+    String addMember(String serverName) throws RemoteException;
+    String removeMember(String serverName) throws RemoteException;
+    List<String> getMembers() throws RemoteException;
+    // Paxos values are lists of Operations encoded with Operation.encodeAll(), replies are encoded PaxosMessages
+    byte[] prepare(long slot, int proposalId) throws RemoteException;
+    byte[] acceptRequest(long slot, int proposalId, byte[] value) throws RemoteException;
+    byte[] prepareLeader(int ballot, String candidate, long fromSlot) throws RemoteException;
+    void learn(long slot, byte[] value) throws RemoteException;
+    String propose(byte[] operation) throws RemoteException;
+    int getPipelineWindow() throws RemoteException;
+    int getInFlightProposals() throws RemoteException;
+    long getLastApplied() throws RemoteException;
+    byte[] getDecided(long fromSlot, int max) throws RemoteException;
+    byte[] getSnapshotChunk(long snapshotSlot, long offset, int length) throws RemoteException;
+    byte[] readIndex() throws RemoteException;
+}
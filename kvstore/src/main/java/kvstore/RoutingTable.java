@@ -0,0 +1,75 @@
+package kvstore;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Maps keys to the Paxos groups the keyspace is split into (PAXOS_GROUPS), and records the known leader of each
+ *    group. Every server runs an instance of every group, so any server can serve any key, but writes to a key
+ *    are only ordered by the log of the key's group.
+ * Shared by the servers and the client so that both send a key to the same group.
+ */
+public final class RoutingTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] leaders; // Known leader of each group, null if unknown or in basic mode
+
+    public RoutingTable(String[] leaders) {
+        this.leaders = leaders;
+    }
+
+    public int groupCount() {
+        return leaders.length;
+    }
+
+    public int groupOf(String key) {
+        return groupOf(key, leaders.length);
+    }
+
+    public int groupOf(byte[] key) {
+        return groupOf(key, leaders.length);
+    }
+
+    /**
+     * @param group The group, between 0 and groupCount() - 1.
+     * @return The server name of the group's leader, or null if no leader is known.
+     */
+    public String leaderOf(int group) {
+        return leaders[group];
+    }
+
+    /**
+     * Records a leader learned from a "REDIRECT,$serverName" reply.
+     * @param group The group the redirected request was for.
+     * @param leader The server name of the leader.
+     */
+    public void setLeader(int group, String leader) {
+        leaders[group] = leader;
+    }
+
+    /**
+     * Returns the group owning a key, the same as groupOf() of the key's UTF-8 bytes.
+     * @param key The key.
+     * @param groups The number of groups.
+     * @return The group, between 0 and groups - 1.
+     */
+    public static int groupOf(String key, int groups) {
+        return groupOf(key.getBytes(StandardCharsets.UTF_8), groups);
+    }
+
+    /**
+     * Returns the group owning a key. Uses an FNV-1a hash of the key's bytes rather than String.hashCode(), whose
+     *    low bits spread sequential keys such as "Key1", "Key2" poorly.
+     * @param key The key's bytes.
+     * @param groups The number of groups.
+     * @return The group, between 0 and groups - 1.
+     */
+    public static int groupOf(byte[] key, int groups) {
+        int hash = 0x811c9dc5;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return Math.floorMod(hash, groups);
+    }
+}
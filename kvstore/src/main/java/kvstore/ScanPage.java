@@ -0,0 +1,57 @@
+package kvstore;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * One page of a scan() or prefixScan() reply: key/value pairs in ascending key order, and where to continue. Keys
+ *    and values are the raw bytes that were written, and keys are ordered by their bytes compared as unsigned
+ *    values (Arrays.compareUnsigned), which for UTF-8 keys is the order of their code points. A scan is read page
+ *    by page, so neither side ever holds the whole result.
+ */
+public final class ScanPage implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    public final List<byte[]> keys; // In ascending key order
+    public final List<byte[]> values; // The value of each key in keys
+    public final byte[] nextKey; // Pass as startKey to scan() for the next page, null if this is the last page
+    public final byte[] endKey; // The scan's exclusive end key, null if unbounded
+
+    public ScanPage(List<byte[]> keys, List<byte[]> values, byte[] nextKey, byte[] endKey) {
+        this.keys = keys;
+        this.values = values;
+        this.nextKey = nextKey;
+        this.endKey = endKey;
+    }
+
+    /**
+     * @return The page's key/value pairs decoded as UTF-8, in ascending key order.
+     */
+    public LinkedHashMap<String, String> entries() {
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            entries.put(new String(keys.get(i), StandardCharsets.UTF_8), new String(values.get(i), StandardCharsets.UTF_8));
+        }
+        return entries;
+    }
+
+    /**
+     * @param prefix A key prefix.
+     * @return The smallest key greater than every key starting with prefix, or null if there is none.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        int end = prefix.length;
+        while (end > 0 && prefix[end - 1] == (byte) 0xff) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        byte[] prefixEnd = Arrays.copyOf(prefix, end);
+        prefixEnd[end - 1]++;
+        return prefixEnd;
+    }
+}
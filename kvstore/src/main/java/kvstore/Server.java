@@ -0,0 +1,2517 @@
+package kvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single Paxos message sent from a Proposer to one remote node.
+ * Allows the same fan-out logic to be shared by the PREPARE, ACCEPT and LEARN phases.
+ */
+interface PaxosCall<T> {
+    T call(RemoteOperations srv) throws RemoteException;
+}
+
+/**
+ * Java RMI Server implementing the RemoteOperations interface.
+ * Communicates with the Client using Remote Method invocation to receive input on key/value pairs and the type
+ *    of operation to perform.
+ * GET operations are performed locally on this server.
+ * PUT and DELETE operations are performed using Paxos to ensure the consistency of transactions.
+ * Each decided operation occupies one slot of a replicated log, and every Learner applies the log to its
+ *    hashmap in slot order.
+ * With PAXOS_GROUPS > 1 the keyspace is split between several independent Paxos groups. Each group is a separate
+ *    Server instance with its own hashmap, log and leader, and ShardRouter sends client requests to the owning group.
+ */
+public class Server implements RemoteOperations{
+    private final KVStore hMap;
+    private final String serverName;
+    private final int groupId; // Paxos group run by this instance, see RoutingTable.groupOf()
+    private ShardRouter router = null; // Routes client requests between the groups of this server
+    // Peers: the instance of the same group on every member and pending member server
+    private final ConcurrentHashMap<String, RemoteOperations> serverRefsByName = new ConcurrentHashMap<>();
+    // Membership: servers whose Acceptors make up this group's quorums, changed one server at a time through the log
+    private static final List<String> INITIAL_MEMBERS = envList("PAXOS_MEMBERS",
+            "rmi-server-1,rmi-server-2,rmi-server-3,rmi-server-4,rmi-server-5");
+    // Learner: replaced under applyLock when a change is applied and again when it takes effect
+    private volatile Membership membership = Membership.initial(INITIAL_MEMBERS);
+    private final Object peersLock = new Object(); // Guards connecting to and dropping peers
+    private volatile boolean active = true; // Simulates the failure of an Acceptor
+    private static ScheduledExecutorService acceptorFailure = Executors.newScheduledThreadPool(2);
+    // Per-phase timeouts, a phase moves on as soon as a majority answers or its timeout expires
+    private static final long PREPARE_TIMEOUT_MS = envLong("PAXOS_PREPARE_TIMEOUT_MS", 2000);
+    private static final long ACCEPT_TIMEOUT_MS = envLong("PAXOS_ACCEPT_TIMEOUT_MS", 2000);
+    private static final int MAX_PROPOSAL_ATTEMPTS = (int) envLong("PAXOS_MAX_ATTEMPTS", 10);
+    // Bounded pool used to send each Paxos phase to all nodes at once
+    private static final int FANOUT_THREADS = (int) envLong("PAXOS_FANOUT_THREADS", 128);
+    private static ExecutorService fanOutExecutor = new ThreadPoolExecutor(FANOUT_THREADS, FANOUT_THREADS,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>((int) envLong("PAXOS_FANOUT_QUEUE", 4096)));
+
+    // Replicated log. Slots start at 1 and are applied to hMap strictly in order.
+    // Acceptor: Paxos state of each slot that has not been applied yet. Applied slots are garbage collected.
+    private ConcurrentSkipListMap<Long, PaxosState> paxosLog = new ConcurrentSkipListMap<>();
+    // Learner: decided values waiting on an earlier slot before they can be applied
+    private ConcurrentSkipListMap<Long, byte[]> decided = new ConcurrentSkipListMap<>();
+    private volatile long lastApplied = 0; // Learner: highest slot applied to hMap
+    private final Object applyLock = new Object();
+    private final AtomicLong nextSlot = new AtomicLong(1); // Proposer: lowest slot not known to be in use
+    // Acceptor: slots are guarded by lock stripes so PREPARE/ACCEPT messages for different slots run concurrently
+    private static final int LOCK_STRIPES = (int) envLong("PAXOS_LOCK_STRIPES", 64);
+    private final ReentrantLock[] slotLocks = new ReentrantLock[LOCK_STRIPES];
+    // Durability: Acceptor promises/accepts and decided slots are logged before they take effect
+    private WriteAheadLog wal = null; // Stays null when running without a data directory, e.g. in benchmarks
+    private Path dataDir = null;
+
+    // Snapshots: hMap is periodically written to disk so the write-ahead log it covers can be deleted
+    private static final long SNAPSHOT_INTERVAL_MS = envLong("PAXOS_SNAPSHOT_INTERVAL_MS", 60000);
+    private static final long SNAPSHOT_MIN_SLOTS = envLong("PAXOS_SNAPSHOT_MIN_SLOTS", 1000);
+    private static ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor();
+    private static final byte[] ABSENT = new byte[0]; // Compared by identity, marks a key that did not exist
+    private final Object snapshotLock = new Object();
+    private volatile long lastSnapshotSlot = 0;
+    // Learner: value of each key before its first change since the running snapshot's slot, guarded by applyLock
+    private ConcurrentHashMap<ByteBuffer, byte[]> snapshotPreImages = null;
+
+    // Catch-up: a Learner that missed LEARN messages pulls the decided slots, or a snapshot, from a peer
+    private static final long CATCHUP_INTERVAL_MS = envLong("PAXOS_CATCHUP_INTERVAL_MS", 1000);
+    private static final int CATCHUP_BATCH = (int) envLong("PAXOS_CATCHUP_BATCH", 1000);
+    private static final long CATCHUP_RETAIN = envLong("PAXOS_CATCHUP_RETAIN", 2000);
+    private static final int SNAPSHOT_CHUNK_BYTES = (int) envLong("PAXOS_SNAPSHOT_CHUNK_BYTES", 1024 * 1024);
+    private final ScheduledExecutorService catchUpScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Learner: values of recently applied slots, kept for peers that are catching up
+    private ConcurrentSkipListMap<Long, byte[]> recentlyApplied = new ConcurrentSkipListMap<>();
+    private long suspectedHole = -1; // Catch-up: undecided slot seen on the previous run, only used by the catch-up thread
+    private final Set<String> unreachablePeers = ConcurrentHashMap.newKeySet(); // Catch-up: peers that failed the last poll
+
+    // Multi-Paxos: a stable leader wins a single PREPARE covering every future slot, then skips straight to ACCEPT
+    private static final boolean MULTI_PAXOS = "multi".equalsIgnoreCase(System.getenv("PAXOS_MODE"));
+    private static final long LEADER_TIMEOUT_MS = envLong("PAXOS_LEADER_TIMEOUT_MS", 1000);
+    private static final int BALLOT_STRIDE = Membership.MAX_MEMBERS; // Ballots are round * BALLOT_STRIDE + member index
+    private volatile int leaderPromisedBallot = -1; // Acceptor: highest leader ballot promised, covers every slot
+    private volatile String leaderName = null; // Acceptor: server holding leaderPromisedBallot
+    private volatile boolean isLeader = false; // Proposer: whether this server currently holds a leader ballot
+    private volatile int leaderBallot = -1; // Proposer: the ballot this server won leadership with
+    private volatile List<String> leaderMembers = null; // Proposer: the members whose majority promised leaderBallot
+    private final AtomicInteger highestBallotSeen = new AtomicInteger(-1);
+    // Proposer: serializes elections and step-downs without holding the Server monitor during the fan-out
+    private final Object electionLock = new Object();
+
+    // Batching: client writes are grouped so a whole batch is decided by one Paxos instance
+    private static final int BATCH_SIZE = (int) envLong("PAXOS_BATCH_SIZE", 512);
+    private static final long BATCH_LINGER_MS = envLong("PAXOS_BATCH_LINGER_MS", 2);
+    private final ProposalBatcher batcher;
+
+    // Pipelining: Paxos instances this server may have in flight at once, learners still apply them in slot order
+    private static final int PIPELINE_WINDOW = (int) envLong("PAXOS_PIPELINE_WINDOW", 64);
+    private final Semaphore pipelineWindow = new Semaphore(PIPELINE_WINDOW);
+
+    // Transport: replica-to-replica Paxos calls go over Java RMI, or over NioTransport with PAXOS_TRANSPORT=nio
+    private static final boolean NIO_TRANSPORT = "nio".equalsIgnoreCase(System.getenv("PAXOS_TRANSPORT"));
+    private static final int NIO_PORT = (int) envLong("PAXOS_NIO_PORT", 1400);
+    private static final int NIO_WORKERS = (int) envLong("PAXOS_NIO_WORKERS", 64);
+    private static final long NIO_REQUEST_TIMEOUT_MS = envLong("PAXOS_NIO_REQUEST_TIMEOUT_MS", 5000);
+    private NioTransport peerTransport = null;
+
+    // Sharding: the keyspace is split by key hash into independent Paxos groups, each with its own log and leader
+    private static final int GROUPS = (int) Math.max(1, envLong("PAXOS_GROUPS", 1));
+
+    // Storage engine: each group's keys live in a HeapStore, or outside the Java heap in an OffHeapStore
+    private static final boolean OFF_HEAP_STORE = "offheap".equalsIgnoreCase(System.getenv("PAXOS_STORE"));
+    private static final int STORE_SEGMENTS = (int) envLong("PAXOS_STORE_SEGMENTS", 64);
+
+    // Linearizable reads: a read-index round asks a majority for the highest accepted slot, then the read waits to apply it
+    private static final long READ_TIMEOUT_MS = envLong("PAXOS_READ_TIMEOUT_MS", 2000);
+    private final ExecutorService readIndexExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicLong highestAcceptedSlot = new AtomicLong(0); // Acceptor: highest slot holding an accepted value
+    private final Object readIndexLock = new Object();
+    private CompletableFuture<Long> nextReadIndex = null; // Read-index round not yet started, guarded by readIndexLock
+    private final AtomicLong readHole = new AtomicLong(-1); // Undecided slot a blocked read last asked to fill
+
+    // Multi-key writes: decided by one Paxos instance and applied together, bounded so a log value stays manageable
+    private static final int MAX_MULTI_KEYS = (int) envLong("PAXOS_MAX_MULTI_KEYS", 10000);
+
+    // Scans: keys are also kept in an ordered index, and scans return them one bounded page at a time
+    private static final boolean ORDERED_INDEX = !"false".equalsIgnoreCase(System.getenv("PAXOS_ORDERED_INDEX"));
+    static final int MAX_SCAN_PAGE = (int) Math.max(1, envLong("PAXOS_MAX_SCAN_PAGE", 1000));
+    private final IndexedStore orderedKeys; // Null with PAXOS_ORDERED_INDEX=false
+
+    // Watches: recently applied changes, long-polled by watchers and resumable from any slot still buffered
+    private static final int WATCH_BUFFER = (int) envLong("PAXOS_WATCH_BUFFER", 10000);
+    static final long WATCH_MAX_WAIT_MS = envLong("PAXOS_WATCH_MAX_WAIT_MS", 30000);
+    private final WatchBuffer watchBuffer = new WatchBuffer(WATCH_BUFFER);
+
+    // Conditional writes: outcome of each conditional operation proposed by this server, by request ID
+    private final ConcurrentHashMap<Long, CompletableFuture<String>> conditionalOutcomes = new ConcurrentHashMap<>();
+
+
+    public Server(KVStore hMap, String serverName) throws RemoteException {
+        this(hMap, serverName, 0);
+    }
+
+    public Server(KVStore hMap, String serverName, int groupId) throws RemoteException {
+        this.orderedKeys = ORDERED_INDEX ? new IndexedStore(hMap) : null;
+        this.hMap = ORDERED_INDEX ? orderedKeys : hMap;
+        this.serverName = serverName;
+        this.groupId = groupId;
+        for (int i = 0; i < slotLocks.length; i++) {
+            slotLocks[i] = new ReentrantLock();
+        }
+        this.batcher = BATCH_SIZE > 1 ? new ProposalBatcher(this, BATCH_SIZE, BATCH_LINGER_MS) : null;
+    }
+
+    /**
+     * Receives a PUT, DELETE or conditional operation from a client. Unless batching is disabled (PAXOS_BATCH_SIZE=1),
+     *    the operation waits briefly in the ProposalBatcher so that it is decided together with other pending operations.
+     * A conditional operation (CAS, PUT_IF_ABSENT, INCREMENT) is evaluated by the Learners when its slot is applied.
+     *    Once it is decided, this server waits for its own Learner to apply it and appends the outcome to the result.
+     * @param operation An Operation encoded with Operation.encode().
+     * @return If successful, returns a message signifying the reaching of a PAXOS consensus, followed by
+     *    " -> SUCCESS,$newValue" or " -> FAILED,$currentValue" for a conditional operation.
+     *    If unsuccessful, returns a message signifying the failure to reach a consensus.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String propose(byte[] operation) throws RemoteException {
+        Operation op;
+        try {
+            op = Operation.decode(operation);
+        } catch (RuntimeException e) {
+            return "ERROR: Proposer " + serverName + " received a malformed operation " + e.getMessage();
+        }
+        if (op.isMembershipChange()) {
+            return "ERROR: Proposer " + serverName + " only accepts membership changes through addMember and removeMember";
+        }
+        return proposeOperation(op);
+    }
+
+    /**
+     * Proposes a decoded operation. A conditional operation is tagged with a request ID, and once it is decided
+     *    this server waits for its own Learner to apply it and appends the outcome to the result.
+     * @param op The operation.
+     * @return The result of the proposal, followed by " -> $outcome" for a conditional operation.
+     */
+    private String proposeOperation(Operation op) throws RemoteException {
+        if (!op.isConditional()) {
+            return submit(op);
+        }
+        op = op.withRequestId(ThreadLocalRandom.current().nextLong());
+        CompletableFuture<String> outcome = new CompletableFuture<>();
+        conditionalOutcomes.put(op.requestId, outcome);
+        try {
+            String result = submit(op);
+            if (!result.contains("reached consensus")) {
+                return result;
+            }
+            try {
+                return result + " -> " + outcome.get(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return result + " -> UNKNOWN, not yet applied by " + serverName;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result + " -> UNKNOWN, interrupted waiting for the outcome";
+            } catch (ExecutionException e) {
+                return result + " -> UNKNOWN, " + e.getCause().getMessage();
+            }
+        } finally {
+            conditionalOutcomes.remove(op.requestId);
+        }
+    }
+
+    /**
+     * Proposes a single operation through the ProposalBatcher, or on its own if batching is disabled.
+     * @param op The operation.
+     * @return The result of the proposal.
+     */
+    private String submit(Operation op) throws RemoteException {
+        if (batcher != null) {
+            return batcher.submit(op);
+        }
+        try {
+            acquireProposalSlot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR: Proposer " + serverName + " interrupted waiting for the pipeline window";
+        }
+        try {
+            return proposeValue(Operation.encodeAll(List.of(op)), op.toString());
+        } finally {
+            releaseProposalSlot();
+        }
+    }
+
+    /**
+     * Waits until fewer than PAXOS_PIPELINE_WINDOW Paxos instances are in flight, then reserves one.
+     * @throws InterruptedException For thread-related issues.
+     */
+    void acquireProposalSlot() throws InterruptedException {
+        pipelineWindow.acquire();
+    }
+
+    /**
+     * Frees a reserved place in the pipeline window once its Paxos instance has completed.
+     */
+    void releaseProposalSlot() {
+        pipelineWindow.release();
+    }
+
+    /**
+     * Returns the maximum number of Paxos instances this server keeps in flight at once.
+     * @return The value of PAXOS_PIPELINE_WINDOW.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public int getPipelineWindow() throws RemoteException {
+        return PIPELINE_WINDOW;
+    }
+
+    /**
+     * Returns the number of Paxos instances this server currently has in flight.
+     * @return A number between 0 and PAXOS_PIPELINE_WINDOW.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public int getInFlightProposals() throws RemoteException {
+        return PIPELINE_WINDOW - pipelineWindow.availablePermits();
+    }
+
+    /**
+     * Implements the Proposer functionality.
+     * The backbone of the Paxos protocol, is separated into 3 main phases, run for one slot of the replicated log.
+     *
+     * Prepare Phase:
+     * Sends a prepare message with a unique proposal number (proposalID) for the next free slot to all acceptors.
+     * Inquires if a value has been previously accepted for that slot.
+     * If nothing was accepted for the slot, the acceptor returns a promise containing the current proposalID.
+     * If something has been accepted for the slot, acceptor returns a promise containing the previously
+     *    accepted proposalID and previously accepted value.
+     *
+     * Promise Phase:
+     * Evaluates the returned promises from the acceptors. If a previously accepted value is returned for the slot,
+     *    the proposer completes that value first and retries its own value in the next free slot.
+     * If no value has been accepted for the slot, the proposer will perform the currently proposed operation.
+     *
+     * Accept Phase:
+     * Acceptors attempt to ACCEPT the above value. If accepted by a majority of acceptors, the slot is decided and
+     *    propagated to all learners, which apply it once every earlier slot has been applied.
+     * @param value A list of Operations encoded with Operation.encodeAll(), a batch or a single operation.
+     * @param description Describes the value in log and result messages, e.g. "PUT,$key,$value".
+     * @return If successful, returns a message signifying the reaching of a PAXOS consensus.
+     *    If unsuccessful, returns a message signifying the failure to reach a consensus.
+     * @throws RemoteException For RMI-related errors.
+     */
+    String proposeValue(byte[] value, String description) throws RemoteException {
+        if (MULTI_PAXOS) {
+            return proposeAsLeader(value, description);
+        }
+        int ballot = -1;
+        if (membership.indexOf(serverName) < 0) {
+            return "ERROR: Proposer " + serverName + " is not a member of group " + groupId;
+        }
+        try {
+            long slot = claimSlot();
+            for (int attempt = 1; attempt <= MAX_PROPOSAL_ATTEMPTS; attempt++) {
+                ballot = nextBallot(attempt);
+                int id = ballot;
+                long s = slot;
+                List<String> voters = membership.membersFor(s);
+                Log.trace("PROPOSE", id, s, null, description);
+
+                // Prepare Phase: Send PREPARE message to all nodes (Acceptors) at once, stop waiting at a majority
+                AtomicBoolean slotApplied = new AtomicBoolean(false);
+                List<PaxosMessage> promises = fanOut(voters, srv -> {
+                    PaxosMessage response = PaxosMessage.decode(srv.prepare(s, id));
+                    slotApplied.compareAndSet(false, observe(response));
+                    return response;
+                }, r -> r.type == PaxosMessage.PROMISE, "PREPARE", PREPARE_TIMEOUT_MS);
+
+                if (slotApplied.get() || s <= lastApplied) { // Slot was already decided, move on to a free one
+                    // Another proposer may have completed our own value from an earlier attempt that timed out
+                    if (awaitApplied(s, System.currentTimeMillis() + ACCEPT_TIMEOUT_MS)
+                            && Operation.sameProposal(recentlyApplied.get(s), value)) {
+                        Log.debug("DECIDED", id, s, null, description);
+                        return "ID: " + id + " Proposer " + serverName + " reached consensus on value " + description + " in slot " + s;
+                    }
+                    slot = claimSlot();
+                    continue;
+                }
+                // Promise Phase: Evaluate replies from acceptors
+                if (promises.size() < majority(voters)) { // Quorum not reached, retry with a higher ballot
+                    Log.debug("PREPARE", id, s, null, "No majority of promises");
+                    backOff(attempt);
+                    continue;
+                }
+                byte[] finalValue = value; // If no value returned by the acceptors, proposer uses initial value
+                int highestAcceptedID = -1;
+                for (PaxosMessage promise : promises) {
+                    if (promise.acceptedBallot > highestAcceptedID) {
+                        highestAcceptedID = promise.acceptedBallot;
+                        finalValue = promise.value;
+                    }
+                }
+                // A value with our proposal ID is ours, accepted in an earlier attempt that timed out. Another
+                //    proposal holding the same writes is not, and ours still needs a slot of its own
+                boolean ownValue = highestAcceptedID == -1 || Operation.sameProposal(finalValue, value);
+                byte[] acceptedValue = finalValue;
+                String acceptedDescription = ownValue ? description : Operation.describe(acceptedValue);
+                Log.trace("ACCEPT", id, s, null, acceptedDescription);
+
+                // Accept Phase: Send ACCEPT message to all nodes at once, stop waiting at a majority
+                List<PaxosMessage> accepts = fanOut(voters, srv -> {
+                    PaxosMessage response = PaxosMessage.decode(srv.acceptRequest(s, id, acceptedValue));
+                    observe(response);
+                    return response;
+                }, r -> r.type == PaxosMessage.ACCEPTED, "ACCEPT", ACCEPT_TIMEOUT_MS);
+
+                if (accepts.size() < majority(voters)) { // Trigger if not enough accepts obtained
+                    Log.debug("ACCEPT", id, s, null, "No majority of accepts");
+                    backOff(attempt);
+                    continue;
+                }
+
+                // Success - kick off learners to apply the slot
+                broadcastLearn(s, acceptedValue);
+                Log.debug("DECIDED", id, s, null, acceptedDescription);
+                if (ownValue) {
+                    return "ID: " + id + " Proposer " + serverName + " reached consensus on value " + description + " in slot " + s;
+                }
+                slot = claimSlot(); // Slot held an earlier value, propose our own value in the next one
+            }
+            Log.warn("ID: " + ballot + " Proposer " + serverName + " failed to reach consensus");
+            return "ID: " + ballot + " Proposer " + serverName + " failed to reach consensus";
+        } catch (Exception e) {
+            Log.error("Issue in propose method " + e.getMessage());
+            return "ERROR: ID: " + ballot + " Proposer " + serverName + " Proposal rejected due to error in propose method";
+        }
+    }
+
+    /**
+     * Implements the Proposer functionality in Multi-Paxos mode (PAXOS_MODE=multi).
+     * Only the stable leader proposes. Writes sent to any other server are redirected to the leader, and if no
+     *    leader is known or the known leader failed its last catch-up poll, this server runs an election to become
+     *    leader. The leader is not pinged first, so a redirect costs no extra round trip.
+     * Once elected, the leader's single PREPARE covers every future slot, so each write is assigned the next slot
+     *    and goes straight to the Accept Phase using the leader's ballot. This continues until another proposer
+     *    shows up with a higher ballot, at which point the Acceptors reject the leader's ACCEPTs and it steps down.
+     * @param value A list of Operations encoded with Operation.encodeAll().
+     * @param description Describes the value in log and result messages.
+     * @return A consensus or failure message, or "REDIRECT,$serverName" if another server is the leader.
+     * @throws RemoteException For RMI-related errors.
+     */
+    private String proposeAsLeader(byte[] value, String description) throws RemoteException {
+        int ballot = leaderBallot;
+        try {
+            if (isLeader && !membership.members.equals(leaderMembers)) { // Elected before a change took effect
+                stepDown(leaderBallot);
+            }
+            if (!isLeader) {
+                String leader = leaderName;
+                if (leader != null && !leader.equals(serverName) && isReachable(leader)) {
+                    Log.debug("REDIRECT", Log.NONE, Log.NONE, null, leader);
+                    return "REDIRECT," + leader;
+                }
+                // Before the first election, leave it to this group's preferred server so groups spread their leaders
+                List<String> current = membership.members;
+                String preferred = current.get(groupId % current.size());
+                if (leader == null && highestBallotSeen.get() == -1 && !preferred.equals(serverName)
+                        && isReachable(preferred)) {
+                    return "REDIRECT," + preferred;
+                }
+                if (!electLeader()) {
+                    leader = leaderName;
+                    if (leader != null && !leader.equals(serverName)) { // Lost the election to a competing server
+                        return "REDIRECT," + leader;
+                    }
+                    Log.warn("Proposer " + serverName + " failed to become leader");
+                    return "ID: " + ballot + " Proposer " + serverName + " Proposal rejected, no leader elected";
+                }
+            }
+            ballot = leaderBallot;
+            int id = ballot;
+            long slot = claimSlot();
+            List<String> voters = membership.membersFor(slot);
+            if (!voters.equals(leaderMembers)) { // A change took effect after the check above, the next write re-elects
+                stepDown(id);
+                return "ID: " + id + " Proposer " + serverName + " failed to reach consensus, membership changed";
+            }
+            Log.trace("ACCEPT", id, slot, null, description);
+
+            // Accept Phase: Phase 1 is already covered by the leader's ballot
+            List<PaxosMessage> accepts = fanOut(voters, srv -> PaxosMessage.decode(srv.acceptRequest(slot, id, value)),
+                    r -> r.type == PaxosMessage.ACCEPTED, "ACCEPT", ACCEPT_TIMEOUT_MS);
+
+            if (accepts.size() >= majority(voters)) {
+                broadcastLearn(slot, value);
+                Log.debug("DECIDED", id, slot, null, description);
+                return "ID: " + id + " Proposer " + serverName + " reached consensus on value " + description + " in slot " + slot;
+            } else { // Another proposer holds a higher ballot, or too few Acceptors are alive
+                stepDown(id);
+                Log.warn("ID: " + id + " Leader " + serverName + " failed to reach consensus");
+                return "ID: " + id + " Proposer " + serverName + " failed to reach consensus";
+            }
+        } catch (Exception e) {
+            Log.error("Issue in proposeAsLeader method " + e.getMessage());
+            return "ERROR: ID: " + ballot + " Proposer " + serverName + " Proposal rejected due to error in propose method";
+        }
+    }
+
+    /**
+     * Runs Phase 1 of Multi-Paxos: sends a single PREPARE with a new ballot that covers every slot after the
+     *    last one this server has applied.
+     * Slots that Acceptors report as accepted are re-accepted and learned under the new ballot, and gaps between
+     *    them are filled with NOOPs, before the leader starts assigning new slots.
+     * @return true if this server is now the leader.
+     */
+    private boolean electLeader() throws Exception {
+        synchronized (electionLock) {
+            if (isLeader) {
+                return true;
+            }
+            return runElection();
+        }
+    }
+
+    /**
+     * Runs a single leader election, called by electLeader while holding electionLock.
+     * The election needs a majority of the current members. While a membership change is pending, only the slots
+     *    before it takes effect are recovered, and the leader steps down once it does, as the new members' majority
+     *    may not overlap the one that elected it.
+     * @return true if this server is now the leader.
+     */
+    private boolean runElection() throws Exception {
+        Membership current = membership;
+        if (current.indexOf(serverName) < 0) {
+            Log.warn("Proposer " + serverName + " is not a member of group " + groupId + " and cannot lead it");
+            return false;
+        }
+        List<String> voters = current.members;
+        long lastSlot = current.pending != null ? current.activeFrom - 1 : Long.MAX_VALUE;
+        int round = Math.max(highestBallotSeen.get(), leaderBallot) / BALLOT_STRIDE + 1;
+        int ballot = round * BALLOT_STRIDE + serverIndex();
+        String candidate = serverName;
+        long fromSlot = lastApplied + 1;
+        Log.info("ID: " + ballot + " Proposer " + candidate + " running leader election from slot " + fromSlot);
+
+        List<PaxosMessage> promises = fanOut(voters, srv -> {
+            PaxosMessage response = PaxosMessage.decode(srv.prepareLeader(ballot, candidate, fromSlot));
+            observe(response);
+            return response;
+        }, r -> r.type == PaxosMessage.PROMISE, "PREPARE", PREPARE_TIMEOUT_MS);
+
+        if (promises.size() < majority(voters)) {
+            highestBallotSeen.accumulateAndGet(ballot, Math::max);
+            return false;
+        }
+
+        // Collect values accepted under earlier ballots, keeping the one with the highest ID for each slot
+        TreeMap<Long, byte[]> recovered = new TreeMap<>();
+        Map<Long, Integer> recoveredIDs = new TreeMap<>();
+        long highestApplied = lastApplied; // Slots applied by any Acceptor are already decided
+        long highestSlot = lastApplied;
+        for (PaxosMessage promise : promises) {
+            highestApplied = Math.max(highestApplied, promise.slot); // A leader PROMISE carries lastApplied
+            for (PaxosMessage entry : promise.entries) {
+                if (entry.slot > lastSlot) { // Accepted under the pending members, recovered after the change
+                    continue;
+                }
+                if (entry.acceptedBallot > recoveredIDs.getOrDefault(entry.slot, -1)) {
+                    recoveredIDs.put(entry.slot, entry.acceptedBallot);
+                    recovered.put(entry.slot, entry.value);
+                }
+                highestSlot = Math.max(highestSlot, entry.slot);
+            }
+        }
+
+        leaderBallot = ballot;
+        for (long slot = highestApplied + 1; slot <= highestSlot; slot++) {
+            long s = slot;
+            byte[] value = recovered.getOrDefault(slot, Operation.NOOP);
+            List<PaxosMessage> accepts = fanOut(voters, srv -> PaxosMessage.decode(srv.acceptRequest(s, ballot, value)),
+                    r -> r.type == PaxosMessage.ACCEPTED, "ACCEPT", ACCEPT_TIMEOUT_MS);
+            if (accepts.size() < majority(voters)) {
+                Log.warn("ID: " + ballot + " Proposer " + candidate + " could not recover slot " + slot);
+                return false;
+            }
+            broadcastLearn(slot, value);
+        }
+        // Resume right after the recovered slots, reusing any slot a failed leader claimed but never got accepted
+        nextSlot.set(Math.max(highestApplied, highestSlot) + 1);
+
+        leaderMembers = voters;
+        isLeader = true;
+        Log.info("ID: " + ballot + " Proposer " + candidate + " elected leader, recovered " + recovered.size() + " slots");
+        return true;
+    }
+
+    /**
+     * Gives up leadership after a rejected ACCEPT, so the next write triggers a redirect or a new election.
+     * @param ballot The ballot that was rejected.
+     */
+    private void stepDown(int ballot) {
+        synchronized (electionLock) {
+            if (isLeader && leaderBallot == ballot) {
+                isLeader = false;
+                highestBallotSeen.accumulateAndGet(ballot, Math::max);
+                Log.info("ID: " + ballot + " Leader stepping down");
+            }
+        }
+    }
+
+    /**
+     * Checks whether a server answered this server's last catch-up poll, which every peer gets once per
+     *    PAXOS_CATCHUP_INTERVAL_MS. Nothing is sent, so writes are redirected to the leader without an extra round
+     *    trip. A client redirected to a leader that has since failed retries on another replica, which runs an
+     *    election once its own poll of the leader has failed.
+     * @param name The server name, e.g. "rmi-server-1".
+     * @return true if the server is connected and answered the last poll.
+     */
+    private boolean isReachable(String name) {
+        return serverRefsByName.containsKey(name) && !unreachablePeers.contains(name);
+    }
+
+    /**
+     * Returns this server's member index, used to keep ballots unique between servers. Indexes are assigned
+     *    through the log when a server joins, and are never shared by two members, see Membership.
+     * @return The member index of this server, between 0 and BALLOT_STRIDE - 1.
+     * @throws IllegalStateException If this server is not a member, e.g. while it waits to be added.
+     */
+    private int serverIndex() {
+        int index = membership.indexOf(serverName);
+        if (index < 0) {
+            throw new IllegalStateException(serverName + " is not a member of group " + groupId);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of Acceptors that make up a quorum of the given members. Members that are not connected
+     *    yet still count, so a quorum is never computed from a partial view of the group.
+     * @param voters The members whose majority decides a slot, see Membership.membersFor().
+     * @return A majority of voters.
+     */
+    private static int majority(List<String> voters) {
+        return voters.size() / 2 + 1;
+    }
+
+    /**
+     * Generates a ballot that is unique to this server and higher than any competing ballot seen so far.
+     * @param attempt The attempt number for the current slot, starting at 1.
+     * @return The new ballot.
+     */
+    private int nextBallot(int attempt) {
+        int round = highestBallotSeen.get() / BALLOT_STRIDE + attempt;
+        return round * BALLOT_STRIDE + serverIndex();
+    }
+
+    /**
+     * Reserves the next free slot of the replicated log for a new proposal. Slots are claimed at most
+     *    PAXOS_PIPELINE_WINDOW ahead of the last applied slot, which is the window a membership change waits out
+     *    before it takes effect, so a proposal never uses members that stopped governing its slot. While a change
+     *    is pending, slots from the one it takes effect at are only claimed once it has.
+     * @return A slot after every slot this server has applied or seen in use.
+     * @throws TimeoutException If the slots before the window were not applied within the phase timeouts.
+     */
+    private long claimSlot() throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + PREPARE_TIMEOUT_MS + ACCEPT_TIMEOUT_MS;
+        while (true) {
+            long current = nextSlot.get();
+            long slot = Math.max(current, lastApplied + 1);
+            Membership config = membership;
+            long needed = slot - PIPELINE_WINDOW; // Last applied slot this slot may be claimed at
+            if (config.pending != null && slot >= config.activeFrom) {
+                needed = Math.max(needed, config.activeFrom - 1);
+            }
+            if (lastApplied < needed) {
+                if (!awaitApplied(needed, deadline)) {
+                    throw new TimeoutException("slot " + slot + " is too far ahead of applied slot " + lastApplied);
+                }
+                continue;
+            }
+            if (nextSlot.compareAndSet(current, slot + 1)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Records what an Acceptor's rejection reveals about the rest of the cluster.
+     * @param response A response to a PREPARE or ACCEPT message.
+     * @return true if the Acceptor reported the slot as already applied.
+     */
+    private boolean observe(PaxosMessage response) {
+        if (response.type == PaxosMessage.REJECT) { // Ballot holds the ballot the Acceptor promised instead
+            highestBallotSeen.accumulateAndGet(response.ballot, Math::max);
+        } else if (response.type == PaxosMessage.APPLIED) { // Slot holds the Acceptor's lastApplied
+            nextSlot.accumulateAndGet(response.slot + 1, Math::max);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits a short, random amount of time before retrying a slot so competing proposers stop colliding.
+     * @param attempt The attempt number for the current slot, starting at 1.
+     */
+    private void backOff(int attempt) throws InterruptedException {
+        Thread.sleep((long) (Math.random() * 20 * attempt));
+    }
+
+    /**
+     * Sends a single Paxos phase to every voter in parallel on the fan-out executor.
+     * Returns as soon as a majority of nodes reply with the expected response, once a majority can no longer
+     *    be reached, or once the phase timeout expires. Slow or hung nodes are left running in the background
+     *    and do not hold up the Proposer.
+     * @param voters The members whose majority decides the phase, see Membership.membersFor().
+     * @param call The Paxos message to send to each node.
+     * @param positive Whether a response counts towards the majority, e.g. a PROMISE or an ACCEPT.
+     * @param phase The name of the phase, used for logging.
+     * @param timeoutMs The maximum time to wait for a majority, in milliseconds.
+     * @return The positive responses received before the phase completed.
+     */
+    private <T> List<T> fanOut(List<String> voters, PaxosCall<T> call, Predicate<T> positive, String phase,
+                               long timeoutMs) throws InterruptedException {
+        List<RemoteOperations> nodes = new ArrayList<>(voters.size());
+        for (String voter : voters) {
+            RemoteOperations server = serverRefsByName.get(voter);
+            if (server != null) {
+                nodes.add(server);
+            }
+        }
+        int majority = majority(voters);
+        ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(fanOutExecutor);
+        int submitted = 0;
+        for (RemoteOperations srv : nodes) {
+            try {
+                completionService.submit(() -> call.call(srv));
+                submitted++;
+            } catch (RejectedExecutionException e) { // Executor saturated, treat node as unresponsive
+                Log.error("Fan-out executor rejected " + phase + " request");
+            }
+        }
+
+        List<T> responses = new ArrayList<>();
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        // Stop at a majority, or as soon as the outstanding replies can no longer make up a majority
+        while (responses.size() < majority && responses.size() + (submitted - received) >= majority) {
+            Future<T> reply = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (reply == null) { // Phase timed out
+                Log.warn(phase + " phase timed out with " + responses.size() + "/" + majority + " responses");
+                break;
+            }
+            received++;
+            try {
+                T response = reply.get();
+                if (response != null && positive.test(response)) {
+                    responses.add(response);
+                }
+            } catch (ExecutionException e) {
+                Log.error("" + phase + " request failed " + e.getCause().getMessage());
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Applies a decided slot locally, then sends it to every other Learner without waiting on them.
+     * @param slot The decided slot.
+     * @param value The decided list of Operations.
+     */
+    private void broadcastLearn(long slot, byte[] value) throws RemoteException {
+        learn(slot, value);
+        for (Map.Entry<String, RemoteOperations> entry : serverRefsByName.entrySet()) {
+            if (!entry.getKey().equals(serverName)) {
+                submitLearn(entry.getValue(), slot, value);
+            }
+        }
+    }
+
+    /**
+     * Sends a LEARN message to a node without waiting on the result.
+     * @param srv The node to send the LEARN message to.
+     * @param slot The decided slot.
+     * @param value The decided list of Operations.
+     */
+    private void submitLearn(RemoteOperations srv, long slot, byte[] value) {
+        try {
+            fanOutExecutor.execute(() -> {
+                try {
+                    srv.learn(slot, value);
+                } catch (Exception e) {
+                    Log.error("LEARN request failed " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.error("Fan-out executor rejected LEARN request");
+        }
+    }
+
+    /**
+     * Part of the Acceptor functionality. Proposer -> Acceptor.
+     * Receives a PREPARE message from the Proposer's propose method.
+     * @param slot The slot of the replicated log being proposed for.
+     * @param proposalID A unique identifier for the specific operation being proposed.
+     * @return An encoded PaxosMessage: a PROMISE if the proposalID is greater than the ID previously promised for
+     *    the slot, a REJECT otherwise, or APPLIED if the slot has already been decided and applied.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] prepare(long slot, int proposalID) throws RemoteException {
+        ReentrantLock lock = slotLock(slot);
+        lock.lock();
+        try {
+            if (!active) { // Simulates if Acceptor fails
+                Log.warn("ACCEPTOR FAILURE: " + serverName + " is inactive. Rejecting PREPARE request.");
+                return PaxosMessage.of(PaxosMessage.REJECT, slot, -1).encode();
+            } else if (slot <= lastApplied) { // Slot has been decided and its state garbage collected
+                return PaxosMessage.of(PaxosMessage.APPLIED, lastApplied, -1).encode();
+            } else { // Simulates properly functioning Acceptor
+                PaxosState state = paxosLog.computeIfAbsent(slot, s -> new PaxosState());
+                int promisedID = Math.max(state.highestPromisedID, leaderPromisedBallot);
+                if (proposalID > promisedID) {
+                    logDurably(WriteAheadLog.PROMISE, slot, proposalID, null);
+                    state.highestPromisedID = proposalID;
+                    nextSlot.accumulateAndGet(slot + 1, Math::max);
+                    if (state.acceptedProposalID == -1) { // If slot has not previously accepted a value
+                        Log.trace("PROMISE", state.highestPromisedID, slot, null, "No value accepted");
+                    } else if (Log.enabled(Log.Level.TRACE)) { // If slot has previously accepted a value
+                        Log.trace("PROMISE", state.highestPromisedID, slot, null, "Accepted ID " + state.acceptedProposalID);
+                    }
+                    return PaxosMessage.promise(slot, state.highestPromisedID, state.acceptedProposalID, state.acceptedValue).encode();
+                }
+                // Ignore if proposalID < highestPromisedID
+                return PaxosMessage.of(PaxosMessage.REJECT, slot, promisedID).encode();
+            }
+        } catch (Exception e) {
+            Log.error("Issue in Acceptor's prepare method " + e.getMessage());
+            return PaxosMessage.of(PaxosMessage.REJECT, slot, -1).encode();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Part of the Acceptor functionality. Acceptor -> Proposer.
+     * Attempts to ACCEPT the proposalID and value provided by Proposer.
+     * @param slot The slot of the replicated log being accepted.
+     * @param proposalID A unique identifier for the specific operation being accepted.
+     * @param value A list of Operations encoded with Operation.encodeAll().
+     * @return An encoded PaxosMessage: ACCEPTED if the request's proposalID >= highestPromisedID, a REJECT
+     *    otherwise, or APPLIED if the slot has already been decided and applied.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] acceptRequest(long slot, int proposalID, byte[] value) throws RemoteException {
+        ReentrantLock lock = slotLock(slot);
+        lock.lock();
+        try {
+            if (!active){ // Simulates if Acceptor fails
+                Log.warn("ACCEPTOR FAILURE: " + serverName + " is inactive. Rejecting ACCEPT request.");
+                return PaxosMessage.of(PaxosMessage.REJECT, slot, -1).encode();
+            } else if (slot <= lastApplied) { // Slot has been decided and its state garbage collected
+                return PaxosMessage.of(PaxosMessage.APPLIED, lastApplied, -1).encode();
+            } else { // Simulates properly functioning Acceptor
+                PaxosState state = paxosLog.computeIfAbsent(slot, s -> new PaxosState());
+                int promisedID = Math.max(state.highestPromisedID, leaderPromisedBallot);
+                if (proposalID >= promisedID) { // if proposalID is the largest, accept the request
+                    logDurably(WriteAheadLog.ACCEPT, slot, proposalID, value);
+                    state.highestPromisedID = proposalID;
+                    state.acceptedProposalID = proposalID;
+                    state.acceptedValue = value;
+                    nextSlot.accumulateAndGet(slot + 1, Math::max);
+                    highestAcceptedSlot.accumulateAndGet(slot, Math::max);
+
+                    Log.trace("ACCEPTED", proposalID, slot, null, "Accepted");
+                    return PaxosMessage.of(PaxosMessage.ACCEPTED, slot, proposalID).encode();
+                }
+                // Otherwise reject request
+                Log.trace("REJECT", proposalID, slot, null, "Rejected");
+                return PaxosMessage.of(PaxosMessage.REJECT, slot, promisedID).encode();
+            }
+        } catch (Exception e) {
+            Log.error("Issue in Acceptor's acceptRequest method " + e.getMessage());
+            return PaxosMessage.of(PaxosMessage.REJECT, slot, -1).encode();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Part of the Acceptor functionality in Multi-Paxos mode. Proposer -> Acceptor.
+     * Receives a leader PREPARE message covering every slot. If the ballot is the highest seen, the Acceptor
+     *    promises to reject ACCEPTs with a lower ballot for all slots and reports every value it has accepted
+     *    from fromSlot onwards. Holds every slot lock so no PREPARE or ACCEPT interleaves with the promise.
+     * @param ballot The ballot of the candidate leader.
+     * @param candidate The server name of the candidate leader.
+     * @param fromSlot The first slot the candidate has not applied.
+     * @return An encoded PaxosMessage: a PROMISE carrying lastApplied in its slot and an entry for each accepted
+     *    slot, or a REJECT carrying the promised ballot.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] prepareLeader(int ballot, String candidate, long fromSlot) throws RemoteException {
+        PaxosMessage response;
+        lockAllSlots();
+        try {
+            if (!active) { // Simulates if Acceptor fails
+                Log.warn("ACCEPTOR FAILURE: " + serverName + " is inactive. Rejecting leader PREPARE request.");
+                response = PaxosMessage.of(PaxosMessage.REJECT, 0, leaderPromisedBallot);
+            } else if (ballot > leaderPromisedBallot) {
+                logDurably(WriteAheadLog.LEADER, 0, ballot, candidate.getBytes(StandardCharsets.UTF_8));
+                leaderPromisedBallot = ballot;
+                leaderName = candidate;
+                if (!candidate.equals(serverName)) {
+                    isLeader = false; // A competing leader has a higher ballot
+                }
+                List<PaxosMessage> accepted = new ArrayList<>();
+                for (Map.Entry<Long, PaxosState> entry : paxosLog.tailMap(fromSlot).entrySet()) {
+                    PaxosState state = entry.getValue();
+                    if (state.acceptedProposalID != -1) {
+                        accepted.add(PaxosMessage.entry(entry.getKey(), state.acceptedProposalID, state.acceptedValue));
+                    }
+                }
+                response = new PaxosMessage(PaxosMessage.PROMISE, lastApplied, ballot, -1, null, accepted);
+                Log.info("PROMISE leader " + candidate + " ballot " + ballot);
+            } else { // Ignore if ballot <= leaderPromisedBallot
+                response = PaxosMessage.of(PaxosMessage.REJECT, 0, leaderPromisedBallot);
+            }
+        } catch (Exception e) {
+            Log.error("Issue in Acceptor's prepareLeader method " + e.getMessage());
+            response = PaxosMessage.of(PaxosMessage.REJECT, 0, leaderPromisedBallot);
+        } finally {
+            unlockAllSlots();
+        }
+        return response.encode();
+    }
+
+    /**
+     * Makes an Acceptor decision durable before it takes effect, so a restarted server still honours it.
+     * Concurrent callers share a single fsync through the write-ahead log's group commit.
+     * Does nothing when the server runs without a write-ahead log.
+     * @param type The WriteAheadLog record type.
+     * @param slot The slot the decision is about.
+     * @param ballot The ballot promised or accepted.
+     * @param value The accepted value or leader name, or null.
+     * @throws IOException If the record could not be written, in which case the Acceptor must reject.
+     */
+    private void logDurably(byte type, long slot, int ballot, byte[] value) throws IOException {
+        if (wal != null) {
+            wal.awaitDurable(wal.append(type, slot, ballot, value));
+        }
+    }
+
+    /**
+     * Restores Acceptor state, decided slots and hMap from the latest snapshot in dataDir and the write-ahead log
+     *    written after it, then keeps appending new records to the log. Must be called before the server starts
+     *    receiving Paxos messages.
+     * @param dataDir The directory holding the snapshots and write-ahead log.
+     * @throws IOException If the log cannot be read or opened.
+     */
+    void openWriteAheadLog(Path dataDir) throws IOException {
+        Snapshot snapshot = Snapshot.loadLatest(dataDir, hMap);
+        if (snapshot != null) {
+            lastApplied = snapshot.lastApplied;
+            lastSnapshotSlot = snapshot.lastApplied;
+            nextSlot.accumulateAndGet(snapshot.lastApplied + 1, Math::max);
+            leaderPromisedBallot = snapshot.leaderBallot;
+            leaderName = snapshot.leaderName;
+            watchBuffer.reset(snapshot.lastApplied);
+            if (snapshot.members != null) {
+                membership = restoreMembership(snapshot);
+            }
+            paxosLog.putAll(snapshot.acceptorState);
+            decided.putAll(snapshot.decided);
+            Log.info("Loaded snapshot of " + hMap.size() + " keys at slot " + lastApplied);
+        }
+        long records = WriteAheadLog.replay(dataDir, this::replayRecord);
+        paxosLog.forEach((slot, state) -> {
+            if (state.acceptedValue != null) {
+                highestAcceptedSlot.accumulateAndGet(slot, Math::max);
+            }
+        });
+        applyDecided();
+        highestBallotSeen.accumulateAndGet(leaderPromisedBallot, Math::max);
+        wal = new WriteAheadLog(dataDir);
+        this.dataDir = dataDir;
+        Log.info("Replayed " + records + " WAL records from " + dataDir + ", applied up to slot " + lastApplied);
+    }
+
+    /**
+     * Applies one replayed write-ahead log record to the in-memory state.
+     * @param type The WriteAheadLog record type.
+     * @param slot The slot the record is about.
+     * @param ballot The ballot promised or accepted.
+     * @param value The accepted or decided value, the leader name, or null.
+     */
+    private void replayRecord(byte type, long slot, int ballot, byte[] value) {
+        if (type == WriteAheadLog.LEADER) {
+            leaderPromisedBallot = Math.max(leaderPromisedBallot, ballot);
+            leaderName = new String(value, StandardCharsets.UTF_8);
+            return;
+        }
+        if (slot <= lastApplied) { // Already covered by the snapshot
+            return;
+        }
+        nextSlot.accumulateAndGet(slot + 1, Math::max);
+        if (type == WriteAheadLog.DECIDED) {
+            decided.putIfAbsent(slot, value);
+            return;
+        }
+        PaxosState state = paxosLog.computeIfAbsent(slot, s -> new PaxosState());
+        state.highestPromisedID = Math.max(state.highestPromisedID, ballot);
+        if (type == WriteAheadLog.ACCEPT) {
+            state.acceptedProposalID = ballot;
+            state.acceptedValue = value;
+        }
+    }
+
+    /**
+     * Takes a snapshot every PAXOS_SNAPSHOT_INTERVAL_MS once at least PAXOS_SNAPSHOT_MIN_SLOTS slots have been
+     *    applied since the previous one. Does nothing when the server runs without a write-ahead log.
+     */
+    public void scheduleSnapshots() {
+        if (wal == null) {
+            return;
+        }
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                if (lastApplied - lastSnapshotSlot >= SNAPSHOT_MIN_SLOTS) {
+                    takeSnapshot();
+                }
+            } catch (Exception e) {
+                Log.error("Issue taking snapshot " + e.getMessage());
+            }
+        }, SNAPSHOT_INTERVAL_MS, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of hMap as of lastApplied without pausing the Learner, then deletes the write-ahead log
+     *    segments and older snapshots it covers.
+     * While the snapshot is written the Learner keeps applying slots, but first saves the value every key had at the
+     *    snapshot's slot (copy-on-write), and the snapshot writes that saved value instead of the live one.
+     * @return The slot the snapshot was taken at.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    long takeSnapshot() throws IOException {
+        if (wal == null) {
+            throw new IOException("snapshots need a data directory");
+        }
+        synchronized (snapshotLock) {
+            // Records logged from here on go to a new segment, which is replayed on top of the snapshot
+            long firstKeptSegment = wal.roll();
+            Snapshot snapshot = new Snapshot();
+            ConcurrentHashMap<ByteBuffer, byte[]> preImages = new ConcurrentHashMap<>();
+            synchronized (applyLock) {
+                snapshot.lastApplied = lastApplied;
+                Membership current = membership;
+                snapshot.membershipEpoch = current.epoch;
+                snapshot.members = current.members;
+                snapshot.pendingMembers = current.pending;
+                snapshot.activeFrom = current.activeFrom;
+                snapshot.memberIndexes = current.indexes;
+                snapshot.decided.putAll(decided);
+                snapshotPreImages = preImages;
+            }
+            try {
+                // Acceptors log before they change state while holding their slot lock, so any record left in an
+                //    old segment is already reflected here. Only the unapplied window is copied.
+                lockAllSlots();
+                try {
+                    snapshot.leaderBallot = leaderPromisedBallot;
+                    snapshot.leaderName = leaderName;
+                    for (Map.Entry<Long, PaxosState> entry : paxosLog.tailMap(snapshot.lastApplied, false).entrySet()) {
+                        PaxosState copy = new PaxosState();
+                        copy.highestPromisedID = entry.getValue().highestPromisedID;
+                        copy.acceptedProposalID = entry.getValue().acceptedProposalID;
+                        copy.acceptedValue = entry.getValue().acceptedValue;
+                        snapshot.acceptorState.put(entry.getKey(), copy);
+                    }
+                } finally {
+                    unlockAllSlots();
+                }
+
+                snapshot.write(dataDir, consumer -> {
+                    Set<ByteBuffer> written = new HashSet<>(); // Keys with a pre-image already written
+                    hMap.forEach((key, value) -> {
+                        // The value must be read before the pre-image is checked: if the key changes in between,
+                        //    the pre-image is used, and if it changes afterwards, the value read is still current
+                        byte[] preImage = preImages.get(ByteBuffer.wrap(key));
+                        if (preImage == null) {
+                            consumer.accept(key, value);
+                        } else {
+                            written.add(ByteBuffer.wrap(key));
+                            if (preImage != ABSENT) {
+                                consumer.accept(key, preImage);
+                            }
+                        }
+                    });
+                    // Keys deleted since the snapshot's slot are no longer in hMap
+                    for (Map.Entry<ByteBuffer, byte[]> entry : preImages.entrySet()) {
+                        if (entry.getValue() != ABSENT && !written.contains(entry.getKey())) {
+                            consumer.accept(entry.getKey().array(), entry.getValue());
+                        }
+                    }
+                });
+            } finally {
+                synchronized (applyLock) {
+                    snapshotPreImages = null;
+                }
+            }
+
+            lastSnapshotSlot = snapshot.lastApplied;
+            wal.deleteSegmentsBefore(firstKeptSegment);
+            Snapshot.deleteOlderThan(dataDir, snapshot.lastApplied);
+            Log.info("Snapshot of " + serverName + " written at slot " + snapshot.lastApplied + ", "
+                    + preImages.size() + " keys changed while writing");
+            return snapshot.lastApplied;
+        }
+    }
+
+    /**
+     * Saves the current value of a key before the Learner changes it, if a snapshot is being written.
+     * Only the first change after the snapshot's slot is saved. Must be called while holding applyLock.
+     * @param key The key about to be changed.
+     */
+    private void saveForSnapshot(byte[] key) {
+        if (snapshotPreImages != null) {
+            snapshotPreImages.computeIfAbsent(ByteBuffer.wrap(key), k -> {
+                byte[] value = hMap.get(key);
+                return value == null ? ABSENT : value;
+            });
+        }
+    }
+
+    /**
+     * Returns the lock stripe guarding a slot's Acceptor state. Consecutive slots use different stripes, so
+     *    pipelined instances do not contend with each other.
+     * @param slot The slot of the replicated log.
+     * @return The lock for the slot.
+     */
+    private ReentrantLock slotLock(long slot) {
+        return slotLocks[(int) Math.floorMod(slot, (long) slotLocks.length)];
+    }
+
+    /**
+     * Acquires every slot lock, in stripe order, for operations that cover every slot at once.
+     */
+    private void lockAllSlots() {
+        for (ReentrantLock lock : slotLocks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases every slot lock acquired by lockAllSlots().
+     */
+    private void unlockAllSlots() {
+        for (int i = slotLocks.length - 1; i >= 0; i--) {
+            slotLocks[i].unlock();
+        }
+    }
+
+    /**
+     * Part of the Learner functionality, Acceptor -> Learner.
+     * Once a slot has been accepted by a quorum of Acceptors, this method records its decided value and applies
+     *    every slot that is now contiguous with the applied prefix of the log. The check against lastApplied runs
+     *    outside applyLock, so a slot applied in the meantime may still be recorded; applyDecided() drops it again.
+     * @param slot The decided slot.
+     * @param value The decided list of Operations, encoded with Operation.encodeAll().
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public void learn(long slot, byte[] value) throws RemoteException {
+        try {
+            if (slot > lastApplied) {
+                if (decided.putIfAbsent(slot, value) == null && wal != null) {
+                    wal.append(WriteAheadLog.DECIDED, slot, 0, value); // Replayed on restart, no need to wait on fsync
+                }
+                applyDecided();
+            }
+        } catch (Exception e) {
+            Log.error("Issue in Learner's learn method " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies decided slots to hMap strictly in slot order, stopping at the first slot not yet decided.
+     * Acceptor state for applied slots is garbage collected, so memory is bounded by the unapplied window.
+     */
+    private void applyDecided() {
+        synchronized (applyLock) {
+            long applied = lastApplied;
+            byte[] value;
+            while ((value = decided.remove(applied + 1)) != null) {
+                applyOperation(value);
+                applied++;
+                activateMembership(applied);
+                lastApplied = applied;
+                recentlyApplied.put(applied, value);
+                watchBuffer.commit(applied);
+            }
+            collectGarbage(applied);
+            applyLock.notifyAll(); // Wake linearizable reads waiting for their read index
+        }
+    }
+
+    /**
+     * Drops the Acceptor state of applied slots, decided values recorded for slots that were already applied, and
+     *    the retained values of slots that peers can no longer need.
+     * Slots after the latest snapshot are always retained, so a peer can catch up from the snapshot plus the log.
+     * Must be called while holding applyLock.
+     * @param applied The highest applied slot.
+     */
+    private void collectGarbage(long applied) {
+        for (Long slot : paxosLog.headMap(applied, true).keySet()) {
+            // Acceptors check lastApplied under the slot lock before creating slot state
+            ReentrantLock lock = slotLock(slot);
+            lock.lock();
+            try {
+                paxosLog.remove(slot);
+            } finally {
+                lock.unlock();
+            }
+        }
+        decided.headMap(applied, true).clear(); // Left by a LEARN that raced with applying its slot
+        long retainFrom = applied - CATCHUP_RETAIN;
+        if (wal != null) {
+            retainFrom = Math.min(retainFrom, lastSnapshotSlot);
+        }
+        recentlyApplied.headMap(retainFrom, true).clear();
+    }
+
+    /**
+     * Returns the highest slot this server has applied to its hashmap, used by peers to detect that they are behind.
+     * @return The highest applied slot.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public long getLastApplied() throws RemoteException {
+        return lastApplied;
+    }
+
+    /**
+     * Part of the Acceptor functionality for linearizable reads. Reader -> Acceptor.
+     * Reports the highest slot this Acceptor has accepted a value for, or applied if that is higher.
+     * @return An encoded PaxosMessage: ACCEPTED carrying the slot in its slot field, or a REJECT if the Acceptor
+     *    is inactive.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] readIndex() throws RemoteException {
+        if (!active) { // Simulates if Acceptor fails
+            Log.warn("ACCEPTOR FAILURE: " + serverName + " is inactive. Rejecting READ INDEX request.");
+            return PaxosMessage.of(PaxosMessage.REJECT, 0, -1).encode();
+        }
+        return PaxosMessage.of(PaxosMessage.ACCEPTED, Math.max(highestAcceptedSlot.get(), lastApplied), -1).encode();
+    }
+
+    /**
+     * Returns the decided values of applied slots, for a peer that missed them. Only reads retained values,
+     *    so serving a lagging peer never blocks this server's Paxos traffic.
+     * @param fromSlot The first slot the peer is missing.
+     * @param max The maximum number of slots to return.
+     * @return An encoded PaxosMessage: DECIDED carrying lastApplied in its slot and an entry for each consecutive
+     *    slot from fromSlot. If those slots are no longer retained, SNAPSHOT naming the snapshot the peer should
+     *    transfer instead, or COMPACTED if this server has no snapshot to offer.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] getDecided(long fromSlot, int max) throws RemoteException {
+        List<PaxosMessage> entries = new ArrayList<>();
+        long applied = lastApplied;
+        long expected = fromSlot;
+        for (Map.Entry<Long, byte[]> entry : recentlyApplied.tailMap(fromSlot, true).entrySet()) {
+            if (entry.getKey() != expected || entries.size() >= max) {
+                break;
+            }
+            entries.add(PaxosMessage.entry(entry.getKey(), -1, entry.getValue()));
+            expected++;
+        }
+        if (fromSlot <= applied && entries.isEmpty()) { // Slots were garbage collected
+            long snapshotSlot = lastSnapshotSlot;
+            if (wal != null && snapshotSlot >= fromSlot) {
+                return PaxosMessage.of(PaxosMessage.SNAPSHOT, snapshotSlot, -1).encode();
+            }
+            return PaxosMessage.of(PaxosMessage.COMPACTED, applied, -1).encode();
+        }
+        return new PaxosMessage(PaxosMessage.DECIDED, applied, -1, -1, null, entries).encode();
+    }
+
+    /**
+     * Returns the keys changed by the slots applied after fromSlots[0], for a client invalidating its near cache.
+     *    Like getDecided(), only reads the values retained for lagging peers. Stops after PAXOS_CATCHUP_BATCH slots,
+     *    or at the end of the first slot that brings the reply to PAXOS_MAX_MULTI_KEYS keys.
+     * @param fromSlots The last slot covered by the client's previous poll, in a single-element array. Any other
+     *    length starts a new feed.
+     * @return The changed keys and the last slot covered. A reset reply, covering up to lastApplied, if a new feed
+     *    is started or the requested slots are no longer retained.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public KeyChanges getChangedKeys(long[] fromSlots) throws RemoteException {
+        long applied = lastApplied;
+        long from = fromSlots.length == 1 ? fromSlots[0] : -1;
+        if (from < 0 || from > applied) { // New feed, or a feed started on another server
+            return new KeyChanges(new long[]{applied}, List.of(), true);
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        long covered = from;
+        for (Map.Entry<Long, byte[]> entry : recentlyApplied.tailMap(from, false).entrySet()) {
+            if (entry.getKey() != covered + 1) { // Slots were garbage collected
+                return new KeyChanges(new long[]{applied}, List.of(), true);
+            }
+            if (covered - from >= CATCHUP_BATCH || keys.size() >= MAX_MULTI_KEYS) {
+                break;
+            }
+            for (Operation operation : Operation.decodeAll(entry.getValue())) {
+                if (!operation.isMembershipChange()) {
+                    keys.add(operation.keyString());
+                }
+            }
+            covered = entry.getKey();
+        }
+        if (covered == from && from < applied && recentlyApplied.isEmpty()) {
+            return new KeyChanges(new long[]{applied}, List.of(), true);
+        }
+        return new KeyChanges(new long[]{covered}, new ArrayList<>(keys), false);
+    }
+
+    /**
+     * Waits for applied changes to keys under a prefix, so a watcher is told about writes as soon as this server
+     *    applies them instead of polling getRecord(). Returns straight away if changes after fromPositions[0] are
+     *    already buffered, and otherwise holds the call until one is applied or timeoutMs expires. The watcher
+     *    asks for the next batch only once it has processed this one, so a slow watcher never builds up a queue.
+     * @param prefix Only changes of keys starting with these bytes are returned, an empty array for every key.
+     * @param fromPositions The last slot the watcher has seen, in a single-element array. Any other length starts
+     *    watching from the latest applied slot.
+     * @param maxEvents The maximum number of changes to return, a slot is never split.
+     * @param timeoutMs How long to wait for a change, capped at PAXOS_WATCH_MAX_WAIT_MS.
+     * @return The changes and the position to resume from, or a truncated batch if the changes after the
+     *    watcher's position are no longer buffered (PAXOS_WATCH_BUFFER).
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public WatchBatch watch(byte[] prefix, long[] fromPositions, int maxEvents, long timeoutMs) throws RemoteException {
+        long from = fromPositions.length == 1 ? fromPositions[0] : -1;
+        long deadline = System.currentTimeMillis() + Math.min(timeoutMs, WATCH_MAX_WAIT_MS);
+        try {
+            while (true) {
+                WatchBuffer.Signal signal = watchBuffer.signal();
+                long seen = signal.version();
+                WatchBatch batch = watchBuffer.read(prefix, from, Math.max(1, maxEvents));
+                if (!batch.events.isEmpty() || batch.truncated || System.currentTimeMillis() >= deadline) {
+                    return batch;
+                }
+                from = batch.positions[0]; // Skip slots that held no matching change
+                signal.await(seen, deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for changes", e);
+        }
+    }
+
+    /**
+     * Makes this group wake watchers through a signal shared with the other groups of a ShardRouter.
+     * @param signal The shared signal.
+     */
+    void shareWatchSignal(WatchBuffer.Signal signal) {
+        watchBuffer.useSignal(signal);
+    }
+
+    /**
+     * Returns part of a snapshot file, so a peer can transfer a large snapshot in chunks.
+     * @param snapshotSlot The slot of the snapshot, as returned by getDecided().
+     * @param offset The position in the file to read from.
+     * @param length The maximum number of bytes to return, capped at PAXOS_SNAPSHOT_CHUNK_BYTES.
+     * @return The bytes read, an empty array at the end of the file, or null if the snapshot has been replaced.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public byte[] getSnapshotChunk(long snapshotSlot, long offset, int length) throws RemoteException {
+        if (dataDir == null) {
+            return null;
+        }
+        Path file = dataDir.resolve(Snapshot.fileName(snapshotSlot));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.max(0,
+                    Math.min(Math.min(length, SNAPSHOT_CHUNK_BYTES), channel.size() - offset)));
+            while (chunk.hasRemaining() && channel.read(chunk, offset + chunk.position()) >= 0) {
+                // Keep reading until the chunk is full
+            }
+            return chunk.array();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.error("Issue reading snapshot chunk " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs catchUp() every PAXOS_CATCHUP_INTERVAL_MS on a background thread.
+     */
+    public void scheduleCatchUp() {
+        catchUpScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                catchUp();
+            } catch (Exception e) {
+                Log.error("Issue in Learner catch-up " + e.getMessage());
+            }
+        }, CATCHUP_INTERVAL_MS, CATCHUP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Anti-entropy for a Learner that missed LEARN messages, e.g. while it was unreachable or restarting.
+     * Asks every peer for its last applied slot and pulls the missing slots from the one furthest ahead.
+     * If no peer is ahead but a slot is still missing while later ones are decided, the slot was never decided,
+     *    e.g. because its Proposer gave up, and it is decided here with a NOOP so the log can be applied past it.
+     * Members that could not be connected to earlier are retried first.
+     */
+    void catchUp() throws Exception {
+        if (!serverRefsByName.keySet().equals(Set.copyOf(membership.servers()))) { // Retry members not reachable before
+            syncPeers();
+        }
+        String peer = null;
+        long peerApplied = lastApplied;
+        Map<String, Future<Long>> replies = new TreeMap<>();
+        for (Map.Entry<String, RemoteOperations> entry : serverRefsByName.entrySet()) {
+            if (!entry.getKey().equals(serverName)) {
+                RemoteOperations srv = entry.getValue();
+                replies.put(entry.getKey(), fanOutExecutor.submit(srv::getLastApplied));
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PREPARE_TIMEOUT_MS);
+        for (Map.Entry<String, Future<Long>> reply : replies.entrySet()) {
+            try {
+                long applied = reply.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                unreachablePeers.remove(reply.getKey());
+                if (applied > peerApplied) {
+                    peer = reply.getKey();
+                    peerApplied = applied;
+                }
+            } catch (Exception e) { // Unreachable peers are skipped, and no longer sent redirected writes
+                reply.getValue().cancel(true);
+                if (unreachablePeers.add(reply.getKey())) {
+                    Log.warn("Server " + reply.getKey() + " is unreachable");
+                }
+            }
+        }
+
+        if (peer != null) {
+            Log.info("Learner " + serverName + " at slot " + lastApplied + " catching up to " + peer + " at slot " + peerApplied);
+            pullFrom(serverRefsByName.get(peer), peerApplied);
+            suspectedHole = -1;
+            return;
+        }
+
+        long hole = lastApplied + 1;
+        if (decided.isEmpty() || decided.firstKey() <= hole) {
+            suspectedHole = -1;
+            return;
+        }
+        if (hole != suspectedHole) { // Give in-flight proposals one more interval to decide the slot
+            suspectedHole = hole;
+            return;
+        }
+        Log.info("Learner " + serverName + " filling undecided slot " + hole);
+        fillHole(hole);
+    }
+
+    /**
+     * Learns the slots a peer has applied and this server has not, in batches of PAXOS_CATCHUP_BATCH.
+     * Switches to a snapshot transfer when the peer no longer retains the slots.
+     * @param srv The peer to pull from.
+     * @param peerApplied The peer's last applied slot.
+     */
+    private void pullFrom(RemoteOperations srv, long peerApplied) throws Exception {
+        while (lastApplied < peerApplied) {
+            long before = lastApplied;
+            PaxosMessage response = PaxosMessage.decode(srv.getDecided(before + 1, CATCHUP_BATCH));
+            if (response.type == PaxosMessage.SNAPSHOT) {
+                installSnapshot(srv, response.slot);
+            } else if (response.type == PaxosMessage.COMPACTED) {
+                Log.warn("Learner " + serverName + " cannot catch up, peer has compacted slot " + (before + 1));
+                return;
+            }
+            for (PaxosMessage entry : response.entries) {
+                learn(entry.slot, entry.value);
+            }
+            if (lastApplied == before) { // Peer had nothing usable, try again on the next run
+                return;
+            }
+        }
+    }
+
+    /**
+     * Transfers a peer's snapshot in chunks and replaces this server's hashmap with it.
+     * The snapshot's key/value pairs and members are used, but not its Acceptor state, as promises are specific to
+     *    each Acceptor.
+     * @param srv The peer to transfer the snapshot from.
+     * @param snapshotSlot The slot of the peer's snapshot.
+     */
+    private void installSnapshot(RemoteOperations srv, long snapshotSlot) throws Exception {
+        Path transfer = dataDir != null ? dataDir.resolve(Snapshot.fileName(snapshotSlot) + ".transfer")
+                : Files.createTempFile("snapshot", ".transfer");
+        try {
+            try (FileChannel channel = FileChannel.open(transfer, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long offset = 0;
+                byte[] chunk;
+                while ((chunk = srv.getSnapshotChunk(snapshotSlot, offset, SNAPSHOT_CHUNK_BYTES)) != null && chunk.length > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    offset += chunk.length;
+                }
+                if (chunk == null) {
+                    throw new IOException("snapshot " + snapshotSlot + " is no longer available");
+                }
+            }
+            HashMap<ByteBuffer, byte[]> pairs = new HashMap<>();
+            // Verifies the checksum of the whole transfer
+            Snapshot snapshot = Snapshot.read(transfer, (key, value) -> pairs.put(ByteBuffer.wrap(key), value));
+
+            synchronized (snapshotLock) { // A snapshot being written must not see hMap replaced underneath it
+                synchronized (applyLock) {
+                    if (snapshot.lastApplied <= lastApplied) {
+                        return;
+                    }
+                    List<byte[]> dropped = new ArrayList<>();
+                    hMap.forEach((key, value) -> {
+                        if (!pairs.containsKey(ByteBuffer.wrap(key))) {
+                            dropped.add(key);
+                        }
+                    });
+                    dropped.forEach(hMap::remove);
+                    pairs.forEach((key, value) -> hMap.put(key.array(), value));
+                    lastApplied = snapshot.lastApplied;
+                    watchBuffer.reset(snapshot.lastApplied); // Watchers from before the snapshot must start over
+                    if (snapshot.members != null) {
+                        membership = restoreMembership(snapshot);
+                    }
+                    recentlyApplied.clear();
+                    collectGarbage(snapshot.lastApplied);
+                    applyLock.notifyAll();
+                }
+                if (wal != null) { // The log alone no longer reaches this slot, so persist it as a local snapshot
+                    takeSnapshot();
+                }
+            }
+            nextSlot.accumulateAndGet(snapshot.lastApplied + 1, Math::max);
+            syncPeers(); // The snapshot may have changed the members
+            Log.info("Learner " + serverName + " installed snapshot of " + pairs.size() + " keys at slot " + snapshot.lastApplied);
+            applyDecided(); // Slots decided while the snapshot was transferred may now be contiguous
+        } finally {
+            Files.deleteIfExists(transfer);
+        }
+    }
+
+    /**
+     * Decides a slot that was left undecided, so the Learners can apply the slots after it.
+     * In basic mode one Paxos instance is run for the slot: a value already accepted there is completed, otherwise
+     *    a NOOP is decided. In Multi-Paxos mode a new election is run, which recovers every slot from lastApplied
+     *    and fills the undecided ones with NOOPs, unless a reachable leader is expected to do so itself.
+     * @param slot The undecided slot.
+     */
+    private void fillHole(long slot) throws Exception {
+        if (MULTI_PAXOS) {
+            String leader = leaderName;
+            if (isLeader) {
+                stepDown(leaderBallot);
+            } else if (leader != null && isReachable(leader)) {
+                return;
+            }
+            electLeader();
+            return;
+        }
+        int id = nextBallot(1);
+        List<String> voters = membership.membersFor(slot);
+        AtomicBoolean slotApplied = new AtomicBoolean(false);
+        List<PaxosMessage> promises = fanOut(voters, srv -> {
+            PaxosMessage response = PaxosMessage.decode(srv.prepare(slot, id));
+            slotApplied.compareAndSet(false, observe(response));
+            return response;
+        }, r -> r.type == PaxosMessage.PROMISE, "PREPARE", PREPARE_TIMEOUT_MS);
+        if (slotApplied.get() || promises.size() < majority(voters)) { // Decided elsewhere, or retry next run
+            return;
+        }
+        byte[] value = Operation.NOOP;
+        int highestAcceptedID = -1;
+        for (PaxosMessage promise : promises) {
+            if (promise.acceptedBallot > highestAcceptedID) {
+                highestAcceptedID = promise.acceptedBallot;
+                value = promise.value;
+            }
+        }
+        byte[] acceptedValue = value;
+        List<PaxosMessage> accepts = fanOut(voters, srv -> PaxosMessage.decode(srv.acceptRequest(slot, id, acceptedValue)),
+                r -> r.type == PaxosMessage.ACCEPTED, "ACCEPT", ACCEPT_TIMEOUT_MS);
+        if (accepts.size() >= majority(voters)) {
+            broadcastLearn(slot, acceptedValue);
+        }
+    }
+
+    /**
+     * Lets a pending membership change take effect once the last slot before it has been applied, so that the
+     *    slots after it are decided by the new members. Must be called while holding applyLock.
+     * @param applied The slot just applied.
+     */
+    private void activateMembership(long applied) {
+        Membership current = membership;
+        Membership activated = current.activate(applied);
+        if (activated != current) {
+            membership = activated;
+            Log.info("Learner " + serverName + " members of group " + groupId + " from slot " + (applied + 1)
+                    + " are " + String.join(";", activated.members));
+            if (!serverRefsByName.isEmpty()) { // Drops removed servers, see applyMembershipChange()
+                catchUpScheduler.execute(this::syncPeers);
+            }
+        }
+    }
+
+    /**
+     * Restores the membership stored in a snapshot, deriving member indexes if the snapshot predates them.
+     * @param snapshot A snapshot with members.
+     * @return The membership as of the snapshot's slot.
+     */
+    private static Membership restoreMembership(Snapshot snapshot) {
+        if (snapshot.memberIndexes == null) {
+            return Membership.withoutIndexes(snapshot.membershipEpoch, snapshot.members, INITIAL_MEMBERS);
+        }
+        return Membership.restore(snapshot.membershipEpoch, snapshot.members, snapshot.pendingMembers,
+                snapshot.activeFrom, snapshot.memberIndexes);
+    }
+
+    /**
+     * Performs the decided PUT or DELETE operations of a single slot on hMap, in batch order.
+     * @param value A list of Operations encoded with Operation.encodeAll(), empty for a NOOP.
+     */
+    private void applyOperation(byte[] value) {
+        List<Operation> operations;
+        try {
+            operations = Operation.decodeAll(value);
+        } catch (RuntimeException e) {
+            Log.warn("Learner " + serverName + " invalid operation detected, aborting");
+            return;
+        }
+        for (Operation operation : operations) {
+            applySingleOperation(operation);
+        }
+    }
+
+    /**
+     * Performs a single decided operation on hMap. A conditional operation is evaluated against the key's current
+     *    value, and its outcome is handed to the waiting caller if this server proposed it. A membership change
+     *    updates the group's members instead.
+     * @param operation The decided operation.
+     */
+    private void applySingleOperation(Operation operation) {
+        try {
+            byte[] key = operation.key;
+            if (operation.type == Operation.PUT) {
+                saveForSnapshot(key);
+                String result = createRecord(key, operation.value);
+                Log.debug("APPLY", Log.NONE, Log.NONE, operation.keyString(), result);
+                watchBuffer.add(Operation.PUT, key, operation.value);
+            } else if (operation.type == Operation.DELETE) {
+                saveForSnapshot(key);
+                if (hMap.containsKey(key)) {
+                    watchBuffer.add(Operation.DELETE, key, null);
+                }
+                String result = deleteRecord(key);
+                Log.debug("APPLY", Log.NONE, Log.NONE, operation.keyString(), result);
+            } else if (operation.isMembershipChange()) {
+                String outcome = applyMembershipChange(operation);
+                Log.info("Learner " + serverName + " applied " + operation + " " + outcome);
+                CompletableFuture<String> waiting = conditionalOutcomes.remove(operation.requestId);
+                if (waiting != null) {
+                    waiting.complete(outcome);
+                }
+            } else {
+                saveForSnapshot(key);
+                byte[] current = hMap.get(key);
+                byte[] newValue = operation.evaluate(current);
+                String outcome;
+                if (newValue != null) {
+                    createRecord(key, newValue);
+                    watchBuffer.add(Operation.PUT, key, newValue);
+                    outcome = "SUCCESS," + utf8(newValue);
+                } else {
+                    outcome = "FAILED," + utf8(current);
+                }
+                if (Log.enabled(Log.Level.DEBUG)) {
+                    Log.debug("APPLY", Log.NONE, Log.NONE, operation.keyString(), operation + " " + outcome);
+                }
+                CompletableFuture<String> waiting = conditionalOutcomes.remove(operation.requestId);
+                if (waiting != null) {
+                    waiting.complete(outcome);
+                }
+            }
+        } catch (Exception e) {
+            Log.error("Issue in Learner's applySingleOperation method " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a decided membership change if it was proposed against the current membership epoch, so that of two
+     *    concurrent changes only the first in the log takes effect. Every Learner reaches the same outcome, and
+     *    assigns an added server the same member index. The change takes effect PAXOS_PIPELINE_WINDOW slots
+     *    later, see Membership. Peers are connected afterwards on the catch-up thread, so an added server is
+     *    reachable by then. Must be called while holding applyLock, with lastApplied the slot before this one.
+     * @param operation An ADD_MEMBER or REMOVE_MEMBER operation.
+     * @return "SUCCESS,$members" with the new members separated by semicolons, or "FAILED,$reason".
+     */
+    private String applyMembershipChange(Operation operation) {
+        Membership current = membership;
+        String refusal = current.refusal(operation);
+        if (refusal != null) {
+            return "FAILED," + refusal;
+        }
+        Membership updated = current.apply(operation, lastApplied + 1, PIPELINE_WINDOW);
+        membership = updated;
+        if (!serverRefsByName.isEmpty()) { // While replaying the log on startup, connectToPaxosNodes() follows
+            catchUpScheduler.execute(this::syncPeers);
+        }
+        return "SUCCESS," + String.join(";", updated.pending);
+    }
+
+    /**
+     * Simulates an acceptor failure by having a 20% chance of changing the 'active' boolean to false.
+     * When the 'active' boolean is changed to false, the server's Acceptor methods (prepare, acceptRequest) will REJECT
+     *    a proposer's incoming request.
+     * This method runs every 15 seconds.
+     */
+    public void simulateAcceptorFailure() {
+        acceptorFailure.scheduleAtFixedRate(() -> {
+            try {
+                // Simulate failure on Acceptor
+                if (Math.random() < 0.2) { // Acceptor fails 20% of the time
+                    active = false;
+                    Log.warn("Acceptor " + serverName + " has failed");
+                } else {
+                    // Recover the failed Acceptor
+                    if (!active) {
+                        active = true;
+                        Log.info("Acceptor " + serverName + " has recovered");
+                    }
+
+                }
+            } catch (Exception e) {
+                Log.error("Issue in simulateAcceptorFailure()" + e.getMessage());
+            }
+        }, 5, 15, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Establishes a connection to the other servers by getting a RemoteOperations reference to this group's
+     *    instance on each member server, for use in future RMI communication.
+     * Utilizes retries in order to re-attempt connection to servers that haven't been established yet. Members
+     *    still missing afterwards are retried by the catch-up thread.
+     * @throws InterruptedException For thread-related issues.
+     */
+    public void connectToPaxosNodes() throws InterruptedException {
+        for (int i = 0; i < 5 && !syncPeers(); i++) {
+            Log.info("Retrying connection to the members of group " + groupId + " (" + (i + 1) + "/5)");
+            Thread.sleep(2000); // Wait 2 seconds before retrying
+        }
+    }
+
+    /**
+     * Brings the peers this instance sends Paxos messages to in line with the group's members and pending members:
+     *    connects to servers added since the last call and drops servers whose removal has taken effect. A server
+     *    that was itself removed stops leading the group.
+     * @return true if every member is connected.
+     */
+    boolean syncPeers() {
+        synchronized (peersLock) {
+            List<String> current = membership.servers();
+            serverRefsByName.keySet().retainAll(current);
+            boolean complete = true;
+            for (String sName : current) {
+                if (serverRefsByName.containsKey(sName)) {
+                    continue;
+                }
+                try {
+                    RemoteOperations server = lookUpPeer(sName);
+                    serverRefsByName.put(sName, server);
+                    Log.info("Connected to " + server.getServerName() + " group " + groupId);
+                } catch (Exception e) { // Not started yet, or not reachable
+                    complete = false;
+                    Log.warn("Member " + sName + " of group " + groupId + " is not reachable yet");
+                }
+            }
+            if (isLeader && !current.contains(serverName)) {
+                stepDown(leaderBallot);
+            }
+            return complete;
+        }
+    }
+
+    /**
+     * Looks up this group's instance on a server in the server's RMI registry.
+     * @param sName The server name, e.g. "rmi-server-1".
+     * @return A reference to the instance, carried over the NIO transport if it is enabled.
+     * @throws Exception If the server is not reachable or has not bound the group yet.
+     */
+    private RemoteOperations lookUpPeer(String sName) throws Exception {
+        RemoteOperations local = LocalCluster.connect(serverName, sName, ShardRouter.bindingName(sName, groupId));
+        if (local != null) { // Started in this JVM by startLocalCluster()
+            return local;
+        }
+        Registry registry = LocateRegistry.getRegistry(sName, 1099); // Get local registry of remote server
+        // Get reference to this group's instance on the remote server
+        RemoteOperations server = (RemoteOperations) registry.lookup(ShardRouter.bindingName(sName, groupId));
+        if (peerTransport != null) { // Send Paxos calls over NIO, client-facing calls keep using RMI
+            server = peerTransport.connect(sName, NIO_PORT + groupId, server);
+        }
+        return server;
+    }
+
+    /**
+     * Adds a server to this Paxos group through consensus. Once the change is applied, its Acceptor counts
+     *    towards every quorum and it catches up from a peer, by snapshot transfer if the log has been compacted.
+     * @param name The server name, e.g. "rmi-server-6". The server must already be running.
+     * @return The result of the proposal followed by " -> SUCCESS,$members" or " -> FAILED,$reason".
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String addMember(String name) throws RemoteException {
+        return changeMembership(Operation.ADD_MEMBER, name);
+    }
+
+    /**
+     * Removes a server from this Paxos group through consensus. Once the change is applied, the server's Acceptor
+     *    no longer counts towards any quorum and the server can be shut down.
+     * @param name The server name, e.g. "rmi-server-5".
+     * @return The result of the proposal followed by " -> SUCCESS,$members" or " -> FAILED,$reason".
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String removeMember(String name) throws RemoteException {
+        return changeMembership(Operation.REMOVE_MEMBER, name);
+    }
+
+    /**
+     * Proposes a membership change against the membership epoch this server has applied. Learners only apply it
+     *    if no other change was applied in between, so members are added or removed strictly one at a time and
+     *    the quorums before and after each change always overlap. In Multi-Paxos mode the change is forwarded to
+     *    the leader rather than redirecting the caller.
+     * @param type Operation.ADD_MEMBER or Operation.REMOVE_MEMBER.
+     * @param name The server name.
+     * @return The result of the proposal and its outcome.
+     */
+    private String changeMembership(byte type, String name) throws RemoteException {
+        if (name == null || name.isBlank()) {
+            return "ERROR: A membership change needs a server name";
+        }
+        String result = proposeOperation(Operation.membershipChange(type, name.trim(), membership.epoch));
+        for (int hop = 0; hop < 3 && result.startsWith("REDIRECT,"); hop++) {
+            RemoteOperations leader = serverRefsByName.get(result.substring("REDIRECT,".length()));
+            if (leader == null) {
+                return result;
+            }
+            result = type == Operation.ADD_MEMBER ? leader.addMember(name) : leader.removeMember(name);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the servers whose Acceptors currently make up this group's quorums.
+     * @return The member server names, as applied by this server's Learner.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public List<String> getMembers() throws RemoteException {
+        return new ArrayList<>(membership.members);
+    }
+
+    /**
+     * Is called by the PAXOS learn() method to create a new record in a server's hashmap.
+     * @param key The key of the record.
+     * @param value The value corresponding to the above key.
+     * @return A String confirming the creation of the record.
+     * @throws RemoteException For RMI-related errors.
+     */
+    public String createRecord(byte[] key, byte[] value) throws RemoteException {
+        try {
+            hMap.put(key, value);
+            String msg = "";
+            if (Arrays.equals(hMap.get(key), value)) {
+                msg = "PUT operation Key: " + utf8(key) + " Value: " + utf8(value) + " successful";
+            } else {
+                msg = "PUT operation Key: " + utf8(key) + " Value: " + utf8(value) + " is not successful";
+            }
+            return msg;
+
+        } catch (Exception e) {
+            String msg = "ERROR: createRecord failed";
+            Log.error(msg + " " + e.getMessage());
+            return msg;
+        }
+    }
+
+    /**
+     * Is called locally on the server without involving the PAXOS protocol.
+     * Returns the value of an existing record stored in the Server's hashmap, decoded as UTF-8. getValue() returns
+     *    the value's exact bytes.
+     * @param key The key of the record to be returned.
+     * @param serverIP The IP address or hostname of the client corresponding to this transaction.
+     * @return A String containing either the value of the corresponding key or a "cannot be found"
+     *   message if the key is invalid.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String getRecord(String key, String serverIP) throws RemoteException {
+        try {
+            String result = "";
+
+            byte[] value = hMap.get(key.getBytes(StandardCharsets.UTF_8));
+            if (value != null) {
+                result = "Value for " + key + ": " + utf8(value);
+            } else { // If key cannot be found in hMap
+                result = "Key " + key + " cannot be found";
+            }
+
+            if (Log.enabled(Log.Level.DEBUG)) {
+                Log.debug("GET", Log.NONE, Log.NONE, key, "Client: " + serverIP + " - " + result);
+            }
+            return result;
+        }
+        catch (Exception e) {
+            Log.error("Issue in getRecord " + e.getMessage());
+            return "ERROR: Issue in getRecord Key " + key + " cannot be found";
+        }
+    }
+
+    /**
+     * Returns the value of a key as of a point after every write that completed before this call (linearizable GET).
+     * Rather than running the read through Paxos, a read-index round asks a majority of Acceptors for the highest
+     *    slot they have accepted. Any completed write was accepted by a majority, so its slot is covered. Once this
+     *    server has applied that slot the read is served from the local hashmap, so any server can serve it.
+     * @param key The key to retrieve the corresponding value for.
+     * @param serverIP The IP Address or hostname of the client.
+     * @return The value in the same format as getRecord(), or an error if no majority replied or this server did
+     *    not apply the read index within PAXOS_READ_TIMEOUT_MS.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String getConsistentRecord(String key, String serverIP) throws RemoteException {
+        try {
+            long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+            long readIndex = awaitReadIndex(deadline);
+            if (!awaitReadIndexApplied(readIndex, deadline)) {
+                Log.warn("Server " + serverName + " has not applied read index " + readIndex + " for key " + key);
+                return "ERROR: Server " + serverName + " is behind, read of Key " + key + " timed out";
+            }
+            return getRecord(key, serverIP);
+        } catch (TimeoutException e) {
+            return "ERROR: Server " + serverName + " could not reach a majority for read of Key " + key;
+        } catch (Exception e) {
+            Log.error("Issue in getConsistentRecord " + e.getMessage());
+            return "ERROR: Issue in getConsistentRecord Key " + key + " cannot be found";
+        }
+    }
+
+    /**
+     * Returns the exact bytes of a key's value, so values that are not UTF-8 text are read back intact.
+     *    getRecord() and getConsistentRecord() decode the value as UTF-8 for display.
+     * @param key The key.
+     * @param linearizable Whether the read must reflect every write completed before it, as in getConsistentRecord().
+     * @return The value, or null if the key does not exist.
+     * @throws RemoteException For RMI-related errors, or if a linearizable read could not complete in time.
+     */
+    @Override
+    public byte[] getValue(byte[] key, boolean linearizable) throws RemoteException {
+        if (linearizable) {
+            awaitLinearizable("GET");
+        }
+        byte[] value = hMap.get(key);
+        if (Log.enabled(Log.Level.DEBUG)) {
+            Log.debug("GET", Log.NONE, Log.NONE, utf8(key), value == null ? "Key cannot be found" : value.length + " bytes");
+        }
+        return value;
+    }
+
+    /**
+     * Returns the values of several keys in one call. The keys are read while no slot is being applied, so a
+     *    multi-key write is either entirely visible or not at all.
+     * @param keys The keys to retrieve.
+     * @param linearizable Whether the read must reflect every write completed before it, as in getConsistentRecord().
+     * @return The value of each key that exists, decoded as UTF-8, keys that cannot be found are left out.
+     * @throws RemoteException For RMI-related errors, or if a linearizable read could not complete in time.
+     */
+    @Override
+    public Map<String, String> multiGet(List<String> keys, boolean linearizable) throws RemoteException {
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            keyBytes.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        List<byte[]> found = multiGetValues(keyBytes, linearizable);
+        HashMap<String, String> values = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (found.get(i) != null) {
+                values.put(keys.get(i), utf8(found.get(i)));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the exact bytes of several keys' values in one call, read atomically like multiGet().
+     * @param keys The keys to retrieve.
+     * @param linearizable Whether the read must reflect every write completed before it, as in getConsistentRecord().
+     * @return The value of each key, in the order of keys, null for a key that cannot be found.
+     * @throws RemoteException For RMI-related errors, or if a linearizable read could not complete in time.
+     */
+    @Override
+    public List<byte[]> multiGetValues(List<byte[]> keys, boolean linearizable) throws RemoteException {
+        Log.debug("MULTIGET", Log.NONE, Log.NONE, null, keys.size() + " keys");
+        if (linearizable) {
+            awaitLinearizable("MULTIGET");
+        }
+        List<byte[]> values = new ArrayList<>(keys.size());
+        int found = 0;
+        synchronized (applyLock) {
+            for (byte[] key : keys) {
+                byte[] value = hMap.get(key);
+                values.add(value);
+                if (value != null) {
+                    found++;
+                }
+            }
+        }
+        Log.debug("MULTIGET", Log.NONE, Log.NONE, null, "Found " + found + " of " + keys.size() + " keys");
+        return values;
+    }
+
+    /**
+     * Runs a read-index round and waits until this server has applied its slot, so a read that follows reflects
+     *    every write completed before this call, as in getConsistentRecord().
+     * @param name The name of the read, used in error messages.
+     * @throws RemoteException If no majority replied, or this server did not apply the read index within
+     *    PAXOS_READ_TIMEOUT_MS.
+     */
+    private void awaitLinearizable(String name) throws RemoteException {
+        try {
+            long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+            if (!awaitReadIndexApplied(awaitReadIndex(deadline), deadline)) {
+                throw new RemoteException("Server " + serverName + " is behind, " + name + " timed out");
+            }
+        } catch (TimeoutException e) {
+            throw new RemoteException("Server " + serverName + " could not reach a majority for " + name);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.error("Issue in linearizable " + name + " " + e.getMessage());
+            throw new RemoteException("Issue in linearizable " + name, e);
+        }
+    }
+
+    /**
+     * Returns one page of the keys in a range, in ascending order of their unsigned bytes, with their values. The
+     *    page is read while no slot is being applied, so a multi-key write is either entirely visible in it or not
+     *    at all. Pages of one scan may reflect different slots, like consecutive GETs.
+     * @param startKey The first key, inclusive, e.g. ScanPage.nextKey of the previous page.
+     * @param endKey The last key, exclusive, or null to scan to the end.
+     * @param limit The most keys to return, capped at PAXOS_MAX_SCAN_PAGE.
+     * @return The page, with the key to continue from if the range holds more keys.
+     * @throws RemoteException For RMI-related errors, or if PAXOS_ORDERED_INDEX=false.
+     */
+    @Override
+    public ScanPage scan(byte[] startKey, byte[] endKey, int limit) throws RemoteException {
+        if (orderedKeys == null) {
+            throw new RemoteException("Server " + serverName + " keeps no ordered index, scans need PAXOS_ORDERED_INDEX=true");
+        }
+        int max = Math.max(1, Math.min(limit, MAX_SCAN_PAGE));
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        byte[] nextKey = null;
+        synchronized (applyLock) {
+            for (byte[] key : orderedKeys.keys(startKey, endKey)) {
+                if (keys.size() == max) {
+                    nextKey = key;
+                    break;
+                }
+                byte[] value = hMap.get(key);
+                if (value != null) {
+                    keys.add(key);
+                    values.add(value);
+                }
+            }
+        }
+        if (Log.enabled(Log.Level.DEBUG)) {
+            Log.debug("SCAN", Log.NONE, Log.NONE, utf8(startKey), keys.size() + " keys");
+        }
+        return new ScanPage(keys, values, nextKey, endKey);
+    }
+
+    /**
+     * Returns the first page of the keys starting with a prefix. Further pages are read with scan(), from the
+     *    page's nextKey to its endKey.
+     * @param prefix The key prefix, an empty array for every key.
+     * @param limit The most keys to return, capped at PAXOS_MAX_SCAN_PAGE.
+     * @return The page.
+     * @throws RemoteException For RMI-related errors, or if PAXOS_ORDERED_INDEX=false.
+     */
+    @Override
+    public ScanPage prefixScan(byte[] prefix, int limit) throws RemoteException {
+        return scan(prefix, ScanPage.prefixEnd(prefix), limit);
+    }
+
+    /**
+     * Writes several key/value pairs as one Paxos instance. Learners apply all of them in the same slot, so no
+     *    reader sees only some of them.
+     * @param entries The key/value pairs to write.
+     * @return A consensus or failure message, or "REDIRECT,$serverName" in Multi-Paxos mode if another server is the leader.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String multiPut(Map<String, String> entries) throws RemoteException {
+        List<Operation> operations = new ArrayList<>(entries.size());
+        try {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                operations.add(Operation.put(entry.getKey(), entry.getValue()));
+            }
+        } catch (RuntimeException e) {
+            return "ERROR: Proposer " + serverName + " received a MULTIPUT with a missing key or value";
+        }
+        return proposeAtomically(operations, "MULTIPUT");
+    }
+
+    /**
+     * Deletes several keys as one Paxos instance, applied in a single slot like multiPut().
+     * @param keys The keys to delete.
+     * @return A consensus or failure message, or "REDIRECT,$serverName" in Multi-Paxos mode if another server is the leader.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String multiDelete(List<String> keys) throws RemoteException {
+        List<Operation> operations = new ArrayList<>(keys.size());
+        try {
+            for (String key : keys) {
+                operations.add(Operation.delete(key));
+            }
+        } catch (RuntimeException e) {
+            return "ERROR: Proposer " + serverName + " received a MULTIDELETE with a missing key";
+        }
+        return proposeAtomically(operations, "MULTIDELETE");
+    }
+
+    /**
+     * Proposes a list of operations as a single log value, bypassing the ProposalBatcher as the list already
+     *    forms a batch. Takes a place in the pipeline window like any other Paxos instance.
+     * @param operations The operations, applied in order.
+     * @param name The name of the request, used in log and result messages.
+     * @return The result of the proposal.
+     */
+    private String proposeAtomically(List<Operation> operations, String name) throws RemoteException {
+        if (operations.isEmpty() || operations.size() > MAX_MULTI_KEYS) {
+            return "ERROR: Proposer " + serverName + " rejected " + name + " of " + operations.size()
+                    + " keys, must be between 1 and " + MAX_MULTI_KEYS;
+        }
+        Log.debug(name, Log.NONE, Log.NONE, null, operations.size() + " keys");
+        try {
+            acquireProposalSlot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR: Proposer " + serverName + " interrupted waiting for the pipeline window";
+        }
+        try {
+            return proposeValue(Operation.encodeAll(operations), name + " of " + operations.size() + " keys");
+        } finally {
+            releaseProposalSlot();
+        }
+    }
+
+    /**
+     * Waits until this server has applied a read index.
+     * @param readIndex The slot to wait for.
+     * @param deadline The time to give up, in epoch milliseconds.
+     * @return true if the slot was applied before the deadline.
+     * @throws InterruptedException For thread-related issues.
+     */
+    private boolean awaitApplied(long readIndex, long deadline) throws InterruptedException {
+        synchronized (applyLock) {
+            long remaining;
+            while (lastApplied < readIndex && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                applyLock.wait(remaining);
+            }
+            return lastApplied >= readIndex;
+        }
+    }
+
+    /**
+     * Waits until this server has applied a read index, for a linearizable read. The read index covers every slot
+     *    an Acceptor has accepted, including one whose Proposer failed before it was decided, which the catch-up
+     *    thread only fills after suspecting it on two of its runs. A read still blocked on the same slot after a
+     *    quarter of PAXOS_READ_TIMEOUT_MS, far longer than a live Proposer needs to decide it, has the slot
+     *    filled straight away instead of timing out.
+     * @param readIndex The slot to wait for.
+     * @param deadline The time to give up, in epoch milliseconds.
+     * @return true if the slot was applied before the deadline.
+     * @throws InterruptedException For thread-related issues.
+     */
+    private boolean awaitReadIndexApplied(long readIndex, long deadline) throws InterruptedException {
+        if (awaitApplied(readIndex, Math.min(deadline, System.currentTimeMillis() + READ_TIMEOUT_MS / 4))) {
+            return true;
+        }
+        long hole = lastApplied + 1;
+        if (hole <= readIndex && readHole.getAndSet(hole) != hole) { // Reads blocked on the same slot ask once
+            catchUpScheduler.execute(() -> fillReadHole(hole));
+        }
+        return awaitApplied(readIndex, deadline);
+    }
+
+    /**
+     * Decides a slot a linearizable read is blocked on, on the catch-up thread. The slot is pulled from a peer if
+     *    one has applied it, and otherwise decided through fillHole(). In Multi-Paxos mode a follower runs an
+     *    election itself rather than wait for the leader, which may never reuse the slot while no writes arrive.
+     *    Attempts are retried with higher ballots until the slot is applied or MAX_PROPOSAL_ATTEMPTS have failed.
+     * @param hole The undecided slot.
+     */
+    private void fillReadHole(long hole) {
+        try {
+            if (lastApplied < hole) {
+                catchUp();
+            }
+            for (int attempt = 1; attempt <= MAX_PROPOSAL_ATTEMPTS && lastApplied < hole; attempt++) {
+                Log.info("Learner " + serverName + " filling slot " + hole + " blocking a linearizable read");
+                if (MULTI_PAXOS && !isLeader) {
+                    electLeader();
+                } else {
+                    fillHole(hole);
+                }
+                if (lastApplied < hole) { // Rejected by a higher ballot, which the next attempt outbids
+                    backOff(attempt);
+                }
+            }
+        } catch (Exception e) {
+            Log.error("Issue filling slot " + hole + " for a linearizable read " + e.getMessage());
+        }
+    }
+
+    /**
+     * Joins the next read-index round. Rounds run one at a time on readIndexExecutor, so every read arriving while
+     *    a round is in flight shares the round after it, and a burst of reads costs a single message per Acceptor.
+     * A read only joins a round that has not started yet, so the round always reflects writes completed before the read.
+     * @param deadline The time by which the read must complete, in epoch milliseconds.
+     * @return The highest slot accepted by a majority of Acceptors.
+     * @throws TimeoutException If the round did not reach a majority before the deadline.
+     */
+    private long awaitReadIndex(long deadline) throws Exception {
+        CompletableFuture<Long> round;
+        boolean start = false;
+        synchronized (readIndexLock) {
+            if (nextReadIndex == null) {
+                nextReadIndex = new CompletableFuture<>();
+                start = true;
+            }
+            round = nextReadIndex;
+        }
+        if (start) {
+            readIndexExecutor.execute(() -> {
+                synchronized (readIndexLock) { // Reads arriving from now on wait for the next round
+                    nextReadIndex = null;
+                }
+                try {
+                    List<String> voters = membership.members;
+                    List<PaxosMessage> replies = fanOut(voters, srv -> PaxosMessage.decode(srv.readIndex()),
+                            r -> r.type == PaxosMessage.ACCEPTED, "READ INDEX", READ_TIMEOUT_MS);
+                    if (replies.size() < majority(voters)) {
+                        round.completeExceptionally(new TimeoutException("no majority for read index"));
+                        return;
+                    }
+                    long readIndex = 0;
+                    for (PaxosMessage reply : replies) {
+                        readIndex = Math.max(readIndex, reply.slot);
+                    }
+                    round.complete(readIndex);
+                } catch (Exception e) {
+                    round.completeExceptionally(e);
+                }
+            });
+        }
+        try {
+            return round.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Is called by the PAXOS learn() methods to delete an existing record stored in the server's hashmap.
+     * If a record doesn't exist, returns "cannot be found" message.
+     * @param key The key of the record to be deleted
+     * @return A String containing either the confirmation of deletion or
+     *   a "cannot be found" message if key is invalid.
+     * @throws RemoteException For RMI-related errors.
+     */
+    public String deleteRecord(byte[] key) throws RemoteException {
+        try {
+            String msg = "";
+
+            if (hMap.containsKey(key)) {
+                hMap.remove(key);
+                if (!hMap.containsKey(key)) {
+                    msg = "DELETE operation on Key: " + utf8(key) + " successful";
+
+                } else {
+                    msg = "DELETE operation on Key: " + utf8(key) + " was not successful";
+                }
+            } else {
+                // If key is not found in server
+                msg = "Key " + utf8(key) + " cannot be found in server";
+            }
+
+            return msg;
+        } catch (Exception e) {
+            String msg = "ERROR: deleteRecord failed";
+            Log.error(msg + " " + e.getMessage());
+            return msg;
+        }
+    }
+
+    /**
+     * Returns the IP Address or hostname the Server is running on.
+     * @return The IP or hostname the Server is using.
+     * @throws RemoteException for RMI-related errors.
+     */
+    @Override
+    public String getServerIP() throws RemoteException {
+        try {
+            return System.getProperty("java.rmi.server.hostname");
+        } catch (Exception e) {
+            Log.error("Issue in getServerIP() " + e.getMessage());
+            return "ERROR";
+        }
+    }
+
+    /**
+     * Returns the $SERVER_NAME environment variable associated with the particular server.
+     * @return The $SERVER_NAME env variable tied with this server.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public String getServerName() throws RemoteException {
+        try {
+            return serverName;
+        } catch (Exception e) {
+            Log.error("Issue in getServerName() " + e.getMessage());
+            return "ERROR";
+        }
+    }
+
+    /**
+     * Returns the groups this server's keyspace is split into and their leaders, so a client can send each
+     *    write straight to the leader of the key's group.
+     * @return The routing table of this server's ShardRouter, or a single-group table if it has none.
+     * @throws RemoteException For RMI-related errors.
+     */
+    @Override
+    public RoutingTable getRoutingTable() throws RemoteException {
+        return router != null ? router.getRoutingTable() : new RoutingTable(new String[]{knownLeader()});
+    }
+
+    /**
+     * @return The server this instance believes leads its group, or null in basic mode or if no leader is known.
+     */
+    String knownLeader() {
+        if (!MULTI_PAXOS) {
+            return null;
+        }
+        return isLeader ? serverName : leaderName;
+    }
+
+    /**
+     * Decodes a key or value as UTF-8 for log and result messages. Bytes that are not valid UTF-8 are shown as
+     *    U+FFFD, the stored bytes are unaffected.
+     * @param bytes The key or value, or null.
+     * @return The decoded text, or "null".
+     */
+    private static String utf8(byte[] bytes) {
+        return bytes == null ? "null" : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a numeric tuning parameter from the environment, the same way SERVER_NAME is provided.
+     * @param name The name of the environment variable.
+     * @param defaultValue The value to use if the variable is unset or invalid.
+     * @return The configured value, or defaultValue.
+     */
+    static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            Log.error("" + name + " must be a number, defaulting to " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a comma-separated list from the environment, such as PAXOS_MEMBERS.
+     * @param name The name of the environment variable.
+     * @param defaultValue The comma-separated list to use if the variable is unset.
+     * @return The non-empty, trimmed entries of the list.
+     */
+    static List<String> envList(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            value = defaultValue;
+        }
+        List<String> entries = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            if (!entry.isBlank()) {
+                entries.add(entry.trim());
+            }
+        }
+        return List.copyOf(entries);
+    }
+
+
+    /**
+     * Starts every member of PAXOS_MEMBERS inside this JVM, each with PAXOS_GROUPS groups, for load tests that
+     *    should not depend on a docker-compose cluster. The instances reach each other and are reached by KVClient
+     *    through LocalCluster instead of the RMI registry. Nothing is persisted, and no Acceptor failures are
+     *    simulated, so every run starts from empty servers.
+     * @return The server names, to pass to KVClient.
+     * @throws Exception If a server cannot be created.
+     */
+    static List<String> startLocalCluster() throws Exception {
+        for (String name : INITIAL_MEMBERS) {
+            Server[] groups = new Server[GROUPS];
+            for (int g = 0; g < GROUPS; g++) {
+                groups[g] = new Server(OFF_HEAP_STORE ? new OffHeapStore(STORE_SEGMENTS) : new HeapStore(), name, g);
+                LocalCluster.bind(ShardRouter.bindingName(name, g), groups[g]);
+            }
+            ShardRouter router = new ShardRouter(name, groups);
+            for (Server srv : groups) {
+                srv.router = router;
+            }
+            LocalCluster.bind(name, router);
+        }
+        for (String name : INITIAL_MEMBERS) {
+            for (int g = 0; g < GROUPS; g++) {
+                Server srv = (Server) LocalCluster.lookup(ShardRouter.bindingName(name, g));
+                srv.connectToPaxosNodes();
+                srv.scheduleCatchUp();
+            }
+        }
+        Log.info("Started " + INITIAL_MEMBERS.size() + " servers with " + GROUPS + " Paxos groups in this JVM");
+        return INITIAL_MEMBERS;
+    }
+
+    public static void main(String[] args) throws RemoteException {
+        if(args.length != 3){
+            Log.error("Proper input format must be 'java kvstore.Server <server_ip> <port> <server_name>'");
+            return;
+        }
+
+        String serverIP = null;
+        int port = -1;
+        String serverName = null;
+
+        try {
+            serverIP = args[0];
+            port = Integer.parseInt(args[1]);
+            serverName = args[2];
+
+        } catch (Exception e) {
+            Log.error("<server_ip> and <server_name> must be type String and <port> must be type int");
+        }
+
+
+        try {
+            serverName = System.getenv("SERVER_NAME");
+            // Set hostname to the SERVER_NAME env variable stored in the docker-compose file
+            System.setProperty("java.rmi.server.hostname", serverName);
+            Registry registry = LocateRegistry.createRegistry(1099);
+            String dataDir = System.getenv("PAXOS_DATA_DIR");
+            Path dataRoot = Paths.get(dataDir == null || dataDir.isBlank() ? "data" : dataDir);
+            Server[] groups = new Server[GROUPS];
+            for (int g = 0; g < GROUPS; g++) {
+                // Create remote object providing RMI service, each group stores the keys it owns in its own hashmap
+                Server srv = new Server(OFF_HEAP_STORE ? new OffHeapStore(STORE_SEGMENTS) : new HeapStore(), serverName, g);
+                // Recover durable state before accepting any Paxos messages
+                srv.openWriteAheadLog(GROUPS == 1 ? dataRoot : dataRoot.resolve("group-" + g));
+                srv.scheduleSnapshots();
+                // Export srv to Java RMI runtime to accept incoming RMI calls on specified port
+                RemoteOperations stub = (RemoteOperations) UnicastRemoteObject.exportObject(srv, port);
+                registry.bind(ShardRouter.bindingName(serverName, g), stub);
+                if (NIO_TRANSPORT) {
+                    srv.peerTransport = new NioTransport(srv, NIO_WORKERS, NIO_REQUEST_TIMEOUT_MS);
+                    srv.peerTransport.listen(NIO_PORT + g);
+                    Log.info("NIO transport for group " + g + " listening on port " + (NIO_PORT + g));
+                }
+                groups[g] = srv;
+            }
+            ShardRouter router = new ShardRouter(serverName, groups);
+            for (Server srv : groups) {
+                srv.router = router;
+            }
+            // Bind the router under the server name, clients reach every group through it
+            registry.bind(serverName, UnicastRemoteObject.exportObject(router, port));
+            Log.info("Server initialized on host " + System.getProperty("java.rmi.server.hostname") + " port " + port
+                    + " with " + GROUPS + " Paxos groups");
+
+            for (Server srv : groups) {
+                srv.connectToPaxosNodes(); // Connect to this group's instance on all PAXOS nodes
+                srv.scheduleCatchUp(); // Pull any slots decided while this server was down
+                srv.simulateAcceptorFailure();
+            }
+
+        } catch (Exception e) {
+            Log.error("Failed to connect to PAXOS nodes: " + e.getMessage());
+        }
+
+    }
+
+}
@@ -0,0 +1,344 @@
+package kvstore;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Client-facing entry point of a server whose keyspace is split into several Paxos groups (PAXOS_GROUPS).
+ * Bound in the RMI registry under the server name, it sends each client request to the local instance of the
+ *    group owning the key. Each group instance is a separate Server, bound as "$serverName/group-$id", so the
+ *    instances of a group on different servers exchange Paxos messages directly without passing through here.
+ * A multi-key write is decided by a single Paxos instance, so it is only accepted if all of its keys belong to
+ *    the same group.
+ */
+public class ShardRouter implements RemoteOperations {
+    private final String serverName;
+    private final Server[] groups;
+    private final WatchBuffer.Signal watchSignal = new WatchBuffer.Signal(); // Fired by every group
+
+    public ShardRouter(String serverName, Server[] groups) {
+        this.serverName = serverName;
+        this.groups = groups;
+        for (Server group : groups) {
+            group.shareWatchSignal(watchSignal);
+        }
+    }
+
+    /**
+     * Returns the RMI registry name of a group's instance on a server.
+     * @param serverName The server name, e.g. "rmi-server-1".
+     * @param group The group.
+     * @return The binding name, e.g. "rmi-server-1/group-0".
+     */
+    static String bindingName(String serverName, int group) {
+        return serverName + "/group-" + group;
+    }
+
+    private Server groupOf(String key) {
+        return groups[RoutingTable.groupOf(key, groups.length)];
+    }
+
+    private Server groupOf(byte[] key) {
+        return groups[RoutingTable.groupOf(key, groups.length)];
+    }
+
+    /**
+     * Splits keys by the group owning them, keeping their order within each group.
+     */
+    private Map<Integer, List<String>> splitByGroup(Iterable<String> keys) {
+        Map<Integer, List<String>> byGroup = new LinkedHashMap<>();
+        for (String key : keys) {
+            byGroup.computeIfAbsent(RoutingTable.groupOf(key, groups.length), g -> new ArrayList<>()).add(key);
+        }
+        return byGroup;
+    }
+
+    @Override
+    public String getRecord(String key, String serverIP) throws RemoteException {
+        return groupOf(key).getRecord(key, serverIP);
+    }
+
+    @Override
+    public String getConsistentRecord(String key, String serverIP) throws RemoteException {
+        return groupOf(key).getConsistentRecord(key, serverIP);
+    }
+
+    @Override
+    public byte[] getValue(byte[] key, boolean linearizable) throws RemoteException {
+        return groupOf(key).getValue(key, linearizable);
+    }
+
+    /**
+     * Reads the keys of each group from that group. Keys of one group are read atomically, as in Server.multiGet().
+     */
+    @Override
+    public Map<String, String> multiGet(List<String> keys, boolean linearizable) throws RemoteException {
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> entry : splitByGroup(keys).entrySet()) {
+            values.putAll(groups[entry.getKey()].multiGet(entry.getValue(), linearizable));
+        }
+        return values;
+    }
+
+    /**
+     * Reads the keys of each group from that group, like multiGet(), and puts the values back in the order of keys.
+     */
+    @Override
+    public List<byte[]> multiGetValues(List<byte[]> keys, boolean linearizable) throws RemoteException {
+        Map<Integer, List<Integer>> byGroup = new LinkedHashMap<>(); // Positions in keys of each group's keys
+        for (int i = 0; i < keys.size(); i++) {
+            byGroup.computeIfAbsent(RoutingTable.groupOf(keys.get(i), groups.length), g -> new ArrayList<>()).add(i);
+        }
+        List<byte[]> values = new ArrayList<>(Arrays.asList(new byte[keys.size()][]));
+        for (Map.Entry<Integer, List<Integer>> entry : byGroup.entrySet()) {
+            List<byte[]> groupKeys = new ArrayList<>(entry.getValue().size());
+            for (int i : entry.getValue()) {
+                groupKeys.add(keys.get(i));
+            }
+            List<byte[]> groupValues = groups[entry.getKey()].multiGetValues(groupKeys, linearizable);
+            for (int i = 0; i < groupKeys.size(); i++) {
+                values.set(entry.getValue().get(i), groupValues.get(i));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String multiPut(Map<String, String> entries) throws RemoteException {
+        Map<Integer, List<String>> byGroup = splitByGroup(entries.keySet());
+        if (byGroup.size() > 1) {
+            return "ERROR: MULTIPUT keys span " + byGroup.size() + " Paxos groups, multi-key writes must stay within one group";
+        }
+        return byGroup.isEmpty() ? groups[0].multiPut(entries) : groups[byGroup.keySet().iterator().next()].multiPut(entries);
+    }
+
+    @Override
+    public String multiDelete(List<String> keys) throws RemoteException {
+        Map<Integer, List<String>> byGroup = splitByGroup(keys);
+        if (byGroup.size() > 1) {
+            return "ERROR: MULTIDELETE keys span " + byGroup.size() + " Paxos groups, multi-key writes must stay within one group";
+        }
+        return byGroup.isEmpty() ? groups[0].multiDelete(keys) : groups[byGroup.keySet().iterator().next()].multiDelete(keys);
+    }
+
+    @Override
+    public String propose(byte[] operation) throws RemoteException {
+        Operation op;
+        try {
+            op = Operation.decode(operation);
+        } catch (RuntimeException e) {
+            return "ERROR: Proposer " + serverName + " received a malformed operation " + e.getMessage();
+        }
+        return groupOf(op.key).propose(operation);
+    }
+
+    @Override
+    public RoutingTable getRoutingTable() throws RemoteException {
+        String[] leaders = new String[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            leaders[g] = groups[g].knownLeader();
+        }
+        return new RoutingTable(leaders);
+    }
+
+    /**
+     * Collects the changed keys of every group. fromSlots holds one position per group, any other length starts a
+     *    new feed in every group.
+     */
+    @Override
+    public KeyChanges getChangedKeys(long[] fromSlots) throws RemoteException {
+        long[] slots = new long[groups.length];
+        List<String> keys = new ArrayList<>();
+        boolean reset = false;
+        for (int g = 0; g < groups.length; g++) {
+            long from = fromSlots.length == groups.length ? fromSlots[g] : -1;
+            KeyChanges changes = groups[g].getChangedKeys(new long[]{from});
+            slots[g] = changes.slots[0];
+            keys.addAll(changes.keys);
+            reset |= changes.reset;
+        }
+        return new KeyChanges(slots, keys, reset);
+    }
+
+    /**
+     * Watches every group at once: their buffered changes are merged group by group, and the call waits on a signal
+     *    all groups fire, so a change in any group ends the wait.
+     */
+    @Override
+    public WatchBatch watch(byte[] prefix, long[] fromPositions, int maxEvents, long timeoutMs) throws RemoteException {
+        long[] positions = new long[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            positions[g] = fromPositions.length == groups.length ? fromPositions[g] : -1;
+        }
+        long deadline = System.currentTimeMillis() + Math.min(timeoutMs, Server.WATCH_MAX_WAIT_MS);
+        try {
+            while (true) {
+                long seen = watchSignal.version();
+                List<WatchBatch.Event> events = new ArrayList<>();
+                boolean truncated = false;
+                for (int g = 0; g < groups.length; g++) {
+                    int remaining = Math.max(1, maxEvents - events.size());
+                    WatchBatch batch = groups[g].watch(prefix, new long[]{positions[g]}, remaining, 0);
+                    positions[g] = batch.positions[0];
+                    events.addAll(batch.events);
+                    truncated |= batch.truncated;
+                }
+                if (!events.isEmpty() || truncated || System.currentTimeMillis() >= deadline) {
+                    return new WatchBatch(events, positions, truncated);
+                }
+                watchSignal.await(seen, deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for changes", e);
+        }
+    }
+
+    /**
+     * Scans every group and merges their pages. Keys are hashed to groups, so each group holds part of the range:
+     *    the merged page only reaches as far as the group whose page ends first, and continues from there.
+     */
+    @Override
+    public ScanPage scan(byte[] startKey, byte[] endKey, int limit) throws RemoteException {
+        int max = Math.max(1, Math.min(limit, Server.MAX_SCAN_PAGE));
+        TreeMap<byte[], byte[]> merged = new TreeMap<>(Arrays::compareUnsigned);
+        byte[] nextKey = null; // Smallest key some group has not returned yet
+        for (Server group : groups) {
+            ScanPage page = group.scan(startKey, endKey, max);
+            for (int i = 0; i < page.keys.size(); i++) {
+                merged.put(page.keys.get(i), page.values.get(i));
+            }
+            if (page.nextKey != null && (nextKey == null || Arrays.compareUnsigned(page.nextKey, nextKey) < 0)) {
+                nextKey = page.nextKey;
+            }
+        }
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> entry : merged.entrySet()) {
+            if (nextKey != null && Arrays.compareUnsigned(entry.getKey(), nextKey) >= 0) {
+                break;
+            }
+            if (keys.size() == max) {
+                nextKey = entry.getKey();
+                break;
+            }
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        return new ScanPage(keys, values, nextKey, endKey);
+    }
+
+    @Override
+    public ScanPage prefixScan(byte[] prefix, int limit) throws RemoteException {
+        return scan(prefix, ScanPage.prefixEnd(prefix), limit);
+    }
+
+    /**
+     * Adds a server to every group in turn. Each group decides the change through its own log.
+     */
+    @Override
+    public String addMember(String serverName) throws RemoteException {
+        List<String> results = new ArrayList<>();
+        for (int g = 0; g < groups.length; g++) {
+            results.add("Group " + g + ": " + groups[g].addMember(serverName));
+        }
+        return String.join("\n", results);
+    }
+
+    /**
+     * Removes a server from every group in turn. Each group decides the change through its own log.
+     */
+    @Override
+    public String removeMember(String serverName) throws RemoteException {
+        List<String> results = new ArrayList<>();
+        for (int g = 0; g < groups.length; g++) {
+            results.add("Group " + g + ": " + groups[g].removeMember(serverName));
+        }
+        return String.join("\n", results);
+    }
+
+    @Override
+    public List<String> getMembers() throws RemoteException {
+        return groups[0].getMembers();
+    }
+
+    @Override
+    public String getServerIP() throws RemoteException {
+        return groups[0].getServerIP();
+    }
+
+    @Override
+    public String getServerName() throws RemoteException {
+        return serverName;
+    }
+
+    @Override
+    public int getPipelineWindow() throws RemoteException {
+        int window = 0;
+        for (Server group : groups) {
+            window += group.getPipelineWindow();
+        }
+        return window;
+    }
+
+    @Override
+    public int getInFlightProposals() throws RemoteException {
+        int inFlight = 0;
+        for (Server group : groups) {
+            inFlight += group.getInFlightProposals();
+        }
+        return inFlight;
+    }
+
+    // Paxos messages are exchanged between group instances, which are bound under their own names
+
+    private RemoteException notAGroup(String method) {
+        return new RemoteException(method + " must be sent to a Paxos group, e.g. " + bindingName(serverName, 0));
+    }
+
+    @Override
+    public byte[] prepare(long slot, int proposalId) throws RemoteException {
+        throw notAGroup("PREPARE");
+    }
+
+    @Override
+    public byte[] acceptRequest(long slot, int proposalId, byte[] value) throws RemoteException {
+        throw notAGroup("ACCEPT");
+    }
+
+    @Override
+    public byte[] prepareLeader(int ballot, String candidate, long fromSlot) throws RemoteException {
+        throw notAGroup("Leader PREPARE");
+    }
+
+    @Override
+    public void learn(long slot, byte[] value) throws RemoteException {
+        throw notAGroup("LEARN");
+    }
+
+    @Override
+    public long getLastApplied() throws RemoteException {
+        throw notAGroup("getLastApplied");
+    }
+
+    @Override
+    public byte[] getDecided(long fromSlot, int max) throws RemoteException {
+        throw notAGroup("getDecided");
+    }
+
+    @Override
+    public byte[] getSnapshotChunk(long snapshotSlot, long offset, int length) throws RemoteException {
+        throw notAGroup("getSnapshotChunk");
+    }
+
+    @Override
+    public byte[] readIndex() throws RemoteException {
+        throw notAGroup("READ INDEX");
+    }
+}
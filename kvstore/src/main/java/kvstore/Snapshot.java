@@ -0,0 +1,296 @@
+package kvstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time image of a server's state at one slot of the replicated log: the hashmap as of lastApplied, plus the
+ *    Acceptor state and decided values of the slots after it. Once a snapshot is on disk, the write-ahead log
+ *    segments it covers can be deleted, and a restarted server only replays the log written after it.
+ * Snapshots are written to a temporary file, fsynced and atomically renamed to snapshot-$lastApplied.snap, so a
+ *    crash while writing never leaves a partial snapshot behind.
+ * On disk a snapshot is [magic][long lastApplied][int leaderBallot][leaderName][long membershipEpoch][members]
+ *    [pending members][long activeFrom][acceptor slots][decided slots][key/value pairs][long crc32 of everything
+ *    before it]. Members are stored with their member index. Snapshots written before member indexes, or before
+ *    membership changes existed, have fewer membership fields and are still read.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x4b565333; // "KVS3"
+    private static final int MAGIC_WITHOUT_INDEXES = 0x4b565332; // "KVS2"
+    private static final int MAGIC_WITHOUT_MEMBERS = 0x4b56534e; // "KVSN"
+
+    long lastApplied = 0; // Highest slot reflected in the key/value pairs
+    int leaderBallot = -1; // Acceptor: highest leader ballot promised
+    String leaderName = null; // Acceptor: server holding leaderBallot
+    long membershipEpoch = 0; // Membership changes applied up to lastApplied
+    List<String> members = null; // Members of the group as of lastApplied, null if the snapshot predates them
+    List<String> pendingMembers = null; // Members from activeFrom on, null if no change was pending
+    long activeFrom = 0; // First slot governed by pendingMembers
+    Map<String, Integer> memberIndexes = null; // Index of each member and pending member, null if the snapshot predates them
+    Map<Long, PaxosState> acceptorState = new TreeMap<>(); // Acceptor state of slots after lastApplied
+    Map<Long, byte[]> decided = new TreeMap<>(); // Decided values of slots after lastApplied
+
+    /**
+     * Receives each key/value pair of a snapshot.
+     */
+    interface EntryConsumer {
+        void accept(byte[] key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Streams the key/value pairs to write into a snapshot.
+     */
+    interface EntrySource {
+        void forEach(EntryConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Writes a snapshot to dir. The key/value pairs are streamed from entries rather than copied up front, so
+     *    writing a snapshot of a large hashmap needs no extra memory.
+     * @param dir The data directory.
+     * @param entries Streams the key/value pairs as of lastApplied.
+     * @return The path of the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    Path write(Path dir, EntrySource entries) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(fileName(lastApplied) + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeLong(lastApplied);
+            out.writeInt(leaderBallot);
+            writeString(out, leaderName);
+            out.writeLong(membershipEpoch);
+            writeMembers(out, members);
+            writeMembers(out, pendingMembers);
+            out.writeLong(activeFrom);
+            out.writeInt(acceptorState.size());
+            for (Map.Entry<Long, PaxosState> entry : acceptorState.entrySet()) {
+                PaxosState state = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeInt(state.highestPromisedID);
+                out.writeInt(state.acceptedProposalID);
+                writeBytes(out, state.acceptedValue);
+            }
+            out.writeInt(decided.size());
+            for (Map.Entry<Long, byte[]> entry : decided.entrySet()) {
+                out.writeLong(entry.getKey());
+                writeBytes(out, entry.getValue());
+            }
+            entries.forEach((key, value) -> {
+                out.writeBoolean(true);
+                writeBytes(out, key);
+                writeBytes(out, value);
+            });
+            out.writeBoolean(false); // End of the key/value pairs
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Path file = dir.resolve(fileName(lastApplied));
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Loads the newest intact snapshot in dir. A snapshot that fails its checksum is skipped in favour of an older one.
+     * @param dir The data directory.
+     * @param hMap Receives the key/value pairs of the snapshot that is loaded, cleared if a snapshot is skipped.
+     * @return The loaded snapshot without its key/value pairs, or null if dir holds no intact snapshot.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static Snapshot loadLatest(Path dir, KVStore hMap) throws IOException {
+        List<Long> snapshots = list(dir);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path file = dir.resolve(fileName(snapshots.get(i)));
+            try {
+                return read(file, hMap::put);
+            } catch (IOException e) {
+                hMap.clear(); // Drop whatever was read before the corruption was detected
+                Log.error("Skipping unreadable snapshot " + file + " " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a snapshot file and verifies its checksum.
+     * @param file The snapshot file.
+     * @param entries Receives each key/value pair.
+     * @return The snapshot without its key/value pairs.
+     * @throws IOException If the file cannot be read or is corrupt.
+     */
+    static Snapshot read(Path file, EntryConsumer entries) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            CRC32 crc = new CRC32();
+            DataInputStream data = new DataInputStream(new CheckedInputStream(new BufferedInputStream(in, 64 * 1024), crc));
+            int magic = data.readInt();
+            if (magic != MAGIC && magic != MAGIC_WITHOUT_INDEXES && magic != MAGIC_WITHOUT_MEMBERS) {
+                throw new IOException("not a snapshot");
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.lastApplied = data.readLong();
+            snapshot.leaderBallot = data.readInt();
+            snapshot.leaderName = readString(data);
+            if (magic == MAGIC) {
+                snapshot.membershipEpoch = data.readLong();
+                snapshot.memberIndexes = new HashMap<>();
+                snapshot.members = readMembers(data, snapshot.memberIndexes);
+                snapshot.pendingMembers = readMembers(data, snapshot.memberIndexes);
+                snapshot.activeFrom = data.readLong();
+            } else if (magic == MAGIC_WITHOUT_INDEXES) {
+                snapshot.membershipEpoch = data.readLong();
+                snapshot.members = readMembers(data, null);
+            }
+            for (int i = data.readInt(); i > 0; i--) {
+                long slot = data.readLong();
+                PaxosState state = new PaxosState();
+                state.highestPromisedID = data.readInt();
+                state.acceptedProposalID = data.readInt();
+                state.acceptedValue = readBytes(data);
+                snapshot.acceptorState.put(slot, state);
+            }
+            for (int i = data.readInt(); i > 0; i--) {
+                long slot = data.readLong();
+                snapshot.decided.put(slot, readBytes(data));
+            }
+            while (data.readBoolean()) {
+                entries.accept(readBytes(data), readBytes(data));
+            }
+            long expected = crc.getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Deletes every snapshot older than the given slot, along with temporary files left by interrupted writes.
+     * Must not run while a snapshot is being written.
+     * @param dir The data directory.
+     * @param keptSlot The lastApplied of the snapshot to keep.
+     * @throws IOException If a file cannot be deleted.
+     */
+    static void deleteOlderThan(Path dir, long keptSlot) throws IOException {
+        for (long slot : list(dir)) {
+            if (slot < keptSlot) {
+                Files.deleteIfExists(dir.resolve(fileName(slot)));
+            }
+        }
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.list(dir)) {
+            leftovers = files.filter(file -> file.toString().endsWith(".snap.tmp")).toList();
+        }
+        for (Path tmp : leftovers) {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Lists the lastApplied slot of each snapshot in dir, oldest first.
+     * @param dir The data directory.
+     * @return The snapshot slots in ascending order.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static List<Long> list(Path dir) throws IOException {
+        List<Long> slots = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return slots;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("snapshot-\\d+\\.snap"))
+                    .map(name -> Long.parseLong(name.substring(9, name.length() - 5)))
+                    .sorted()
+                    .forEach(slots::add);
+        }
+        return slots;
+    }
+
+    static String fileName(long lastApplied) {
+        return String.format("snapshot-%020d.snap", lastApplied);
+    }
+
+    // A member list is [int count] followed by each [name][int index], a count of -1 stands for null
+    private void writeMembers(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names == null ? -1 : names.size());
+        if (names != null) {
+            for (String name : names) {
+                writeString(out, name);
+                out.writeInt(memberIndexes.get(name));
+            }
+        }
+    }
+
+    // Snapshots without member indexes store the names alone, and are read with indexes set to null
+    private static List<String> readMembers(DataInputStream in, Map<String, Integer> indexes) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            names.add(name);
+            if (indexes != null) {
+                indexes.put(name, in.readInt());
+            }
+        }
+        return names;
+    }
+
+    // Strings are length-prefixed UTF-8 and byte arrays, including keys and values, are length-prefixed as they are.
+    //    A length of -1 stands for null. writeUTF() is not used as it is limited to 64KB.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,103 @@
+package kvstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length integer encoding shared by the binary wire formats (Operation, PaxosMessage).
+ * Unsigned values use 7 bits per byte, least significant group first, with the high bit set on every byte but the
+ *    last, so small numbers such as lengths and slot deltas take a single byte. Signed values are zigzag-encoded
+ *    first so that -1, used for "no ballot", also takes a single byte.
+ */
+final class Varint {
+    private Varint() {
+    }
+
+    /**
+     * Returns the number of bytes an unsigned varint takes.
+     * @param value The value, treated as unsigned.
+     * @return Between 1 and 10 bytes.
+     */
+    static int sizeOf(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static int sizeOfSigned(long value) {
+        return sizeOf(zigzag(value));
+    }
+
+    static void put(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void putSigned(ByteBuffer buffer, long value) {
+        put(buffer, zigzag(value));
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @param buffer The buffer positioned at the varint.
+     * @return The value.
+     * @throws IllegalArgumentException If the varint is longer than 10 bytes.
+     */
+    static long get(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static long getSigned(ByteBuffer buffer) {
+        long value = get(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the number of bytes a length-prefixed byte array takes. A null array is encoded as length 0 and an
+     *    empty array as length 1, so the two can be told apart.
+     * @param bytes The array, or null.
+     * @return The encoded size.
+     */
+    static int sizeOfBytes(byte[] bytes) {
+        return bytes == null ? 1 : sizeOf(bytes.length + 1L) + bytes.length;
+    }
+
+    static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            put(buffer, 0);
+            return;
+        }
+        put(buffer, bytes.length + 1L);
+        buffer.put(bytes);
+    }
+
+    static byte[] getBytes(ByteBuffer buffer) {
+        long length = get(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds message");
+        }
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
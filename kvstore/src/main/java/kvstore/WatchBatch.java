@@ -0,0 +1,61 @@
+package kvstore;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Reply to a watch() call: the applied writes to keys under the watched prefix after the watcher's position, in the
+ *    order they were applied, and the position to resume from. Positions are slots of the replicated log, one per
+ *    Paxos group, so a watcher can resume on any server. Writes to one key are always in order; writes to keys of
+ *    different groups are ordered by group only.
+ */
+public final class WatchBatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A single applied change of a key.
+     */
+    public static final class Event implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final long slot; // Slot of the key's group that applied the change
+        public final byte type; // Operation.PUT, including applied conditional writes, or Operation.DELETE
+        public final byte[] key;
+        public final byte[] value; // Null for a DELETE
+
+        public Event(long slot, byte type, byte[] key, byte[] value) {
+            this.slot = slot;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+
+        public String keyString() {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        public String valueString() {
+            return value == null ? null : new String(value, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return "PUT,$key,$value" or "DELETE,$key" followed by " in slot $slot".
+         */
+        @Override
+        public String toString() {
+            return (type == Operation.PUT ? "PUT," + keyString() + "," + valueString() : "DELETE," + keyString())
+                    + " in slot " + slot;
+        }
+    }
+
+    public final List<Event> events;
+    public final long[] positions; // Last slot covered in each group, passed back as fromPositions to resume
+    public final boolean truncated; // Changes after the requested positions were dropped from the server's buffer
+
+    public WatchBatch(List<Event> events, long[] positions, boolean truncated) {
+        this.events = events;
+        this.positions = positions;
+        this.truncated = truncated;
+    }
+}
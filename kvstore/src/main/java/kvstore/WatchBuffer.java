@@ -0,0 +1,146 @@
+package kvstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Recently applied changes of one Paxos group, kept for watchers (see Server.watch()).
+ * The Learner adds each change as it applies it and commits the slot once the slot is fully applied, so a watcher
+ *    only ever sees whole slots and can resume exactly after any slot. The buffer holds at most capacity changes;
+ *    the oldest slots are dropped first, and a watcher whose position is before a dropped slot is told its stream
+ *    was truncated.
+ */
+final class WatchBuffer {
+    private final int capacity;
+    private final TreeMap<Long, List<WatchBatch.Event>> bySlot = new TreeMap<>(); // Committed changes by slot
+    private final List<WatchBatch.Event> pending = new ArrayList<>(); // Changes of the slot being applied
+    private int size = 0; // Changes held in bySlot
+    private long committed = 0; // Highest slot committed
+    private long truncatedBefore = 0; // Changes of this slot and earlier may be missing
+    private Signal signal = new Signal();
+
+    /**
+     * Wakes waiting watchers when a slot is committed. Shared by the groups of a ShardRouter, so a watch spanning
+     *    every group can wait for all of them at once.
+     */
+    static final class Signal {
+        private long version = 0;
+
+        synchronized void fire() {
+            version++;
+            notifyAll();
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        /**
+         * Waits until fire() is called after version seen was read, or until deadline.
+         * @param seen The version read before checking for changes.
+         * @param deadline The System.currentTimeMillis() to give up at.
+         */
+        synchronized void await(long seen, long deadline) throws InterruptedException {
+            long remaining;
+            while (version == seen && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        }
+    }
+
+    WatchBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    synchronized Signal signal() {
+        return signal;
+    }
+
+    synchronized void useSignal(Signal shared) {
+        signal = shared;
+    }
+
+    /**
+     * Records a change of the slot being applied. Called by the Learner while holding applyLock.
+     */
+    synchronized void add(byte type, byte[] key, byte[] value) {
+        pending.add(new WatchBatch.Event(0, type, key, value));
+    }
+
+    /**
+     * Makes the changes added since the previous commit visible as the changes of a slot, and wakes the watchers.
+     * @param slot The slot that has just been applied.
+     */
+    void commit(long slot) {
+        Signal current;
+        synchronized (this) {
+            committed = slot;
+            if (!pending.isEmpty()) {
+                List<WatchBatch.Event> events = new ArrayList<>(pending.size());
+                for (WatchBatch.Event event : pending) {
+                    events.add(new WatchBatch.Event(slot, event.type, event.key, event.value));
+                }
+                pending.clear();
+                bySlot.put(slot, events);
+                size += events.size();
+                while (size > capacity && bySlot.size() > 1) {
+                    Map.Entry<Long, List<WatchBatch.Event>> oldest = bySlot.pollFirstEntry();
+                    size -= oldest.getValue().size();
+                    truncatedBefore = oldest.getKey();
+                }
+            }
+            current = signal;
+        }
+        current.fire();
+    }
+
+    /**
+     * Drops every change and restarts the buffer at a slot, e.g. after a snapshot replaced the Learner's state.
+     * @param slot The slot the Learner's state now reflects.
+     */
+    synchronized void reset(long slot) {
+        bySlot.clear();
+        pending.clear();
+        size = 0;
+        committed = slot;
+        truncatedBefore = slot;
+    }
+
+    /**
+     * Returns the committed changes after a position without waiting.
+     * @param prefix Only changes of keys starting with these bytes are returned, an empty array for every key.
+     * @param from The last slot the watcher has seen, or -1 to start at the latest committed slot.
+     * @param max The maximum number of changes to return. A slot is never split, so its remaining changes are
+     *    returned with it even if that exceeds max.
+     * @return The changes and the position to resume from.
+     */
+    synchronized WatchBatch read(byte[] prefix, long from, int max) {
+        if (from < 0) {
+            return new WatchBatch(List.of(), new long[]{committed}, false);
+        }
+        if (from < truncatedBefore) {
+            return new WatchBatch(List.of(), new long[]{committed}, true);
+        }
+        List<WatchBatch.Event> events = new ArrayList<>();
+        long position = Math.max(from, committed);
+        for (Map.Entry<Long, List<WatchBatch.Event>> entry : bySlot.tailMap(from, false).entrySet()) {
+            if (events.size() >= max) {
+                position = entry.getKey() - 1; // Resume at this slot
+                break;
+            }
+            for (WatchBatch.Event event : entry.getValue()) {
+                if (startsWith(event.key, prefix)) {
+                    events.add(event);
+                }
+            }
+        }
+        return new WatchBatch(events, new long[]{position}, false);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -0,0 +1,364 @@
+package kvstore;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log for Acceptor promises/accepts and decided log slots.
+ * Records are appended to an in-memory buffer and written by a single flusher thread through a FileChannel.
+ * Values are stored as raw bytes, a valueLength of -1 stands for null.
+ * Each flush ends with one fsync that covers every record appended since the previous flush (group commit),
+ *    so many concurrent PREPARE/ACCEPT responses share the cost of a single fsync.
+ * The log is split into numbered segment files (wal-$segment.log) so that segments covered by a snapshot can be
+ *    deleted. On disk every record is [int length][int crc32][byte type][long slot][int ballot][int valueLength][value bytes].
+ */
+public class WriteAheadLog implements Closeable {
+    static final byte PROMISE = 1; // An Acceptor promised a ballot for a slot
+    static final byte ACCEPT = 2; // An Acceptor accepted a value for a slot
+    static final byte LEADER = 3; // An Acceptor promised a leader ballot covering every slot, value is the leader's name
+    static final byte DECIDED = 4; // A Learner learned the decided value of a slot
+
+    private static final int HEADER_BYTES = 8; // length + crc32
+    private static final int FIXED_PAYLOAD_BYTES = 1 + 8 + 4 + 4; // type + slot + ballot + valueLength
+
+    /**
+     * Receives each record read back by replay(), in the order it was appended.
+     */
+    interface RecordHandler {
+        void record(byte type, long slot, int ballot, byte[] value);
+    }
+
+    private final Path dir;
+    private FileChannel channel; // Only used by the flusher thread once the log is open
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Condition rolled = lock.newCondition();
+    private long segment; // Number of the segment new records are appended to
+    private FileChannel nextChannel = null; // Segment the flusher switches to once it has written rollPosition bytes
+    private int rollPosition = -1; // Bytes of pending that belong to the segment being rolled away from
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // Records appended since the last flush
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024); // Records being written by the flusher
+    private long appendedSequence = 0; // Number of records appended
+    private long durableSequence = 0; // Number of records known to be on disk
+    private IOException failure = null; // Set once a write or fsync fails, the log can no longer be trusted
+
+    /**
+     * Opens the newest segment in dir for appending, creating the directory and first segment if needed.
+     * Call replay() first to recover the log's contents.
+     * @param dir The directory holding the log segments.
+     * @throws IOException If the segment cannot be opened.
+     */
+    public WriteAheadLog(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        List<Long> segments = segments(dir);
+        segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        channel = openSegment(dir, segment);
+        Thread flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Reads every intact record of every segment in dir, oldest segment first.
+     * @param dir The directory holding the log segments.
+     * @param handler Receives each record.
+     * @return The number of records replayed.
+     * @throws IOException If a segment cannot be read.
+     */
+    public static long replay(Path dir, RecordHandler handler) throws IOException {
+        long records = 0;
+        for (long segment : segments(dir)) {
+            records += replaySegment(segmentFile(dir, segment), handler);
+        }
+        return records;
+    }
+
+    /**
+     * Reads every intact record of a segment in order. A torn or corrupt record at the end of the segment, left by a
+     *    crash in the middle of a write, is cut off so that new records are appended after the last intact one.
+     * @param file The segment file.
+     * @param handler Receives each record.
+     * @return The number of records replayed.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long replaySegment(Path file, RecordHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long records = 0;
+        long validBytes = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             DataInputStream data = new DataInputStream(in)) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt();
+                    if (length < FIXED_PAYLOAD_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    data.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte type = record.get();
+                long slot = record.getLong();
+                int ballot = record.getInt();
+                int valueLength = record.getInt();
+                byte[] value = null;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    record.get(value);
+                }
+                handler.record(type, slot, ballot, value);
+                validBytes += HEADER_BYTES + length;
+                records++;
+            }
+        }
+        if (validBytes < Files.size(file)) {
+            Log.warn("WAL " + file + " has a torn tail, truncating to " + validBytes + " bytes");
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validBytes);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Appends a record without waiting for it to reach disk.
+     * @param type One of PROMISE, ACCEPT, LEADER or DECIDED.
+     * @param slot The slot the record is about, or 0 for LEADER records.
+     * @param ballot The ballot promised or accepted, or 0 for DECIDED records.
+     * @param value The accepted or decided value, the leader's name, or null.
+     * @return The sequence number of the record, to pass to awaitDurable().
+     */
+    public long append(byte type, long slot, int ballot, byte[] value) {
+        int length = FIXED_PAYLOAD_BYTES + (value == null ? 0 : value.length);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(type).putLong(slot).putInt(ballot);
+        if (value == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(value.length).put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        lock.lock();
+        try {
+            if (pending.remaining() < HEADER_BYTES + length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + HEADER_BYTES + length));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.putInt(length).putInt((int) crc.getValue()).put(payload.array());
+            appendedSequence++;
+            dataAvailable.signal();
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until a record, and every record appended before it, has been written and fsynced.
+     * @param sequence The sequence number returned by append().
+     * @throws IOException If the log failed to write or fsync.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                durable.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment. Every record appended before this call stays in the earlier segments, and every record
+     *    appended after it goes to the new one, so the earlier segments can be deleted once a snapshot covers them.
+     * @return The number of the new segment.
+     * @throws IOException If the new segment cannot be created.
+     */
+    public synchronized long roll() throws IOException {
+        long newSegment = segment + 1;
+        FileChannel newChannel = openSegment(dir, newSegment);
+        lock.lock();
+        try {
+            nextChannel = newChannel;
+            rollPosition = pending.position();
+            segment = newSegment;
+            dataAvailable.signal();
+            while (nextChannel != null && failure == null) { // Wait for the flusher to switch segments
+                rolled.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return newSegment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment older than the given one.
+     * @param firstKept The oldest segment to keep.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long old : segments(dir)) {
+            if (old < firstKept) {
+                Files.deleteIfExists(segmentFile(dir, old));
+            }
+        }
+    }
+
+    /**
+     * Writes every pending record and fsyncs once per batch until the log is closed or fails.
+     * When a roll is pending, records appended before the roll are written and fsynced to the old segment first.
+     */
+    private void flushLoop() {
+        while (true) {
+            long sequence;
+            FileChannel switchTo;
+            int splitAt;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && nextChannel == null) {
+                    dataAvailable.awaitUninterruptibly();
+                }
+                ByteBuffer full = pending; // Swap buffers so appenders never wait on disk I/O
+                pending = flushing;
+                flushing = full;
+                sequence = appendedSequence;
+                switchTo = nextChannel;
+                splitAt = rollPosition;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                flushing.flip();
+                if (switchTo != null) {
+                    ByteBuffer beforeRoll = flushing.duplicate();
+                    beforeRoll.limit(splitAt);
+                    writeFully(beforeRoll);
+                    channel.force(false);
+                    channel.close();
+                    channel = switchTo;
+                    flushing.position(splitAt);
+                }
+                if (flushing.hasRemaining()) {
+                    writeFully(flushing);
+                    channel.force(false);
+                }
+                flushing.clear();
+            } catch (IOException e) {
+                Log.error("WAL write failed " + e.getMessage());
+                lock.lock();
+                try {
+                    failure = e;
+                    durable.signalAll();
+                    rolled.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableSequence = sequence;
+                durable.signalAll();
+                if (switchTo != null) {
+                    nextChannel = null;
+                    rollPosition = -1;
+                    rolled.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes a buffer to the current segment.
+     * @param buffer The bytes to write.
+     * @throws IOException If the write fails.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Lists the segment numbers present in dir, oldest first.
+     * @param dir The directory holding the log segments.
+     * @return The segment numbers in ascending order.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static List<Long> segments(Path dir) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("wal-\\d+\\.log"))
+                    .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static Path segmentFile(Path dir, long segment) {
+        return dir.resolve(String.format("wal-%020d.log", segment));
+    }
+
+    private static FileChannel openSegment(Path dir, long segment) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentFile(dir, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segmentChannel.position(segmentChannel.size());
+        return segmentChannel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
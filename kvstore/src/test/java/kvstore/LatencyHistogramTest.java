@@ -0,0 +1,81 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeError,
+                "expected " + expected + " within " + relativeError + ", got " + actual);
+    }
+
+    @Test
+    void percentilesOfAUniformRange() {
+        LatencyHistogram histogram = new LatencyHistogram(3_600_000_000L, 3);
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000); // 1us to 100ms in nanoseconds
+        }
+        assertEquals(100_000, histogram.count());
+        assertWithin(50_000_000, histogram.valueAtPercentile(50), 0.001);
+        assertWithin(99_000_000, histogram.valueAtPercentile(99), 0.001);
+        assertWithin(99_900_000, histogram.valueAtPercentile(99.9), 0.001);
+        assertEquals(100_000_000, histogram.valueAtPercentile(100));
+        assertEquals(1000, histogram.min());
+        assertEquals(100_000_000, histogram.max());
+        assertWithin(50_000_500, (long) histogram.mean(), 0.0001);
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 3);
+        for (int value = 0; value < 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(49, histogram.valueAtPercentile(50));
+        assertEquals(0, histogram.valueAtPercentile(0));
+        assertEquals(99, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 2);
+        histogram.record(-5);
+        histogram.record(1_000_000);
+        assertEquals(0, histogram.min());
+        assertEquals(1000, histogram.max());
+        assertEquals(1000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    void addMergesCounts() {
+        LatencyHistogram low = new LatencyHistogram(1_000_000, 3);
+        LatencyHistogram high = new LatencyHistogram(1_000_000, 3);
+        for (int i = 1; i <= 1000; i++) {
+            low.record(i);
+            high.record(i + 1000);
+        }
+        low.add(high);
+        assertEquals(2000, low.count());
+        assertWithin(1000, low.valueAtPercentile(50), 0.001);
+        assertEquals(2000, low.max());
+        assertThrows(IllegalArgumentException.class, () -> low.add(new LatencyHistogram(1_000_000, 2)));
+    }
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 3);
+        assertEquals(0, histogram.valueAtPercentile(99));
+        assertEquals(0, histogram.min());
+        assertEquals(0.0, histogram.mean());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        histogram.writePercentileDistribution(new PrintStream(out, true, StandardCharsets.UTF_8), 1.0);
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Percentile"));
+    }
+}
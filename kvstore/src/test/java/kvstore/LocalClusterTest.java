@@ -0,0 +1,85 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Safety of an in-process cluster under concurrent proposers. The cluster is started once per JVM, so every test
+ *    of it lives in this class.
+ */
+class LocalClusterTest {
+    private static final int CLIENTS = 10;
+    private static final int PUTS = 20;
+
+    @Test
+    void concurrentIdenticalPutsAreEachDecided() throws Exception {
+        List<String> names = Server.startLocalCluster();
+        byte[] put = Operation.put("key", "same value").encode();
+        AtomicInteger succeeded = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            RemoteOperations server = LocalCluster.lookup(names.get(c % names.size()));
+            done.add(clients.submit(() -> {
+                for (int p = 0; p < PUTS; p++) {
+                    if (server.propose(put).contains("reached consensus")) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> client : done) {
+            client.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+        assertTrue(succeeded.get() > 0);
+
+        // Every replica applies the same log
+        List<RemoteOperations> replicas = new ArrayList<>();
+        for (String name : names) {
+            replicas.add(LocalCluster.lookup(ShardRouter.bindingName(name, 0)));
+        }
+        long applied = 0; // A proposer returns once it has learned its slot, the others learn it shortly after
+        for (RemoteOperations replica : replicas) {
+            applied = Math.max(applied, replica.getLastApplied());
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (RemoteOperations replica : replicas) {
+            while (replica.getLastApplied() < applied && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        List<PaxosMessage> log = PaxosMessage.decode(replicas.get(0).getDecided(1, Integer.MAX_VALUE)).entries;
+        assertEquals(applied, log.size());
+        for (RemoteOperations replica : replicas.subList(1, replicas.size())) {
+            List<PaxosMessage> other = PaxosMessage.decode(replica.getDecided(1, (int) applied)).entries;
+            assertEquals(log.size(), other.size());
+            for (int i = 0; i < log.size(); i++) {
+                assertArrayEquals(log.get(i).value, other.get(i).value, "slot " + log.get(i).slot);
+            }
+        }
+
+        // A PUT reported as decided was decided in a slot of its own, not matched to another client's identical PUT
+        int decidedPuts = 0;
+        for (PaxosMessage entry : log) {
+            for (Operation operation : Operation.decodeAll(entry.value)) {
+                if (operation.type == Operation.PUT && operation.keyString().equals("key")) {
+                    decidedPuts++;
+                }
+            }
+        }
+        assertTrue(decidedPuts >= succeeded.get(), decidedPuts + " PUTs decided, " + succeeded.get() + " reported");
+    }
+}
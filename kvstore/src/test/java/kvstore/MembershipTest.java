@@ -0,0 +1,102 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class MembershipTest {
+    private static final List<String> INITIAL = List.of("rmi-server-1", "rmi-server-2", "rmi-server-3");
+
+    private static Membership change(Membership membership, byte type, String name, long slot) {
+        Operation operation = Operation.membershipChange(type, name, membership.epoch);
+        assertNull(membership.refusal(operation));
+        return membership.apply(operation, slot, 8);
+    }
+
+    @Test
+    void initialMembersAreIndexedInOrder() {
+        Membership membership = Membership.initial(INITIAL);
+        for (int i = 0; i < INITIAL.size(); i++) {
+            assertEquals(i, membership.indexOf(INITIAL.get(i)));
+        }
+        assertEquals(-1, membership.indexOf("rmi-server-4"));
+        assertThrows(IllegalArgumentException.class, () -> Membership.initial(List.of("a", "a")));
+    }
+
+    @Test
+    void changeTakesEffectAfterThePipelineWindow() {
+        Membership membership = change(Membership.initial(INITIAL), Operation.REMOVE_MEMBER, "rmi-server-2", 100);
+        assertEquals(108, membership.activeFrom);
+        assertEquals(INITIAL, membership.membersFor(107));
+        assertEquals(List.of("rmi-server-1", "rmi-server-3"), membership.membersFor(108));
+        assertEquals(1, membership.indexOf("rmi-server-2")); // Still proposes for the slots before 108
+        assertTrue(membership.refusal(Operation.membershipChange(Operation.ADD_MEMBER, "x", membership.epoch))
+                .startsWith("the previous change takes effect"));
+
+        assertSame(membership, membership.activate(106));
+        Membership active = membership.activate(107);
+        assertEquals(List.of("rmi-server-1", "rmi-server-3"), active.members);
+        assertNull(active.pending);
+        assertEquals(-1, active.indexOf("rmi-server-2"));
+        assertEquals(1, active.epoch);
+    }
+
+    @Test
+    void addedServersGetTheLowestFreeIndex() {
+        Membership membership = change(Membership.initial(INITIAL), Operation.REMOVE_MEMBER, "rmi-server-2", 1);
+        membership = membership.activate(100);
+        membership = change(membership, Operation.ADD_MEMBER, "joined-without-a-number", 101);
+        assertEquals(1, membership.indexOf("joined-without-a-number"));
+        assertEquals(List.of("rmi-server-1", "rmi-server-3"), membership.membersFor(101));
+        assertEquals(List.of("rmi-server-1", "rmi-server-3", "joined-without-a-number"), membership.servers());
+    }
+
+    @Test
+    void joinsAreRefusedOnceEveryIndexIsUsed() {
+        List<String> full = new ArrayList<>();
+        for (int i = 0; i < Membership.MAX_MEMBERS; i++) {
+            full.add("server-" + i);
+        }
+        Membership membership = Membership.initial(full);
+        Set<Integer> indexes = new HashSet<>();
+        full.forEach(name -> indexes.add(membership.indexOf(name)));
+        assertEquals(Membership.MAX_MEMBERS, indexes.size());
+        assertEquals("all 16 member indexes are in use",
+                membership.refusal(Operation.membershipChange(Operation.ADD_MEMBER, "one-more", 0)));
+        full.add("one-more");
+        assertThrows(IllegalArgumentException.class, () -> Membership.initial(full));
+    }
+
+    @Test
+    void staleOrInvalidChangesAreRefused() {
+        Membership membership = Membership.initial(INITIAL);
+        assertTrue(membership.refusal(Operation.membershipChange(Operation.ADD_MEMBER, "x", 1))
+                .startsWith("membership changed concurrently"));
+        assertEquals("rmi-server-1 is already a member",
+                membership.refusal(Operation.membershipChange(Operation.ADD_MEMBER, "rmi-server-1", 0)));
+        assertEquals("x is not a member",
+                membership.refusal(Operation.membershipChange(Operation.REMOVE_MEMBER, "x", 0)));
+        Membership single = Membership.initial(List.of("only"));
+        assertEquals("only is the last member",
+                single.refusal(Operation.membershipChange(Operation.REMOVE_MEMBER, "only", 0)));
+    }
+
+    @Test
+    void legacyMembersKeepTheirInitialIndexes() {
+        Membership membership = Membership.withoutIndexes(2, List.of("rmi-server-1", "rmi-server-3", "rmi-server-6"),
+                INITIAL);
+        assertEquals(0, membership.indexOf("rmi-server-1"));
+        assertEquals(2, membership.indexOf("rmi-server-3"));
+        assertEquals(1, membership.indexOf("rmi-server-6"));
+        assertEquals(2, membership.epoch);
+    }
+}
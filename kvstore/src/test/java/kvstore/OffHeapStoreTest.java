@@ -0,0 +1,83 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapStoreTest {
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> contents(KVStore store) {
+        Map<String, String> contents = new HashMap<>();
+        store.forEach((key, value) ->
+                contents.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8)));
+        return contents;
+    }
+
+    @Test
+    void overwritesAreCompactedAway() {
+        OffHeapStore store = new OffHeapStore(1);
+        Map<String, String> expected = new HashMap<>();
+        for (int round = 0; round < 50; round++) { // Far more dead bytes than the initial arena holds
+            for (int i = 0; i < 200; i++) {
+                String value = "value-" + round + "-" + "x".repeat(i % 50);
+                store.put(bytes("key" + i), bytes(value));
+                expected.put("key" + i, value);
+            }
+        }
+        assertEquals(200, store.size());
+        assertEquals(expected, contents(store));
+        assertArrayEquals(bytes(expected.get("key7")), store.get(bytes("key7")));
+    }
+
+    @Test
+    void deletedKeysLeaveTombstonesThatLookupsProbePast() {
+        OffHeapStore store = new OffHeapStore(1);
+        for (int i = 0; i < 5000; i++) {
+            store.put(bytes("key" + i), bytes("v" + i));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            assertTrue(store.remove(bytes("key" + i)));
+        }
+        assertFalse(store.remove(bytes("key0")));
+        assertEquals(2500, store.size());
+        for (int i = 0; i < 5000; i++) {
+            if (i % 2 == 0) {
+                assertNull(store.get(bytes("key" + i)));
+                assertFalse(store.containsKey(bytes("key" + i)));
+            } else {
+                assertArrayEquals(bytes("v" + i), store.get(bytes("key" + i)));
+            }
+        }
+        for (int i = 0; i < 5000; i += 2) { // Reuses the tombstones
+            store.put(bytes("key" + i), bytes("again" + i));
+        }
+        assertEquals(5000, store.size());
+        assertArrayEquals(bytes("again10"), store.get(bytes("key10")));
+        assertEquals(5000, contents(store).size());
+    }
+
+    @Test
+    void emptyValuesAndClearAreSupported() {
+        OffHeapStore store = new OffHeapStore(4);
+        store.put(bytes("empty"), new byte[0]);
+        store.put(new byte[0], bytes("empty key"));
+        assertArrayEquals(new byte[0], store.get(bytes("empty")));
+        assertArrayEquals(bytes("empty key"), store.get(new byte[0]));
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get(bytes("empty")));
+        store.put(bytes("after"), bytes("clear"));
+        assertEquals(Map.of("after", "clear"), contents(store));
+    }
+}
@@ -0,0 +1,82 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OperationTest {
+    @Test
+    void everyTypeRoundTrips() {
+        byte[] binary = {0, ',', '\n', -1};
+        List<Operation> operations = List.of(
+                Operation.put(binary, binary),
+                Operation.delete("key"),
+                Operation.compareAndSet("key", "old", "new").withRequestId(42),
+                Operation.compareAndSet("key", null, "new"),
+                Operation.putIfAbsent("key", "value"),
+                Operation.increment("counter", -5),
+                Operation.membershipChange(Operation.ADD_MEMBER, "rmi-server-6", 3));
+        for (Operation operation : operations) {
+            Operation decoded = Operation.decode(operation.encode());
+            assertEquals(operation.type, decoded.type);
+            assertArrayEquals(operation.key, decoded.key);
+            assertArrayEquals(operation.value, decoded.value);
+            assertArrayEquals(operation.expected, decoded.expected);
+            assertEquals(operation.requestId, decoded.requestId);
+            assertEquals(operation.toString(), decoded.toString());
+        }
+    }
+
+    @Test
+    void trailingBytesAreRejected() {
+        byte[] encoded = Operation.put("key", "value").encode();
+        byte[] longer = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, longer, 0, encoded.length);
+        assertThrows(IllegalArgumentException.class, () -> Operation.decode(longer));
+    }
+
+    @Test
+    void batchRoundTripsInOrder() {
+        List<Operation> batch = List.of(Operation.put("a", "1"), Operation.delete("b"), Operation.put("c", "3"));
+        byte[] value = Operation.encodeAll(batch);
+        List<Operation> decoded = Operation.decodeAll(value);
+        assertEquals(batch.size(), decoded.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batch.get(i).toString(), decoded.get(i).toString());
+        }
+        assertEquals("BATCH of 3 operations", Operation.describe(value));
+        assertEquals("PUT,a,1", Operation.describe(Operation.encodeAll(List.of(batch.get(0)))));
+        assertEquals("NOOP", Operation.describe(Operation.NOOP));
+        assertTrue(Operation.decodeAll(Operation.NOOP).isEmpty());
+    }
+
+    @Test
+    void identicalWritesAreDifferentProposals() {
+        List<Operation> put = List.of(Operation.put("key", "value"));
+        byte[] first = Operation.encodeAll(put);
+        byte[] second = Operation.encodeAll(put);
+        assertTrue(Operation.sameProposal(first, first.clone()));
+        assertFalse(Operation.sameProposal(first, second));
+        assertFalse(Operation.sameProposal(Operation.NOOP, Operation.NOOP.clone()));
+        assertFalse(Operation.sameProposal(first, null));
+    }
+
+    @Test
+    void conditionsAreEvaluatedAgainstTheCurrentValue() {
+        byte[] one = "1".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(one, Operation.compareAndSet("k", null, "1").evaluate(null));
+        assertNull(Operation.compareAndSet("k", "0", "1").evaluate(one));
+        assertNull(Operation.putIfAbsent("k", "1").evaluate(one));
+        assertArrayEquals("6".getBytes(StandardCharsets.UTF_8), Operation.increment("k", 5).evaluate(one));
+        assertNull(Operation.increment("k", 1).evaluate("x".getBytes(StandardCharsets.UTF_8)));
+        assertNull(Operation.increment("k", 1).evaluate(Long.toString(Long.MAX_VALUE).getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,47 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PaxosMessageTest {
+    @Test
+    void promiseRoundTrips() {
+        byte[] value = Operation.encodeAll(List.of(Operation.put("key", "value")));
+        PaxosMessage decoded = PaxosMessage.decode(PaxosMessage.promise(42, 7, 6, value).encode());
+        assertEquals(PaxosMessage.PROMISE, decoded.type);
+        assertEquals(42, decoded.slot);
+        assertEquals(7, decoded.ballot);
+        assertEquals(6, decoded.acceptedBallot);
+        assertArrayEquals(value, decoded.value);
+        assertEquals(0, decoded.entries.size());
+    }
+
+    @Test
+    void rejectKeepsNegativeBallotsAndNullValue() {
+        PaxosMessage decoded = PaxosMessage.decode(PaxosMessage.of(PaxosMessage.REJECT, Long.MAX_VALUE, -1).encode());
+        assertEquals(PaxosMessage.REJECT, decoded.type);
+        assertEquals(Long.MAX_VALUE, decoded.slot);
+        assertEquals(-1, decoded.ballot);
+        assertEquals(-1, decoded.acceptedBallot);
+        assertNull(decoded.value);
+    }
+
+    @Test
+    void entriesRoundTripInOrder() {
+        List<PaxosMessage> entries = List.of(PaxosMessage.entry(5, 16, new byte[]{1, 2}),
+                PaxosMessage.entry(6, -1, null), PaxosMessage.entry(7, Integer.MAX_VALUE, new byte[0]));
+        PaxosMessage message = new PaxosMessage(PaxosMessage.DECIDED, 7, -1, -1, null, entries);
+        PaxosMessage decoded = PaxosMessage.decode(message.encode());
+        assertEquals(entries.size(), decoded.entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).slot, decoded.entries.get(i).slot);
+            assertEquals(entries.get(i).acceptedBallot, decoded.entries.get(i).acceptedBallot);
+            assertArrayEquals(entries.get(i).value, decoded.entries.get(i).value);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class RoutingTableTest {
+    @Test
+    void stringAndBytesMapToTheSameGroup() {
+        RoutingTable table = new RoutingTable(new String[5]);
+        for (int i = 0; i < 1000; i++) {
+            String key = "Key" + i + "é";
+            int group = table.groupOf(key);
+            assertTrue(group >= 0 && group < 5);
+            assertEquals(group, table.groupOf(key.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(group, RoutingTable.groupOf(key, 5));
+        }
+    }
+
+    @Test
+    void hashIsFnv1a() {
+        // FNV-1a of "a" is 0xe40c292c, and the group is its remainder as a signed int
+        assertEquals(Math.floorMod(0xe40c292c, 7), RoutingTable.groupOf("a", 7));
+        assertEquals(Math.floorMod(0x811c9dc5, 3), RoutingTable.groupOf(new byte[0], 3)); // The offset basis
+        assertEquals(0, RoutingTable.groupOf("anything", 1));
+    }
+
+    @Test
+    void sequentialKeysSpreadEvenly() {
+        int groups = 4;
+        int[] counts = new int[groups];
+        int keys = 10000;
+        for (int i = 0; i < keys; i++) {
+            counts[RoutingTable.groupOf("Key" + i, groups)]++;
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - keys / groups) < keys / groups / 10, "group holds " + count + " keys");
+        }
+    }
+
+    @Test
+    void recordsLeaders() {
+        RoutingTable table = new RoutingTable(new String[2]);
+        assertEquals(2, table.groupCount());
+        assertNull(table.leaderOf(1));
+        table.setLeader(1, "rmi-server-3");
+        assertEquals("rmi-server-3", table.leaderOf(1));
+        assertNull(table.leaderOf(0));
+    }
+}
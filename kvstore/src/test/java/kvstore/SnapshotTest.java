@@ -0,0 +1,112 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Snapshot snapshotAt(long lastApplied) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.lastApplied = lastApplied;
+        snapshot.leaderBallot = 33;
+        snapshot.leaderName = "rmi-server-2";
+        snapshot.membershipEpoch = 1;
+        snapshot.members = List.of("rmi-server-1", "rmi-server-2", "rmi-server-3");
+        snapshot.pendingMembers = List.of("rmi-server-1", "rmi-server-2", "rmi-server-3", "rmi-server-6");
+        snapshot.activeFrom = lastApplied + 10;
+        snapshot.memberIndexes = Map.of("rmi-server-1", 0, "rmi-server-2", 1, "rmi-server-3", 2, "rmi-server-6", 3);
+        PaxosState state = new PaxosState();
+        state.highestPromisedID = 49;
+        state.acceptedProposalID = 33;
+        state.acceptedValue = bytes("accepted");
+        snapshot.acceptorState.put(lastApplied + 1, state);
+        snapshot.decided.put(lastApplied + 2, bytes("decided"));
+        return snapshot;
+    }
+
+    private static Path write(Snapshot snapshot, Path dir, Map<String, String> pairs) throws IOException {
+        return snapshot.write(dir, consumer -> {
+            for (Map.Entry<String, String> pair : pairs.entrySet()) {
+                consumer.accept(bytes(pair.getKey()), bytes(pair.getValue()));
+            }
+        });
+    }
+
+    @Test
+    void restoresEveryField() throws IOException {
+        Map<String, String> pairs = Map.of("a", "1", "b", "2", "binary", "\u0000,\n");
+        Path file = write(snapshotAt(100), dir, pairs);
+        assertEquals(Snapshot.fileName(100), file.getFileName().toString());
+
+        Map<String, String> restored = new HashMap<>();
+        Snapshot snapshot = Snapshot.read(file, (key, value) ->
+                restored.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8)));
+        assertEquals(pairs, restored);
+        assertEquals(100, snapshot.lastApplied);
+        assertEquals(33, snapshot.leaderBallot);
+        assertEquals("rmi-server-2", snapshot.leaderName);
+        assertEquals(1, snapshot.membershipEpoch);
+        assertEquals(List.of("rmi-server-1", "rmi-server-2", "rmi-server-3"), snapshot.members);
+        assertEquals(List.of("rmi-server-1", "rmi-server-2", "rmi-server-3", "rmi-server-6"), snapshot.pendingMembers);
+        assertEquals(110, snapshot.activeFrom);
+        assertEquals(3, snapshot.memberIndexes.get("rmi-server-6"));
+        assertEquals(49, snapshot.acceptorState.get(101L).highestPromisedID);
+        assertArrayEquals(bytes("accepted"), snapshot.acceptorState.get(101L).acceptedValue);
+        assertArrayEquals(bytes("decided"), snapshot.decided.get(102L));
+    }
+
+    @Test
+    void corruptSnapshotFailsItsChecksum() throws IOException {
+        Path file = write(snapshotAt(100), dir, Map.of("key", "value"));
+        byte[] contents = Files.readAllBytes(file);
+        contents[contents.length - 12] ^= 1; // Inside the last key/value pair
+        Files.write(file, contents);
+        IOException e = assertThrows(IOException.class, () -> Snapshot.read(file, (key, value) -> { }));
+        assertEquals("checksum mismatch", e.getMessage());
+    }
+
+    @Test
+    void loadLatestFallsBackPastACorruptSnapshot() throws IOException {
+        write(snapshotAt(100), dir, Map.of("key", "old"));
+        Path newest = write(snapshotAt(200), dir, Map.of("key", "new", "other", "x"));
+        byte[] contents = Files.readAllBytes(newest);
+        contents[contents.length - 1] ^= 1;
+        Files.write(newest, contents);
+
+        KVStore store = new HeapStore();
+        Snapshot loaded = Snapshot.loadLatest(dir, store);
+        assertEquals(100, loaded.lastApplied);
+        assertEquals(1, store.size());
+        assertArrayEquals(bytes("old"), store.get(bytes("key")));
+    }
+
+    @Test
+    void deleteOlderThanKeepsTheNewest() throws IOException {
+        write(snapshotAt(100), dir, Map.of());
+        write(snapshotAt(200), dir, Map.of());
+        Files.createFile(dir.resolve(Snapshot.fileName(300) + ".tmp")); // Left by an interrupted write
+        Snapshot.deleteOlderThan(dir, 200);
+        assertEquals(List.of(200L), Snapshot.list(dir));
+        assertEquals(1, Files.list(dir).count());
+        assertNull(Snapshot.loadLatest(dir.resolve("missing"), new HeapStore()));
+    }
+}
@@ -0,0 +1,69 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class VarintTest {
+    private static final long[] VALUES = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1,
+            Long.MIN_VALUE};
+
+    @Test
+    void unsignedValuesRoundTripInTheirSize() {
+        for (long value : VALUES) {
+            ByteBuffer buffer = ByteBuffer.allocate(Varint.sizeOf(value));
+            Varint.put(buffer, value);
+            assertEquals(0, buffer.remaining(), "size of " + value);
+            buffer.flip();
+            assertEquals(value, Varint.get(buffer));
+        }
+        assertEquals(1, Varint.sizeOf(127));
+        assertEquals(2, Varint.sizeOf(128));
+        assertEquals(10, Varint.sizeOf(-1));
+    }
+
+    @Test
+    void signedValuesRoundTripInTheirSize() {
+        for (long value : VALUES) {
+            ByteBuffer buffer = ByteBuffer.allocate(Varint.sizeOfSigned(value));
+            Varint.putSigned(buffer, value);
+            assertEquals(0, buffer.remaining(), "size of " + value);
+            buffer.flip();
+            assertEquals(value, Varint.getSigned(buffer));
+        }
+        assertEquals(1, Varint.sizeOfSigned(-1)); // "No ballot" takes a single byte
+    }
+
+    @Test
+    void nullAndEmptyBytesAreToldApart() {
+        byte[][] arrays = {null, new byte[0], {0, -1, 10, 13}, new byte[300]};
+        for (byte[] bytes : arrays) {
+            ByteBuffer buffer = ByteBuffer.allocate(Varint.sizeOfBytes(bytes));
+            Varint.putBytes(buffer, bytes);
+            buffer.flip();
+            byte[] decoded = Varint.getBytes(buffer);
+            if (bytes == null) {
+                assertNull(decoded);
+            } else {
+                assertArrayEquals(bytes, decoded);
+            }
+        }
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+        assertThrows(IllegalArgumentException.class, () -> Varint.get(ByteBuffer.wrap(tooLong)));
+        ByteBuffer overlong = ByteBuffer.allocate(2);
+        Varint.put(overlong, 100); // Claims 99 bytes, none follow
+        overlong.flip();
+        assertThrows(IllegalArgumentException.class, () -> Varint.getBytes(overlong));
+    }
+}
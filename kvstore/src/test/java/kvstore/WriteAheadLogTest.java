@@ -0,0 +1,111 @@
+package kvstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    private record Entry(byte type, long slot, int ballot, byte[] value) {
+    }
+
+    private List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        WriteAheadLog.replay(dir, (type, slot, ballot, value) -> entries.add(new Entry(type, slot, ballot, value)));
+        return entries;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void replaysRecordsInAppendOrder() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir)) {
+            wal.append(WriteAheadLog.PROMISE, 1, 16, null);
+            wal.append(WriteAheadLog.ACCEPT, 1, 16, bytes("value"));
+            wal.append(WriteAheadLog.LEADER, 0, 32, bytes("rmi-server-2"));
+            wal.awaitDurable(wal.append(WriteAheadLog.DECIDED, 1, 0, new byte[0]));
+        }
+        List<Entry> entries = replay();
+        assertEquals(4, entries.size());
+        assertEquals(WriteAheadLog.PROMISE, entries.get(0).type());
+        assertNull(entries.get(0).value());
+        assertEquals(16, entries.get(1).ballot());
+        assertArrayEquals(bytes("value"), entries.get(1).value());
+        assertArrayEquals(bytes("rmi-server-2"), entries.get(2).value());
+        assertEquals(WriteAheadLog.DECIDED, entries.get(3).type());
+        assertArrayEquals(new byte[0], entries.get(3).value());
+    }
+
+    @Test
+    void rollSplitsSegmentsAndOldOnesCanBeDeleted() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir)) {
+            wal.append(WriteAheadLog.DECIDED, 1, 0, bytes("before"));
+            long firstKept = wal.roll();
+            wal.awaitDurable(wal.append(WriteAheadLog.DECIDED, 2, 0, bytes("after")));
+            assertEquals(List.of(1L, 2L), WriteAheadLog.segments(dir));
+            assertEquals(2, replay().size());
+
+            wal.deleteSegmentsBefore(firstKept);
+            List<Entry> entries = replay();
+            assertEquals(1, entries.size());
+            assertEquals(2, entries.get(0).slot());
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedAndAppendedAfter() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir)) {
+            wal.append(WriteAheadLog.DECIDED, 1, 0, bytes("one"));
+            wal.awaitDurable(wal.append(WriteAheadLog.DECIDED, 2, 0, bytes("two")));
+        }
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        long intact = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND); // A record cut off mid-write
+
+        assertEquals(2, replay().size());
+        assertEquals(intact, Files.size(segment));
+        try (WriteAheadLog wal = new WriteAheadLog(dir)) {
+            wal.awaitDurable(wal.append(WriteAheadLog.DECIDED, 3, 0, bytes("three")));
+        }
+        List<Entry> entries = replay();
+        assertEquals(3, entries.size());
+        assertArrayEquals(bytes("three"), entries.get(2).value());
+    }
+
+    @Test
+    void corruptRecordEndsTheReplay() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(dir)) {
+            wal.append(WriteAheadLog.DECIDED, 1, 0, bytes("one"));
+            wal.awaitDurable(wal.append(WriteAheadLog.DECIDED, 2, 0, bytes("two")));
+        }
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        byte[] contents = Files.readAllBytes(segment);
+        contents[contents.length - 1] ^= 1; // Last byte of the second record's value
+        Files.write(segment, contents);
+
+        List<Entry> entries = replay();
+        assertEquals(1, entries.size());
+        assertEquals(1, entries.get(0).slot());
+    }
+}